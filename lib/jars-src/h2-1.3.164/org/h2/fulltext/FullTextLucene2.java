@@ -16,6 +16,8 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Timer;
+import java.util.TimerTask;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.DateTools;
@@ -72,6 +74,18 @@ public class FullTextLucene2 extends FullText {
     private static final String LUCENE_FIELD_MODIFIED = "_modified";
     private static final String LUCENE_FIELD_COLUMN_PREFIX = "_";
     
+    /**
+     * Max number of changes kept in the index writer before a commit.
+     */
+    private static final int COMMIT_MAX_CHANGES = Utils.getProperty("h2.luceneCommitMaxChanges", 1000);
+
+    /**
+     * Max time in milliseconds the changes wait for a commit.
+     */
+    private static final int COMMIT_INTERVAL = Utils.getProperty("h2.luceneCommitInterval", 2000);
+
+    private static Timer commitTimer;
+
     // hack to enable/disable document indexing
     private static java.util.Map<String, Boolean> TABLE_INDEXING_STATUS = new HashMap<String, Boolean>();
     
@@ -362,9 +376,17 @@ public class FullTextLucene2 extends FullText {
                 access.modifier.close();
                 //*/
                 //## LUCENE3 ##
-                access.searcher.close();
-                access.reader.close();
-                access.writer.close();
+                synchronized (access) {
+                    access.closed = true;
+                    if (access.commitTask != null) {
+                        access.commitTask.cancel();
+                        access.commitTask = null;
+                    }
+                    access.searcher.close();
+                    access.reader.decRef();
+                    // commits the pending changes
+                    access.writer.close();
+                }
                 //*/
             } catch (Exception e) {
                 throw convertException(e);
@@ -412,8 +434,11 @@ public class FullTextLucene2 extends FullText {
                 float score = hits.score(i + offset);
             //*/
             //## LUCENE3 ##
-            // take a reference as the searcher may change
-            Searcher searcher = access.searcher;
+            // take a reference as the searcher may change,
+            // the reader is released in the finally block
+            IndexReader reader = access.acquireReader();
+            try {
+            Searcher searcher = new IndexSearcher(reader);
             // reuse the same analyzer; it's thread-safe;
             // also allows subclasses to control the analyzer used.
             Analyzer analyzer = access.writer.getAnalyzer();
@@ -462,6 +487,11 @@ public class FullTextLucene2 extends FullText {
             // TODO keep it open if possible
             reader.close();
             //*/
+            //## LUCENE3 ##
+            } finally {
+                access.releaseReader(reader);
+            }
+            //*/
         } catch (Exception e) {
             throw convertException(e);
         }
@@ -590,13 +620,7 @@ public class FullTextLucene2 extends FullText {
          */
         void commitIndex() throws SQLException {
             try {
-                indexAccess.writer.commit();
-                // recreate Searcher with the IndexWriter's reader.
-                indexAccess.searcher.close();
-                indexAccess.reader.close();
-                IndexReader reader = indexAccess.writer.getReader();
-                indexAccess.reader = reader;
-                indexAccess.searcher = new IndexSearcher(reader);
+                indexAccess.commit();
             } catch (IOException e) {
                 throw convertException(e);
             }
@@ -672,15 +696,9 @@ public class FullTextLucene2 extends FullText {
                     Field.Index.ANALYZED));
             try {
                 indexAccess.writer.addDocument(doc);
-                if (commitIndex) {
-                    indexAccess.writer.commit();
-                    // recreate Searcher with the IndexWriter's reader.
-                    indexAccess.searcher.close();
-                    indexAccess.reader.close();
-                    IndexReader reader = indexAccess.writer.getReader();
-                    indexAccess.reader = reader;
-                    indexAccess.searcher = new IndexSearcher(reader);
-                }
+                // the searcher is reopened by the next search
+                // and the commit is grouped with the next changes
+                indexAccess.changed(commitIndex);
             } catch (IOException e) {
                 throw convertException(e);
             }
@@ -701,6 +719,7 @@ public class FullTextLucene2 extends FullText {
                 //*/
                 //## LUCENE3 ##
                 indexAccess.writer.deleteDocuments(term);
+                indexAccess.changed(isCommitEnabled());
                 //*/
             } catch (IOException e) {
                 throw convertException(e);
@@ -763,6 +782,116 @@ public class FullTextLucene2 extends FullText {
         //## LUCENE3 ##
         Searcher searcher;
         //*/
+
+        //## LUCENE3 ##
+        /**
+         * Whether the writer has changes not visible to the reader.
+         */
+        boolean stale;
+
+        /**
+         * The number of changes since the last commit.
+         */
+        int pendingChanges;
+
+        /**
+         * The time of the first change since the last commit.
+         */
+        long firstPendingChange;
+
+        /**
+         * The scheduled commit, if any.
+         */
+        TimerTask commitTask;
+
+        boolean closed;
+
+        /**
+         * Record a change in the writer. The changes are committed when
+         * there are too many, or when the oldest is too old, so a bulk
+         * update results in a few commits instead of one per row.
+         *
+         * @param commitIndex whether the change must be committed
+         */
+        synchronized void changed(boolean commitIndex) throws IOException {
+            stale = true;
+            if (pendingChanges++ == 0) {
+                firstPendingChange = System.currentTimeMillis();
+            }
+            if (!commitIndex) {
+                return;
+            }
+            if (pendingChanges >= COMMIT_MAX_CHANGES ||
+                    System.currentTimeMillis() - firstPendingChange >= COMMIT_INTERVAL) {
+                commit();
+            } else if (commitTask == null) {
+                commitTask = new TimerTask() {
+                    public void run() {
+                        try {
+                            commit();
+                        } catch (Throwable e) {
+                            // retried with the next change or on close
+                            e.printStackTrace();
+                        }
+                    }
+                };
+                getCommitTimer().schedule(commitTask, COMMIT_INTERVAL);
+            }
+        }
+
+        /**
+         * Commit the pending changes to the index.
+         */
+        synchronized void commit() throws IOException {
+            if (commitTask != null) {
+                commitTask.cancel();
+                commitTask = null;
+            }
+            if (closed || pendingChanges == 0) {
+                return;
+            }
+            writer.commit();
+            pendingChanges = 0;
+        }
+
+        /**
+         * Get the current reader, reopened with the changes of the writer
+         * only if there were any since the last search (near real time).
+         * The caller must release it with releaseReader.
+         *
+         * @return the reader
+         */
+        synchronized IndexReader acquireReader() throws IOException {
+            if (stale) {
+                IndexReader newReader = IndexReader.openIfChanged(reader, writer, true);
+                if (newReader != null) {
+                    searcher.close();
+                    reader.decRef();
+                    reader = newReader;
+                    searcher = new IndexSearcher(reader);
+                }
+                stale = false;
+            }
+            reader.incRef();
+            return reader;
+        }
+
+        /**
+         * Release a reader returned by acquireReader.
+         *
+         * @param r the reader
+         */
+        void releaseReader(IndexReader r) throws IOException {
+            r.decRef();
+        }
+        //*/
+    }
+
+    private static synchronized Timer getCommitTimer() {
+        if (commitTimer == null) {
+            commitTimer = new Timer("FullTextLucene2-Commit", true);
+        }
+        return commitTimer;
     }
 
 }
@@ -24,10 +24,25 @@ import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.imageio.ImageIO;
 
-import org.limewire.concurrent.ThreadExecutor;
+import org.limewire.concurrent.ExecutorsHelper;
 
 import com.frostwire.logging.Logger;
 import com.frostwire.util.HttpClient;
@@ -35,6 +50,11 @@ import com.frostwire.util.HttpClientFactory;
 import com.limegroup.gnutella.settings.SharingSettings;
 
 /**
+ * Decoded images are kept in memory up to a number of bytes, the remote
+ * ones are downloaded by a small pool of threads, the visible ones first,
+ * and the requests for a URL already being downloaded wait for it. The
+ * disk cache is trimmed, oldest first, when it grows over its size.
+ * 
  * @author gubatron
  * @author aldenml
  *
@@ -43,6 +63,12 @@ public class ImageCache {
 
     private static final Logger LOG = Logger.getLogger(ImageCache.class);
 
+    private static final long MAX_MEMORY_BYTES = 32 * 1024 * 1024;
+
+    private static final long MAX_DISK_BYTES = 64 * 1024 * 1024;
+
+    private static final int FETCH_THREADS = 3;
+
     private static ImageCache instance;
 
     public synchronized static ImageCache instance() {
@@ -52,16 +78,50 @@ public class ImageCache {
         return instance;
     }
 
+    private final ThreadPoolExecutor fetchPool;
+    private final AtomicLong sequence;
+
+    // guarded by this
+    private final LinkedHashMap<String, BufferedImage> memory;
+    private long memoryBytes;
+    private final Map<String, List<OnLoadedListener>> inFlight;
+
+    // -1 until the cache folder is measured
+    private final AtomicLong diskBytes;
+    private final AtomicBoolean trimming;
+
     private ImageCache() {
+        this.fetchPool = new ThreadPoolExecutor(FETCH_THREADS, FETCH_THREADS, 60L, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(), ExecutorsHelper.daemonThreadFactory("ImageCache"));
+        this.fetchPool.allowCoreThreadTimeOut(true);
+        this.sequence = new AtomicLong();
+
+        this.memory = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true);
+        this.inFlight = new HashMap<String, List<OnLoadedListener>>();
+        this.diskBytes = new AtomicLong(-1);
+        this.trimming = new AtomicBoolean(false);
     }
 
     public BufferedImage getImage(URL url, OnLoadedListener listener) {
+        return getImage(url, listener, true);
+    }
+
+    /**
+     * @param visible true if the image is going to be shown right away,
+     * the downloads of visible images go before the others
+     */
+    public BufferedImage getImage(URL url, OnLoadedListener listener, boolean visible) {
+        BufferedImage image = getFromMemory(url);
+        if (image != null) {
+            listener.onLoaded(url, image, true, false);
+            return image;
+        }
+
         if (isCached(url)) {
             return loadFromCache(url, listener);
         } else if (!url.getProtocol().equals("http")) {
             return loadFromResource(url, listener);
         } else {
-            loadFromUrl(url, listener);
+            loadFromUrl(url, listener, visible);
             return null;
         }
     }
@@ -103,6 +163,7 @@ public class ImageCache {
         try {
             File file = getCacheFile(url);
             BufferedImage image = ImageIO.read(file);
+            putInMemory(url, image);
             listener.onLoaded(url, image, true, false);
             return image;
         } catch (Throwable e) {
@@ -119,6 +180,7 @@ public class ImageCache {
         try {
             BufferedImage image = ImageIO.read(url);
             saveToCache(url, image, 0);
+            putInMemory(url, image);
             listener.onLoaded(url, image, false, false);
             return image;
         } catch (Throwable e) {
@@ -128,32 +190,61 @@ public class ImageCache {
         }
     }
 
-    private void loadFromUrl(final URL url, final OnLoadedListener listener) {
-        ThreadExecutor.startThread(new Thread(new Runnable() {
+    private void loadFromUrl(final URL url, OnLoadedListener listener, boolean visible) {
+        final String key = url.toString();
+
+        synchronized (this) {
+            List<OnLoadedListener> waiting = inFlight.get(key);
+            if (waiting != null) {
+                waiting.add(listener);
+                return;
+            }
+            waiting = new ArrayList<OnLoadedListener>();
+            waiting.add(listener);
+            inFlight.put(key, waiting);
+        }
+
+        fetchPool.execute(new FetchTask(visible, sequence.getAndIncrement()) {
             public void run() {
+                BufferedImage image = null;
                 try {
-                    BufferedImage image = null;
                     HttpClient newInstance = HttpClientFactory.newInstance();
-                    byte[] data = newInstance.getBytes(url.toString());
-                    
+                    byte[] data = newInstance.getBytes(key);
+
                     if (data == null) {
-                        throw new IOException("ImageCache.loadUrl() got nothing at " + url.toString());
+                        throw new IOException("ImageCache.loadUrl() got nothing at " + key);
                     }
 
-                    if (data != null) {
-                        image = ImageIO.read(new ByteArrayInputStream(data));
+                    image = ImageIO.read(new ByteArrayInputStream(data));
+                    if (image != null) {
                         saveToCache(url, image, System.currentTimeMillis());
-                    }
-                    
-                    if (listener != null && image != null) {
-                        listener.onLoaded(url, image, false, false);
+                        putInMemory(url, image);
                     }
                 } catch (Throwable e) {
                     LOG.error("Failed to load image from: " + url, e);
-                    listener.onLoaded(url, null, false, true);
+                }
+
+                List<OnLoadedListener> waiting;
+                synchronized (ImageCache.this) {
+                    waiting = inFlight.remove(key);
+                }
+
+                for (OnLoadedListener l : waiting) {
+                    if (l == null) {
+                        continue;
+                    }
+                    try {
+                        if (image != null) {
+                            l.onLoaded(url, image, false, false);
+                        } else {
+                            l.onLoaded(url, null, false, true);
+                        }
+                    } catch (Throwable e) {
+                        LOG.error("Error notifying image load: " + url, e);
+                    }
                 }
             }
-        }),"ImageCache.loadFromUrl");
+        });
     }
 
     private void saveToCache(URL url, BufferedImage image, long date) {
@@ -161,7 +252,11 @@ public class ImageCache {
             File file = getCacheFile(url);
 
             if (file.exists()) {
-                file.delete();
+                long length = file.length();
+                // deleted first, if the counter is not known yet the scan doesn't count it
+                if (file.delete()) {
+                    addDiskBytes(-length);
+                }
             }
 
             String filename = file.getName();
@@ -171,15 +266,125 @@ public class ImageCache {
             String formatName = ImageIO.getImageReadersBySuffix(ext).next().getFormatName();
 
             if (!file.getParentFile().exists()) {
-                file.mkdirs();
+                file.getParentFile().mkdirs();
             }
             ImageIO.write(image, formatName, file);
             file.setLastModified(date);
+
+            if (addDiskBytes(file.length()) > MAX_DISK_BYTES) {
+                trimDisk();
+            }
         } catch (Throwable e) {
             LOG.error("Failed to save image to cache: " + url, e);
         }
     }
 
+    private synchronized BufferedImage getFromMemory(URL url) {
+        return memory.get(url.toString());
+    }
+
+    private synchronized void putInMemory(URL url, BufferedImage image) {
+        if (image == null) {
+            return;
+        }
+
+        BufferedImage old = memory.put(url.toString(), image);
+        if (old != null) {
+            memoryBytes -= bytes(old);
+        }
+        memoryBytes += bytes(image);
+
+        Iterator<BufferedImage> it = memory.values().iterator();
+        while (memoryBytes > MAX_MEMORY_BYTES && it.hasNext()) {
+            memoryBytes -= bytes(it.next());
+            it.remove();
+        }
+    }
+
+    private static long bytes(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+
+    /**
+     * Adds to the size of the files on disk, the first time the size is
+     * computed by listing the cache, with the change already in place.
+     */
+    private long addDiskBytes(long n) {
+        if (diskBytes.get() < 0) {
+            long total = 0;
+            for (File f : listCacheFiles()) {
+                total += f.length();
+            }
+            diskBytes.compareAndSet(-1, total);
+            return diskBytes.get();
+        }
+        return diskBytes.addAndGet(n);
+    }
+
+    /**
+     * Deletes the oldest files until the cache is under three quarters
+     * of its size.
+     */
+    private void trimDisk() {
+        if (!trimming.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            trimDiskFiles();
+        } finally {
+            trimming.set(false);
+        }
+    }
+
+    private void trimDiskFiles() {
+        List<File> files = listCacheFiles();
+        File[] sorted = files.toArray(new File[files.size()]);
+        Arrays.sort(sorted, new Comparator<File>() {
+            public int compare(File a, File b) {
+                long d = a.lastModified() - b.lastModified();
+                return d < 0 ? -1 : (d > 0 ? 1 : 0);
+            }
+        });
+
+        long total = 0;
+        for (File f : sorted) {
+            total += f.length();
+        }
+
+        long target = MAX_DISK_BYTES * 3 / 4;
+        for (int i = 0; i < sorted.length && total > target; i++) {
+            long length = sorted[i].length();
+            if (sorted[i].delete()) {
+                total -= length;
+            }
+        }
+
+        diskBytes.set(total);
+    }
+
+    private List<File> listCacheFiles() {
+        List<File> files = new ArrayList<File>();
+
+        Deque<File> stack = new ArrayDeque<File>();
+        stack.push(SharingSettings.getImageCacheDirectory());
+
+        while (!stack.isEmpty()) {
+            File[] children = stack.pop().listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    if (child.isDirectory()) {
+                        stack.push(child);
+                    } else {
+                        files.add(child);
+                    }
+                }
+            }
+        }
+
+        return files;
+    }
+
     public interface OnLoadedListener {
 
         /**
@@ -187,4 +392,26 @@ public class ImageCache {
          */
         public void onLoaded(URL url, BufferedImage image, boolean fromCache, boolean fail);
     }
+
+    /**
+     * Visible first, then in the order requested.
+     */
+    private static abstract class FetchTask implements Runnable, Comparable<FetchTask> {
+
+        private final boolean visible;
+        private final long sequence;
+
+        public FetchTask(boolean visible, long sequence) {
+            this.visible = visible;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(FetchTask o) {
+            if (visible != o.visible) {
+                return visible ? -1 : 1;
+            }
+            return sequence < o.sequence ? -1 : (sequence > o.sequence ? 1 : 0);
+        }
+    }
 }
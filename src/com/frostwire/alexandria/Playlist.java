@@ -17,8 +17,8 @@
 
 package com.frostwire.alexandria;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
 import com.frostwire.alexandria.db.LibraryDatabase;
@@ -42,10 +42,22 @@ public class Playlist extends LibraryDatabaseEntity {
 
     private List<PlaylistItem> _items;
 
+    /**
+     * Whether the items were read from the database, until then only the
+     * summary is known.
+     */
+    private boolean _itemsLoaded;
+    private int _itemCount;
+    private float _totalDuration;
+
+    /**
+     * Playlist read from the database, the items are loaded on demand.
+     */
     public Playlist(LibraryDatabase libraryDB) {
         super(libraryDB);
         _id = LibraryDatabase.OBJECT_INVALID_ID;
-        _items = Collections.synchronizedList(new LinkedList<PlaylistItem>());
+        _items = Collections.synchronizedList(new ArrayList<PlaylistItem>());
+        _itemsLoaded = false;
         this.deleted = false;
     }
 
@@ -54,7 +66,8 @@ public class Playlist extends LibraryDatabaseEntity {
         _id = id;
         _name = name;
         _description = description;
-        _items = new LinkedList<PlaylistItem>();
+        _items = new ArrayList<PlaylistItem>();
+        _itemsLoaded = true;
         this.deleted = false;
     }
 
@@ -86,18 +99,89 @@ public class Playlist extends LibraryDatabaseEntity {
         _description = description;
     }
 
+    /**
+     * Returns all the items, reading them from the database the first time.
+     * Prefer {@link #getItemCount()} and {@link #getItems(int, int)} when
+     * the whole list is not needed.
+     */
     public List<PlaylistItem> getItems() {
+        synchronized (this) {
+            if (!_itemsLoaded) {
+                _items.clear();
+                if (db != null) {
+                    _items.addAll(PlaylistItemDB.getPlaylistItems(db, this));
+                }
+                _itemsLoaded = true;
+            }
+        }
         return _items;
     }
 
+    /**
+     * Returns a page of the items in the sort index order, without loading
+     * the rest.
+     */
+    public List<PlaylistItem> getItems(int offset, int limit) {
+        synchronized (this) {
+            if (_itemsLoaded) {
+                int from = Math.min(offset, _items.size());
+                int to = from + Math.min(limit, _items.size() - from);
+                return new ArrayList<PlaylistItem>(_items.subList(from, to));
+            }
+        }
+        if (db != null) {
+            return PlaylistItemDB.getPlaylistItems(db, this, offset, limit);
+        }
+        return new ArrayList<PlaylistItem>();
+    }
+
+    public synchronized int getItemCount() {
+        return _itemsLoaded ? _items.size() : _itemCount;
+    }
+
+    /**
+     * Returns the sum of the durations of the items, in seconds.
+     */
+    public synchronized float getTotalDuration() {
+        if (!_itemsLoaded) {
+            return _totalDuration;
+        }
+        float totalSecs = 0;
+        synchronized (_items) {
+            for (PlaylistItem item : _items) {
+                totalSecs += item.getTrackDurationInSecs();
+            }
+        }
+        return totalSecs;
+    }
+
+    public synchronized boolean isItemsLoaded() {
+        return _itemsLoaded;
+    }
+
+    public synchronized void setItemsSummary(int itemCount, float totalDuration) {
+        _itemCount = itemCount;
+        _totalDuration = totalDuration;
+    }
+
     public boolean isDeleted() {
         return deleted;
     }
 
-    public synchronized void save() {
-        if (db != null) {
-            PlaylistDB.save(db, this);
-        }
+    /**
+     * @return false if the playlist couldn't be saved
+     */
+    public synchronized boolean save() {
+        return db != null && PlaylistDB.save(db, this);
+    }
+
+    /**
+     * Saves the items in a single transaction, they must belong to this playlist.
+     * 
+     * @return false if the items couldn't be saved
+     */
+    public boolean saveItems(List<PlaylistItem> items) {
+        return db != null && PlaylistItemDB.saveAll(db, items);
     }
 
     public synchronized void delete() {
@@ -107,10 +191,15 @@ public class Playlist extends LibraryDatabaseEntity {
         }
     }
 
+    /**
+     * Discards the loaded items, they are read again when needed, and
+     * updates the summary.
+     */
     public synchronized void refresh() {
         if (db != null) {
             _items.clear();
-            _items.addAll(PlaylistItemDB.getPlaylistItems(db, this));
+            _itemsLoaded = false;
+            PlaylistDB.fillItemsSummary(db, this);
         }
     }
 
@@ -51,7 +51,7 @@ public class PlaylistItem extends LibraryDatabaseEntity {
         this.trackNumber = trackNumber;
         this.trackYear = trackYear;
         this.starred = starred;
-        this.sortIndex = playlist != null ? (playlist.getItems().size() + 1) : 0; // set sortIndex to the last position (1-based) by default
+        this.sortIndex = playlist != null ? (playlist.getItemCount() + 1) : 0; // set sortIndex to the last position (1-based) by default
     }
 
     public Playlist getPlaylist() {
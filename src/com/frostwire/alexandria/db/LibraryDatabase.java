@@ -9,8 +9,10 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.frostwire.alexandria.Playlist;
 import com.frostwire.alexandria.PlaylistItem;
@@ -22,13 +24,24 @@ public class LibraryDatabase {
     public static final int STARRED_PLAYLIST_ID = -3;
 
     public static final int LIBRARY_VERSION_PLAYLIST_SORT_INDEXES = 4; // indicates db version when playlist sort indexes were added
-    public static final int LIBRARY_DATABASE_VERSION = 4;
+    public static final int LIBRARY_VERSION_FILES_INDEX = 5; // indicates db version when the library files token index was added
+    public static final int LIBRARY_DATABASE_VERSION = 5;
     
     private final File _databaseFile;
     private final String _name;
     
+    private static final int MAX_CACHED_STATEMENTS = 64;
+
     private Connection _connection;
 
+    /**
+     * Prepared statements of the main connection by SQL, least recently
+     * used are closed.
+     */
+    private final Map<String, PreparedStatement> _statements;
+
+    private int _transactionDepth;
+
     private boolean _closed;
 
     static {
@@ -45,6 +58,19 @@ public class LibraryDatabase {
         File path = databaseFile;
         _name = databaseFile.getName();
 
+        _statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            private static final long serialVersionUID = 3318561324637155458L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > MAX_CACHED_STATEMENTS) {
+                    closeStatement(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+
         _connection = openOrCreateDatabase(path, _name);
     }
 
@@ -60,12 +86,46 @@ public class LibraryDatabase {
         return _closed;
     }
 
+    /**
+     * Same as {@link #query(String, Object...)}, with the rows stored by
+     * column, for queries of many rows.
+     */
+    public synchronized QueryResult queryResult(String statementSql, Object... arguments) {
+        if (isClosed()) {
+            return null;
+        }
+
+        try {
+            PreparedStatement statement = prepare(statementSql, false);
+            setArguments(statement, arguments);
+
+            ResultSet resultSet = statement.executeQuery();
+            try {
+                return new QueryResult(resultSet);
+            } finally {
+                resultSet.close();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            evict(statementSql, false);
+        }
+
+        return null;
+    }
+
     public synchronized List<List<Object>> query(String statementSql, Object... arguments) {
         if (isClosed()) {
             return new ArrayList<List<Object>>();
         }
 
-        return query(_connection, statementSql, arguments);
+        try {
+            return query(prepare(statementSql, false), arguments);
+        } catch (Exception e) {
+            e.printStackTrace();
+            evict(statementSql, false);
+        }
+
+        return new ArrayList<List<Object>>();
     }
 
     /**
@@ -79,7 +139,15 @@ public class LibraryDatabase {
             return -1;
         }
 
-        return update(_connection, statementSql, arguments);
+        try {
+            return update(prepare(statementSql, false), arguments);
+        } catch (Exception e) {
+            evict(statementSql, false);
+            failTransaction(e);
+            e.printStackTrace();
+        }
+
+        return -1;
     }
 
     /**
@@ -97,13 +165,150 @@ public class LibraryDatabase {
             return OBJECT_INVALID_ID;
         }
 
-        if (update(statementSql, arguments) != -1) {
-            return getIdentity();
+        try {
+            return insert(prepare(statementSql, true), arguments);
+        } catch (Exception e) {
+            evict(statementSql, true);
+            failTransaction(e);
+            e.printStackTrace();
         }
 
         return OBJECT_INVALID_ID;
     }
 
+    /**
+     * Runs the insert for every row of arguments in a single transaction,
+     * reusing the prepared statement. If a row fails nothing is inserted,
+     * and inside another transaction the whole transaction is rolled back.
+     * 
+     * @return the generated ids, in the same order of the rows, all
+     *         {@link #OBJECT_INVALID_ID} if the batch failed
+     */
+    public synchronized int[] insertBatch(final String statementSql, final List<Object[]> rows) {
+        final int[] ids = new int[rows.size()];
+        Arrays.fill(ids, OBJECT_INVALID_ID);
+
+        if (isClosed() || !statementSql.toUpperCase().startsWith("INSERT")) {
+            return ids;
+        }
+
+        boolean success = runInTransaction(new Runnable() {
+            public void run() {
+                try {
+                    PreparedStatement statement = prepare(statementSql, true);
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = insert(statement, rows.get(i));
+                    }
+                } catch (SQLException e) {
+                    evict(statementSql, true);
+                    throw new TransactionFailedException(e);
+                }
+            }
+        });
+
+        if (!success) {
+            Arrays.fill(ids, OBJECT_INVALID_ID);
+        }
+
+        return ids;
+    }
+
+    /**
+     * Executes the statement for every row of arguments as a single JDBC
+     * batch and transaction. If a row fails nothing is updated, and inside
+     * another transaction the whole transaction is rolled back.
+     * 
+     * @return the update counts, in the same order of the rows, all -1 if
+     *         the batch failed
+     */
+    public synchronized int[] updateBatch(final String statementSql, final List<Object[]> rows) {
+        final int[] counts = new int[rows.size()];
+        Arrays.fill(counts, -1);
+
+        if (isClosed() || rows.isEmpty()) {
+            return counts;
+        }
+
+        boolean success = runInTransaction(new Runnable() {
+            public void run() {
+                try {
+                    PreparedStatement statement = prepare(statementSql, false);
+                    for (Object[] arguments : rows) {
+                        setArguments(statement, arguments);
+                        statement.addBatch();
+                    }
+                    int[] result = statement.executeBatch();
+                    System.arraycopy(result, 0, counts, 0, Math.min(result.length, counts.length));
+                } catch (SQLException e) {
+                    evict(statementSql, false);
+                    throw new TransactionFailedException(e);
+                }
+            }
+        });
+
+        if (!success) {
+            Arrays.fill(counts, -1);
+        }
+
+        return counts;
+    }
+
+    /**
+     * Runs the task in a single transaction holding the database lock, the
+     * statements of the task are committed together. Nested calls join
+     * the outer transaction.
+     * <p>
+     * If a statement of the task fails, or the task throws, everything is
+     * rolled back. A nested call rethrows the error so the outer task stops
+     * and its transaction is rolled back too.
+     * 
+     * @return true if the transaction was committed
+     */
+    public synchronized boolean runInTransaction(Runnable task) {
+        if (isClosed()) {
+            return false;
+        }
+
+        boolean success = false;
+
+        try {
+            if (_transactionDepth++ == 0) {
+                _connection.setAutoCommit(false);
+            }
+
+            task.run();
+            success = true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } catch (RuntimeException e) {
+            if (_transactionDepth > 1) {
+                throw e;
+            }
+            e.printStackTrace();
+        } finally {
+            if (--_transactionDepth == 0) {
+                try {
+                    if (success) {
+                        _connection.commit();
+                    } else {
+                        _connection.rollback();
+                    }
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                    success = false;
+                } finally {
+                    try {
+                        _connection.setAutoCommit(true);
+                    } catch (SQLException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+
+        return success;
+    }
+
     public synchronized void close() {
         if (isClosed()) {
             return;
@@ -111,6 +316,11 @@ public class LibraryDatabase {
 
         _closed = true;
 
+        for (PreparedStatement statement : _statements.values()) {
+            closeStatement(statement);
+        }
+        _statements.clear();
+
         try {
             Statement statement = _connection.createStatement();
             statement.execute("SHUTDOWN");
@@ -143,10 +353,14 @@ public class LibraryDatabase {
             setupLuceneIndex(connection);
         }
         
-        if (newVersion == 4) {
+        if (oldVersion < LIBRARY_VERSION_PLAYLIST_SORT_INDEXES) {
             setupPlaylistIndexes(connection);
         }
 
+        if (oldVersion < LIBRARY_VERSION_FILES_INDEX) {
+            setupLibraryFilesIndex(connection);
+        }
+
         update(connection, "UPDATE Library SET version = ?", LIBRARY_DATABASE_VERSION);
     }
 
@@ -187,6 +401,8 @@ public class LibraryDatabase {
 
         setupLuceneIndex(connection);
 
+        setupLibraryFilesIndex(connection);
+
         // INITIAL DATA
         update(connection, "INSERT INTO Library (name , version) VALUES (?, ?)", name, LIBRARY_DATABASE_VERSION);
 
@@ -212,7 +428,7 @@ public class LibraryDatabase {
         int numColums = meta.getColumnCount();
         int i;
 
-        List<List<Object>> result = new LinkedList<List<Object>>();
+        List<List<Object>> result = new ArrayList<List<Object>>();
 
         while (resultSet.next()) {
             List<Object> row = new ArrayList<Object>(numColums);
@@ -224,33 +440,81 @@ public class LibraryDatabase {
         return result;
     }
 
-    private int getIdentity() {
-        if (isClosed()) {
-            return OBJECT_INVALID_ID;
+    private PreparedStatement prepare(String statementSql, boolean generatedKeys) throws SQLException {
+        String key = (generatedKeys ? "K:" : "S:") + statementSql;
+
+        PreparedStatement statement = _statements.get(key);
+        if (statement == null) {
+            if (generatedKeys) {
+                statement = _connection.prepareStatement(statementSql, Statement.RETURN_GENERATED_KEYS);
+            } else {
+                statement = _connection.prepareStatement(statementSql);
+            }
+            _statements.put(key, statement);
         }
 
-        Statement statement = null;
-        ResultSet resultSet = null;
+        return statement;
+    }
 
-        try {
-            statement = _connection.createStatement();
-            resultSet = statement.executeQuery("CALL IDENTITY()");
+    /**
+     * Inside a transaction a failed statement can't be ignored, the
+     * transaction has to be rolled back.
+     */
+    private void failTransaction(Exception e) {
+        if (_transactionDepth > 0) {
+            throw new TransactionFailedException(e);
+        }
+    }
 
-            resultSet.next();
+    private void evict(String statementSql, boolean generatedKeys) {
+        closeStatement(_statements.remove((generatedKeys ? "K:" : "S:") + statementSql));
+    }
 
-            return resultSet.getInt(1);
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            if (statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException e) {
-                }
+    private static void closeStatement(Statement statement) {
+        if (statement != null) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
             }
         }
+    }
 
-        return OBJECT_INVALID_ID;
+    private static void setArguments(PreparedStatement statement, Object... arguments) throws SQLException {
+        statement.clearParameters();
+        if (arguments != null) {
+            for (int i = 0; i < arguments.length; i++) {
+                statement.setObject(i + 1, arguments[i]);
+            }
+        }
+    }
+
+    private List<List<Object>> query(PreparedStatement statement, Object... arguments) throws SQLException {
+        setArguments(statement, arguments);
+
+        ResultSet resultSet = statement.executeQuery();
+        try {
+            return convertResultSetToList(resultSet);
+        } finally {
+            resultSet.close();
+        }
+    }
+
+    private int update(PreparedStatement statement, Object... arguments) throws SQLException {
+        setArguments(statement, arguments);
+        return statement.executeUpdate();
+    }
+
+    private int insert(PreparedStatement statement, Object... arguments) throws SQLException {
+        if (update(statement, arguments) == -1) {
+            return OBJECT_INVALID_ID;
+        }
+
+        ResultSet resultSet = statement.getGeneratedKeys();
+        try {
+            return resultSet.next() ? resultSet.getInt(1) : OBJECT_INVALID_ID;
+        } finally {
+            resultSet.close();
+        }
     }
 
     private List<List<Object>> query(Connection connection, String statementSql, Object... arguments) {
@@ -335,6 +599,17 @@ public class LibraryDatabase {
         update(connection, "CALL FTL_CREATE_INDEX('PUBLIC', 'INTERNETRADIOSTATIONS', 'NAME, DESCRIPTION, GENRE')");
     }
     
+    private void setupLibraryFilesIndex(final Connection connection) {
+        update(connection, "CREATE TABLE LibraryFiles (fileId INTEGER IDENTITY, filePath VARCHAR(10000), fileName VARCHAR(500))");
+        update(connection, "CREATE INDEX idx_LibraryFiles_filePath ON LibraryFiles (filePath)");
+
+        update(connection, "CREATE TABLE LibraryFileTokens (fileId INTEGER, token VARCHAR(100), inName BOOLEAN)");
+        update(connection, "CREATE INDEX idx_LibraryFileTokens_token ON LibraryFileTokens (token)");
+        update(connection, "CREATE INDEX idx_LibraryFileTokens_fileId ON LibraryFileTokens (fileId)");
+
+        update(connection, "CREATE TABLE LibraryIndexedFolders (folderPath VARCHAR(10000), dateIndexed BIGINT)");
+    }
+
     private void setupPlaylistIndexes(final Connection connection) {
         
         // add new column
@@ -353,4 +628,16 @@ public class LibraryDatabase {
             }
         }
     }
+
+    /**
+     * A statement failed inside {@link LibraryDatabase#runInTransaction(Runnable)}.
+     */
+    private static final class TransactionFailedException extends RuntimeException {
+
+        private static final long serialVersionUID = -2153468315520781693L;
+
+        public TransactionFailedException(Throwable cause) {
+            super(cause);
+        }
+    }
 }
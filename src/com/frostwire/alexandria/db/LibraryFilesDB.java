@@ -0,0 +1,196 @@
+package com.frostwire.alexandria.db;
+
+import java.io.File;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Token index of the library file paths. Every path is normalized (NFKD, no
+ * diacritics, lower case) and split in tokens, so a search by keywords is
+ * answered with indexed prefix lookups instead of walking the disk.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public class LibraryFilesDB {
+
+    private static final int MAX_TOKEN_LENGTH = 100;
+
+    private LibraryFilesDB() {
+    } // don't allow instantiation of this class
+
+    public static boolean isFolderIndexed(LibraryDatabase db, File folder) {
+        List<List<Object>> result = db.query("SELECT folderPath FROM LibraryIndexedFolders WHERE folderPath = ?", folder.getAbsolutePath());
+        return result.size() > 0;
+    }
+
+    public static void setFolderIndexed(LibraryDatabase db, File folder, boolean indexed) {
+        db.update("DELETE FROM LibraryIndexedFolders WHERE folderPath = ?", folder.getAbsolutePath());
+        if (indexed) {
+            db.update("INSERT INTO LibraryIndexedFolders (folderPath, dateIndexed) VALUES (LEFT(?, 10000), ?)", folder.getAbsolutePath(), System.currentTimeMillis());
+        }
+    }
+
+    public static List<File> getIndexedFolders(LibraryDatabase db) {
+        List<List<Object>> result = db.query("SELECT folderPath FROM LibraryIndexedFolders");
+
+        List<File> folders = new ArrayList<File>(result.size());
+        for (List<Object> row : result) {
+            folders.add(new File((String) row.get(0)));
+        }
+
+        return folders;
+    }
+
+    public static void add(LibraryDatabase db, File file) {
+        add(db, Collections.singletonList(file));
+    }
+
+    /**
+     * Indexes the files in a single transaction, the rows of every table are
+     * written as one batch.
+     */
+    public static void add(final LibraryDatabase db, final List<File> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+
+        db.runInTransaction(new Runnable() {
+            public void run() {
+                List<Object[]> paths = new ArrayList<Object[]>(files.size());
+                List<Object[]> fileRows = new ArrayList<Object[]>(files.size());
+                for (File file : files) {
+                    String filePath = file.getAbsolutePath();
+                    paths.add(new Object[] { filePath });
+                    fileRows.add(new Object[] { filePath, file.getName() });
+                }
+
+                db.updateBatch("DELETE FROM LibraryFileTokens WHERE fileId IN (SELECT fileId FROM LibraryFiles WHERE filePath = ?)", paths);
+                db.updateBatch("DELETE FROM LibraryFiles WHERE filePath = ?", paths);
+
+                int[] ids = db.insertBatch("INSERT INTO LibraryFiles (filePath, fileName) VALUES (LEFT(?, 10000), LEFT(?, 500))", fileRows);
+
+                List<Object[]> tokenRows = new ArrayList<Object[]>();
+                for (int i = 0; i < ids.length; i++) {
+                    if (ids[i] < 0) {
+                        continue;
+                    }
+
+                    File file = files.get(i);
+                    Set<String> nameTokens = new LinkedHashSet<String>(tokenize(file.getName()));
+                    Set<String> pathTokens = new LinkedHashSet<String>(tokenize(file.getAbsolutePath()));
+                    pathTokens.removeAll(nameTokens);
+
+                    for (String token : nameTokens) {
+                        tokenRows.add(new Object[] { ids[i], token, Boolean.TRUE });
+                    }
+                    for (String token : pathTokens) {
+                        tokenRows.add(new Object[] { ids[i], token, Boolean.FALSE });
+                    }
+                }
+
+                db.updateBatch("INSERT INTO LibraryFileTokens (fileId, token, inName) VALUES (?, ?, ?)", tokenRows);
+            }
+        });
+    }
+
+    public static void remove(LibraryDatabase db, String filePath) {
+        db.update("DELETE FROM LibraryFileTokens WHERE fileId IN (SELECT fileId FROM LibraryFiles WHERE filePath = ?)", filePath);
+        db.update("DELETE FROM LibraryFiles WHERE filePath = ?", filePath);
+    }
+
+    /**
+     * Removes all the indexed files under the given folder.
+     */
+    public static void removeFolder(LibraryDatabase db, File folder) {
+        String like = escapeLike(folder.getAbsolutePath() + File.separator) + "%";
+
+        db.update("DELETE FROM LibraryFileTokens WHERE fileId IN (SELECT fileId FROM LibraryFiles WHERE filePath LIKE ?)", like);
+        db.update("DELETE FROM LibraryFiles WHERE filePath LIKE ?", like);
+    }
+
+    /**
+     * Returns a page of indexed file paths under the given folders containing
+     * all the tokens of the query, sorted by the number of query tokens found
+     * in the file name. A query without tokens returns all the files.
+     */
+    public static List<String> search(LibraryDatabase db, String query, Set<File> folders, int offset, int limit) {
+        List<String> tokens = tokenize(query);
+
+        if (folders.isEmpty()) {
+            return new ArrayList<String>();
+        }
+
+        List<Object> arguments = new ArrayList<Object>();
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("SELECT F.filePath, ");
+        if (tokens.isEmpty()) {
+            // no keywords, list everything under the folders
+            sb.append("0");
+        } else {
+            sb.append("(SELECT COUNT(*) FROM LibraryFileTokens R WHERE R.fileId = F.fileId AND R.inName = TRUE AND (");
+            for (int i = 0; i < tokens.size(); i++) {
+                sb.append(i > 0 ? " OR " : "").append("R.token LIKE ?");
+                arguments.add(escapeLike(tokens.get(i)) + "%");
+            }
+            sb.append("))");
+        }
+        sb.append(" AS rank FROM LibraryFiles F WHERE (");
+
+        int i = 0;
+        for (File folder : folders) {
+            sb.append(i++ > 0 ? " OR " : "").append("F.filePath LIKE ?");
+            arguments.add(escapeLike(folder.getAbsolutePath() + File.separator) + "%");
+        }
+        sb.append(")");
+
+        for (String token : tokens) {
+            sb.append(" AND F.fileId IN (SELECT T.fileId FROM LibraryFileTokens T WHERE T.token LIKE ?)");
+            arguments.add(escapeLike(token) + "%");
+        }
+
+        sb.append(" ORDER BY rank DESC, F.fileName LIMIT ? OFFSET ?");
+        arguments.add(limit);
+        arguments.add(offset);
+
+        List<List<Object>> rows = db.query(sb.toString(), arguments.toArray());
+
+        List<String> paths = new ArrayList<String>(rows.size());
+        for (List<Object> row : rows) {
+            paths.add((String) row.get(0));
+        }
+
+        return paths;
+    }
+
+    public static List<String> tokenize(String str) {
+        String[] parts = normalize(str).split("[^\\p{L}\\p{N}]+");
+
+        List<String> tokens = new ArrayList<String>(parts.length);
+        for (String part : parts) {
+            if (part.length() == 0) {
+                continue;
+            }
+            tokens.add(part.length() > MAX_TOKEN_LENGTH ? part.substring(0, MAX_TOKEN_LENGTH) : part);
+        }
+
+        return tokens;
+    }
+
+    private static String normalize(String str) {
+        String norm = Normalizer.normalize(str, Normalizer.Form.NFKD);
+        norm = norm.replaceAll("\\p{InCombiningDiacriticalMarks}+", "");
+        return norm.toLowerCase(Locale.US);
+    }
+
+    private static String escapeLike(String str) {
+        return str.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -1,8 +1,10 @@
 package com.frostwire.alexandria.db;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.frostwire.alexandria.Playlist;
@@ -17,9 +19,13 @@ public class PlaylistDB {
         if (result.size() > 0) {
             List<Object> row = result.get(0);
             fill(row, obj);
+            fillItemsSummary(db, obj);
         }
     }
 
+    /**
+     * Fills the playlist metadata, the items are loaded on demand.
+     */
     public static void fill(List<Object> row, Playlist p) {
         int id = (Integer) row.get(0);
         String name = (String) row.get(1);
@@ -28,29 +34,58 @@ public class PlaylistDB {
         p.setId(id);
         p.setName(name);
         p.setDescription(description);
-        p.refresh();
     }
 
-    public static void save(LibraryDatabase db, Playlist obj) {
+    /**
+     * Updates the number of items and total duration of the playlist,
+     * without loading the items.
+     */
+    public static void fillItemsSummary(LibraryDatabase db, Playlist p) {
+        List<List<Object>> result = db.query("SELECT COUNT(*), SUM(trackDurationInSecs) FROM PlaylistItems WHERE playlistId = ?", p.getId());
+        if (result.size() > 0) {
+            List<Object> row = result.get(0);
+            p.setItemsSummary(toInt(row.get(0)), toFloat(row.get(1)));
+        }
+    }
+
+    /**
+     * Saves the playlist and all its items in one transaction.
+     * 
+     * @return false if it failed and nothing was saved
+     */
+    public static boolean save(final LibraryDatabase db, final Playlist obj) {
         if (obj.getId() == LibraryDatabase.OBJECT_INVALID_ID) {
-            return;
+            return false;
         }
 
-        if (obj.getId() == LibraryDatabase.OBJECT_NOT_SAVED_ID) {
-            int id = db.insert("INSERT INTO Playlists (name, description) VALUES (LEFT(?, 500), LEFT(?, 10000))", obj.getName(), obj.getDescription());
+        final int id = obj.getId();
+
+        boolean success = db.runInTransaction(new Runnable() {
+            public void run() {
+                if (obj.getId() == LibraryDatabase.OBJECT_NOT_SAVED_ID) {
+                    obj.setId(db.insert("INSERT INTO Playlists (name, description) VALUES (LEFT(?, 500), LEFT(?, 10000))", obj.getName(), obj.getDescription()));
+                } else {
+                    db.update("DELETE FROM PlaylistItems WHERE playlistId = ?", obj.getId());
+                    Object[] statementObjects = createPlaylistUpdateStatement(obj);
+                    db.update((String) statementObjects[0], (Object[]) statementObjects[1]);
+                }
+
+                List<PlaylistItem> items = new ArrayList<PlaylistItem>(obj.getItems());
+
+                for (PlaylistItem item : items) {
+                    item.setId(LibraryDatabase.OBJECT_NOT_SAVED_ID);
+                }
+
+                PlaylistItemDB.saveAll(db, items);
+            }
+        });
+
+        if (!success) {
+            // the insert was rolled back
             obj.setId(id);
-        } else {
-            db.update("DELETE FROM PlaylistItems WHERE playlistId = ?", obj.getId());
-            Object[] statementObjects = createPlaylistUpdateStatement(obj);
-            db.update((String) statementObjects[0], (Object[]) statementObjects[1]);
         }
-        
-        List<PlaylistItem> items = new ArrayList<PlaylistItem>(obj.getItems());
 
-        for (PlaylistItem item : items) {
-            item.setId(LibraryDatabase.OBJECT_NOT_SAVED_ID);
-            item.save();
-        }
+        return success;
     }
 
     public static void delete(LibraryDatabase db, Playlist obj) {
@@ -61,11 +96,23 @@ public class PlaylistDB {
     public static List<Playlist> getPlaylists(LibraryDatabase db) {
         List<List<Object>> result = db.query("SELECT playlistId, name, description FROM Playlists");
 
+        // one query for the summary of all the playlists
+        Map<Integer, List<Object>> summaries = new HashMap<Integer, List<Object>>();
+        for (List<Object> row : db.query("SELECT playlistId, COUNT(*), SUM(trackDurationInSecs) FROM PlaylistItems GROUP BY playlistId")) {
+            summaries.put(toInt(row.get(0)), row);
+        }
+
         List<Playlist> playlists = new ArrayList<Playlist>(result.size());
 
         for (List<Object> row : result) {
             Playlist playlist = new Playlist(db);
             PlaylistDB.fill(row, playlist);
+            List<Object> summary = summaries.get(playlist.getId());
+            if (summary != null) {
+                playlist.setItemsSummary(toInt(summary.get(1)), toFloat(summary.get(2)));
+            } else {
+                playlist.setItemsSummary(0, 0);
+            }
             playlists.add(playlist);
         }
 
@@ -79,6 +126,7 @@ public class PlaylistDB {
             List<Object> row = result.get(0);
             playlist = new Playlist(db);
             PlaylistDB.fill(row, playlist);
+            fillItemsSummary(db, playlist);
         }
         return playlist;
     }
@@ -120,6 +168,14 @@ public class PlaylistDB {
         return new Object[] { sql, values };
     }
     
+    private static int toInt(Object value) {
+        return value != null ? ((Number) value).intValue() : 0;
+    }
+
+    private static float toFloat(Object value) {
+        return value != null ? ((Number) value).floatValue() : 0;
+    }
+
     private static Object[] createPlaylistUpdateStatement(Playlist obj) {
         String sql = "UPDATE Playlists SET name = LEFT(?, 500), description = LEFT(?, 10000) WHERE playlistId = ?";
         Object[] values = new Object[] { obj.getName(), obj.getDescription(), obj.getId() };
@@ -1,7 +1,9 @@
 package com.frostwire.alexandria.db;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import com.frostwire.alexandria.Playlist;
 import com.frostwire.alexandria.PlaylistItem;
@@ -59,6 +61,26 @@ public class PlaylistItemDB {
         obj.setSortIndex(sortIndex);
     }
 
+    public static void fill(QueryResult result, int row, PlaylistItem obj) {
+        obj.setId(result.getInt(row, 0));
+        obj.setFilePath(result.getString(row, 1));
+        obj.setFileName(result.getString(row, 2));
+        obj.setFileSize(result.getLong(row, 3));
+        obj.setFileExtension(result.getString(row, 4));
+        obj.setTrackTitle(result.getString(row, 5));
+        obj.setTrackDurationInSecs(result.getFloat(row, 6));
+        obj.setTrackArtist(result.getString(row, 7));
+        obj.setTrackAlbum(result.getString(row, 8));
+        obj.setCoverArtPath(result.getString(row, 9));
+        obj.setTrackBitrate(result.getString(row, 10));
+        obj.setTrackComment(result.getString(row, 11));
+        obj.setTrackGenre(result.getString(row, 12));
+        obj.setTrackNumber(result.getString(row, 13));
+        obj.setTrackYear(result.getString(row, 14));
+        obj.setStarred(result.getBoolean(row, 15));
+        obj.setSortIndex(result.getColumnCount() < 17 ? 0 : result.getInt(row, 16));
+    }
+
     public static void save(LibraryDatabase db, PlaylistItem obj) {
         if (obj.getId() == LibraryDatabase.OBJECT_INVALID_ID || obj.getPlaylist() == null) {
             return;
@@ -79,6 +101,90 @@ public class PlaylistItemDB {
         }
     }
 
+    /**
+     * Same as {@link #save(LibraryDatabase, PlaylistItem)} for every item,
+     * but in a single transaction and reusing the statements.
+     * 
+     * @return false if it failed and nothing was saved
+     */
+    public static boolean saveAll(final LibraryDatabase db, final List<PlaylistItem> items) {
+        final List<PlaylistItem> inserted = new ArrayList<PlaylistItem>();
+
+        boolean success = false;
+        try {
+            success = db.runInTransaction(new Runnable() {
+                public void run() {
+                    Set<String> starredPaths = getStarredPaths(db);
+
+                    List<Object[]> insertValues = new ArrayList<Object[]>();
+                    List<Object[]> updateValues = new ArrayList<Object[]>();
+                    List<Object[]> starredValues = new ArrayList<Object[]>();
+
+                    String insertSql = null;
+                    String updateSql = null;
+                    String starredSql = null;
+
+                    for (PlaylistItem item : items) {
+                        if (item.getId() == LibraryDatabase.OBJECT_INVALID_ID || item.getPlaylist() == null) {
+                            continue;
+                        }
+
+                        Object[] sqlAndValues;
+
+                        if (item.getId() == LibraryDatabase.OBJECT_NOT_SAVED_ID) {
+                            item.setStarred(starredPaths.contains(item.getFilePath()) || item.isStarred());
+                            sqlAndValues = createPlaylistItemInsert(item);
+                            insertSql = (String) sqlAndValues[0];
+                            insertValues.add((Object[]) sqlAndValues[1]);
+                            inserted.add(item);
+
+                            if (!item.isStarred()) {
+                                // nothing to propagate, the other rows are not starred either
+                                continue;
+                            }
+                        } else {
+                            sqlAndValues = createPlaylistItemUpdate(item);
+                            updateSql = (String) sqlAndValues[0];
+                            updateValues.add((Object[]) sqlAndValues[1]);
+                        }
+
+                        if (item.isStarred()) {
+                            starredPaths.add(item.getFilePath());
+                        } else {
+                            starredPaths.remove(item.getFilePath());
+                        }
+
+                        sqlAndValues = updateStarred(item);
+                        starredSql = (String) sqlAndValues[0];
+                        starredValues.add((Object[]) sqlAndValues[1]);
+                    }
+
+                    if (insertSql != null) {
+                        int[] ids = db.insertBatch(insertSql, insertValues);
+                        for (int i = 0; i < ids.length; i++) {
+                            inserted.get(i).setId(ids[i]);
+                        }
+                    }
+                    if (updateSql != null) {
+                        db.updateBatch(updateSql, updateValues);
+                    }
+                    if (starredSql != null) {
+                        db.updateBatch(starredSql, starredValues);
+                    }
+                }
+            });
+        } finally {
+            if (!success) {
+                // the inserts were rolled back
+                for (PlaylistItem item : inserted) {
+                    item.setId(LibraryDatabase.OBJECT_NOT_SAVED_ID);
+                }
+            }
+        }
+
+        return success;
+    }
+
     public static void delete(LibraryDatabase db, PlaylistItem obj) {
         db.update("DELETE FROM PlaylistItems WHERE playlistItemId = ?", obj.getId());
     }
@@ -87,13 +193,29 @@ public class PlaylistItemDB {
         String query = "SELECT playlistItemId, filePath, fileName, fileSize, fileExtension, trackTitle, trackDurationInSecs, trackArtist, trackAlbum, coverArtPath, trackBitrate, trackComment, trackGenre, trackNumber, trackYear, starred, sortIndex "
                 + "FROM PlaylistItems WHERE playlistId = ? ORDER BY sortIndex ASC";
 
-        List<List<Object>> result = db.query(query, playlist.getId());
+        return createPlaylistItems(playlist, db.queryResult(query, playlist.getId()));
+    }
+
+    /**
+     * Returns a page of the items of the playlist, in the sort index order.
+     */
+    public static List<PlaylistItem> getPlaylistItems(LibraryDatabase db, Playlist playlist, int offset, int limit) {
+        String query = "SELECT playlistItemId, filePath, fileName, fileSize, fileExtension, trackTitle, trackDurationInSecs, trackArtist, trackAlbum, coverArtPath, trackBitrate, trackComment, trackGenre, trackNumber, trackYear, starred, sortIndex "
+                + "FROM PlaylistItems WHERE playlistId = ? ORDER BY sortIndex ASC, playlistItemId ASC LIMIT ? OFFSET ?";
+
+        return createPlaylistItems(playlist, db.queryResult(query, playlist.getId(), limit, offset));
+    }
+
+    private static List<PlaylistItem> createPlaylistItems(Playlist playlist, QueryResult result) {
+        if (result == null) {
+            return new ArrayList<PlaylistItem>();
+        }
 
         List<PlaylistItem> items = new ArrayList<PlaylistItem>(result.size());
 
-        for (List<Object> row : result) {
+        for (int i = 0; i < result.size(); i++) {
             PlaylistItem item = new PlaylistItem(playlist);
-            PlaylistItemDB.fill(row, item);
+            PlaylistItemDB.fill(result, i, item);
             items.add(item);
         }
 
@@ -138,4 +260,15 @@ public class PlaylistItemDB {
         
         return false;
     }
+
+    private static Set<String> getStarredPaths(LibraryDatabase db) {
+        List<List<Object>> result = db.query("SELECT DISTINCT filePath FROM PlaylistItems WHERE starred = ?", true);
+
+        Set<String> paths = new HashSet<String>(result.size());
+        for (List<Object> row : result) {
+            paths.add((String) row.get(0));
+        }
+
+        return paths;
+    }
 }
@@ -0,0 +1,241 @@
+package com.frostwire.alexandria.db;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Rows of a query stored by column, numbers and booleans in primitive
+ * arrays, instead of a boxed list of objects per row.
+ */
+public final class QueryResult {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int[] types;
+    private final Object[] columns;
+    private final BitSet[] nulls;
+
+    private int size;
+
+    QueryResult(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData meta = resultSet.getMetaData();
+        int numColumns = meta.getColumnCount();
+
+        types = new int[numColumns];
+        columns = new Object[numColumns];
+        nulls = new BitSet[numColumns];
+
+        for (int i = 0; i < numColumns; i++) {
+            types[i] = storageType(meta.getColumnType(i + 1));
+            columns[i] = newColumn(types[i], INITIAL_CAPACITY);
+            nulls[i] = new BitSet();
+        }
+
+        while (resultSet.next()) {
+            if (size == capacity()) {
+                grow();
+            }
+            for (int i = 0; i < numColumns; i++) {
+                read(resultSet, i);
+            }
+            size++;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public boolean isNull(int row, int column) {
+        checkRow(row);
+        return nulls[column].get(row);
+    }
+
+    public int getInt(int row, int column) {
+        checkRow(row);
+        switch (types[column]) {
+        case Types.INTEGER:
+            return ((int[]) columns[column])[row];
+        case Types.BIGINT:
+            return (int) ((long[]) columns[column])[row];
+        default:
+            Object value = ((Object[]) columns[column])[row];
+            return value != null ? ((Number) value).intValue() : 0;
+        }
+    }
+
+    public long getLong(int row, int column) {
+        checkRow(row);
+        switch (types[column]) {
+        case Types.INTEGER:
+            return ((int[]) columns[column])[row];
+        case Types.BIGINT:
+            return ((long[]) columns[column])[row];
+        default:
+            Object value = ((Object[]) columns[column])[row];
+            return value != null ? ((Number) value).longValue() : 0;
+        }
+    }
+
+    public float getFloat(int row, int column) {
+        checkRow(row);
+        switch (types[column]) {
+        case Types.REAL:
+            return ((float[]) columns[column])[row];
+        case Types.INTEGER:
+        case Types.BIGINT:
+            return getLong(row, column);
+        default:
+            Object value = ((Object[]) columns[column])[row];
+            return value != null ? ((Number) value).floatValue() : 0;
+        }
+    }
+
+    public boolean getBoolean(int row, int column) {
+        checkRow(row);
+        if (types[column] == Types.BOOLEAN) {
+            return ((BitSet) columns[column]).get(row);
+        }
+        Object value = ((Object[]) columns[column])[row];
+        return value != null && (Boolean) value;
+    }
+
+    public String getString(int row, int column) {
+        Object value = getObject(row, column);
+        return value != null ? value.toString() : null;
+    }
+
+    /**
+     * Returns the value boxed, integer types smaller than BIGINT as
+     * <code>Integer</code>.
+     */
+    public Object getObject(int row, int column) {
+        if (isNull(row, column)) {
+            return null;
+        }
+        switch (types[column]) {
+        case Types.INTEGER:
+            return getInt(row, column);
+        case Types.BIGINT:
+            return getLong(row, column);
+        case Types.REAL:
+            return getFloat(row, column);
+        case Types.BOOLEAN:
+            return getBoolean(row, column);
+        default:
+            return ((Object[]) columns[column])[row];
+        }
+    }
+
+    private void read(ResultSet resultSet, int i) throws SQLException {
+        int index = i + 1;
+        switch (types[i]) {
+        case Types.INTEGER:
+            ((int[]) columns[i])[size] = resultSet.getInt(index);
+            break;
+        case Types.BIGINT:
+            ((long[]) columns[i])[size] = resultSet.getLong(index);
+            break;
+        case Types.REAL:
+            ((float[]) columns[i])[size] = resultSet.getFloat(index);
+            break;
+        case Types.BOOLEAN:
+            ((BitSet) columns[i]).set(size, resultSet.getBoolean(index));
+            break;
+        default:
+            ((Object[]) columns[i])[size] = resultSet.getObject(index);
+            break;
+        }
+        if (resultSet.wasNull()) {
+            nulls[i].set(size);
+        }
+    }
+
+    private int capacity() {
+        for (int i = 0; i < columns.length; i++) {
+            switch (types[i]) {
+            case Types.INTEGER:
+                return ((int[]) columns[i]).length;
+            case Types.BIGINT:
+                return ((long[]) columns[i]).length;
+            case Types.REAL:
+                return ((float[]) columns[i]).length;
+            case Types.BOOLEAN:
+                continue;
+            default:
+                return ((Object[]) columns[i]).length;
+            }
+        }
+        // only booleans, bit sets grow by themselves
+        return Integer.MAX_VALUE;
+    }
+
+    private void grow() {
+        int capacity = size * 2;
+        for (int i = 0; i < columns.length; i++) {
+            switch (types[i]) {
+            case Types.INTEGER:
+                columns[i] = Arrays.copyOf((int[]) columns[i], capacity);
+                break;
+            case Types.BIGINT:
+                columns[i] = Arrays.copyOf((long[]) columns[i], capacity);
+                break;
+            case Types.REAL:
+                columns[i] = Arrays.copyOf((float[]) columns[i], capacity);
+                break;
+            case Types.BOOLEAN:
+                break;
+            default:
+                columns[i] = Arrays.copyOf((Object[]) columns[i], capacity);
+                break;
+            }
+        }
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + size);
+        }
+    }
+
+    private static int storageType(int sqlType) {
+        switch (sqlType) {
+        case Types.INTEGER:
+        case Types.SMALLINT:
+        case Types.TINYINT:
+            return Types.INTEGER;
+        case Types.BIGINT:
+            return Types.BIGINT;
+        case Types.REAL:
+            return Types.REAL;
+        case Types.BOOLEAN:
+        case Types.BIT:
+            return Types.BOOLEAN;
+        default:
+            return Types.OTHER;
+        }
+    }
+
+    private static Object newColumn(int type, int capacity) {
+        switch (type) {
+        case Types.INTEGER:
+            return new int[capacity];
+        case Types.BIGINT:
+            return new long[capacity];
+        case Types.REAL:
+            return new float[capacity];
+        case Types.BOOLEAN:
+            return new BitSet(capacity);
+        default:
+            return new Object[capacity];
+        }
+    }
+}
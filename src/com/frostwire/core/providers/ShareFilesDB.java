@@ -18,10 +18,14 @@
 
 package com.frostwire.core.providers;
 
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.frostwire.content.ContentValues;
 import com.frostwire.content.Context;
 import com.frostwire.core.Constants;
 import com.frostwire.database.Cursor;
+import com.frostwire.database.SQLException;
 import com.frostwire.database.sqlite.SQLiteDatabase;
 import com.frostwire.database.sqlite.SQLiteOpenHelper;
 import com.frostwire.database.sqlite.SQLiteQueryBuilder;
@@ -47,6 +51,12 @@ public final class ShareFilesDB {
 
     private final DatabaseHelper databaseHelper;
 
+    /**
+     * Incremented on every write, lets the readers know when what they
+     * built from the table is stale.
+     */
+    private final AtomicLong generation;
+
     private static ShareFilesDB instance = new ShareFilesDB();
 
     public static ShareFilesDB intance() {
@@ -55,6 +65,11 @@ public final class ShareFilesDB {
 
     private ShareFilesDB() {
         databaseHelper = new DatabaseHelper(new Context());
+        generation = new AtomicLong();
+    }
+
+    public long getGeneration() {
+        return generation.get();
     }
 
     public Cursor query(String[] projection, String selection, String[] selectionArgs, String sortOrder) {
@@ -80,6 +95,54 @@ public final class ShareFilesDB {
     }
 
     public long insert(ContentValues initialValues) {
+        ContentValues values = withDefaults(initialValues);
+
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+        try {
+            return db.insert(TABLE_NAME, "", values);
+        } finally {
+            generation.incrementAndGet();
+        }
+    }
+
+    /**
+     * Replaces the rows of the files with the new values in one
+     * transaction, any previous row with the same path is deleted.
+     *
+     * @return false if a statement failed and nothing was written
+     */
+    public boolean replaceAll(final List<ContentValues> rows) {
+        if (rows.isEmpty()) {
+            return true;
+        }
+
+        final SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+        boolean success = db.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                for (ContentValues initialValues : rows) {
+                    ContentValues values = withDefaults(initialValues);
+                    String filePath = values.getAsString(Columns.FILE_PATH);
+                    if (db.delete(TABLE_NAME, Columns.FILE_PATH + " = ?", new String[] { filePath }) == -1) {
+                        throw new SQLException("Error deleting the row of " + filePath);
+                    }
+                    if (db.insert(TABLE_NAME, "", values) == -1) {
+                        throw new SQLException("Error inserting the row of " + filePath);
+                    }
+                }
+            }
+        });
+
+        if (success) {
+            generation.incrementAndGet();
+        }
+
+        return success;
+    }
+
+    private ContentValues withDefaults(ContentValues initialValues) {
         ContentValues values;
 
         if (initialValues != null) {
@@ -134,9 +197,7 @@ public final class ShareFilesDB {
             values.put(Columns.YEAR, "");
         }
 
-        SQLiteDatabase db = databaseHelper.getWritableDatabase();
-
-        return db.insert(TABLE_NAME, "", values);
+        return values;
     }
 
     public int delete(String where, String[] whereArgs) {
@@ -144,6 +205,10 @@ public final class ShareFilesDB {
 
         int count = db.delete(TABLE_NAME, where, whereArgs);
 
+        if (count > 0) {
+            generation.incrementAndGet();
+        }
+
         return count;
     }
 
@@ -153,6 +218,10 @@ public final class ShareFilesDB {
 
         int count = db.update(TABLE_NAME, values, where, whereArgs);
 
+        if (count > 0) {
+            generation.incrementAndGet();
+        }
+
         return count;
     }
 
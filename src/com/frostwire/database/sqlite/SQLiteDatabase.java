@@ -287,6 +287,48 @@ public class SQLiteDatabase {
         return executeSql(sql.toString(), bindArgs);
     }
 
+    /**
+     * Runs the task as a single transaction, the statements executed by
+     * other threads wait until it's done. Rolled back if the task throws.
+     * <p>
+     * The write methods don't throw when a statement fails, the task must
+     * check what they return and throw to roll back.
+     *
+     * @return false if the transaction was rolled back
+     */
+    public boolean runInTransaction(Runnable task) {
+        verifyDbIsOpen();
+
+        synchronized (connection) {
+            boolean autoCommit = true;
+            try {
+                autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+
+                task.run();
+
+                connection.commit();
+
+                return true;
+            } catch (Throwable e) {
+                LOG.warn("Error running transaction, rolling back", e);
+                try {
+                    connection.rollback();
+                } catch (Throwable e1) {
+                    // ignore
+                }
+            } finally {
+                try {
+                    connection.setAutoCommit(autoCommit);
+                } catch (Throwable e) {
+                    // ignore
+                }
+            }
+        }
+
+        return false;
+    }
+
     /**
      * @return true if the DB is currently open (has not been closed)
      */
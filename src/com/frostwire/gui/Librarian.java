@@ -19,17 +19,22 @@
 package com.frostwire.gui;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.frostwire.content.ContentValues;
 import com.frostwire.core.ConfigurationManager;
 import com.frostwire.core.Constants;
 import com.frostwire.core.FileDescriptor;
@@ -53,10 +58,12 @@ public final class Librarian {
     public static final int FILE_STATE_SHARING = 1;
     public static final int FILE_STATE_SHARED = 2;
 
-    //private final Set<String> pathSharedSet;
+    private final Set<String> pathSharedSet;
     private final Set<String> pathSharingSet;
     private final ExecutorService shareFileExec;
 
+    private volatile boolean pathSharedSetLoaded;
+
     private static final Librarian instance = new Librarian();
 
     public static Librarian instance() {
@@ -64,7 +71,7 @@ public final class Librarian {
     }
 
     private Librarian() {
-        //this.pathSharedSet = Collections.synchronizedSet(new HashSet<String>());
+        this.pathSharedSet = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
         this.pathSharingSet = Collections.synchronizedSet(new HashSet<String>());
         this.shareFileExec = Executors.newSingleThreadExecutor();
     }
@@ -141,33 +148,78 @@ public final class Librarian {
         return numFiles;
     }
 
+    /**
+     * Answered from the in memory set of shared paths, no database query
+     * is performed after the first call.
+     */
     public boolean isFileShared(String filePath) {
-        Cursor c = null;
+        return getSharedPaths().contains(filePath);
+    }
 
-        boolean isShared = false;
+    /**
+     * Bulk version of {@link #getFileShareState(String)}, intended for
+     * table population.
+     * 
+     * @param paths
+     * @return the share state for every path
+     */
+    public Map<String, Integer> getShareStates(Collection<String> paths) {
+        Set<String> shared = getSharedPaths();
+        Map<String, Integer> states = new HashMap<String, Integer>(paths.size());
+
+        for (String path : paths) {
+            int state = FILE_STATE_UNSHARED;
+            if (pathSharingSet.contains(path)) {
+                state = FILE_STATE_SHARING;
+            } else if (shared.contains(path)) {
+                state = FILE_STATE_SHARED;
+            }
+            states.put(path, state);
+        }
+
+        return states;
+    }
+
+    private Set<String> getSharedPaths() {
+        if (!pathSharedSetLoaded) {
+            loadSharedPaths();
+        }
+        return pathSharedSet;
+    }
+
+    /**
+     * Loads the shared paths with one query, from this point the set is
+     * kept in sync with every write to the share table made here.
+     */
+    private synchronized void loadSharedPaths() {
+        if (pathSharedSetLoaded) {
+            return;
+        }
+
+        Cursor c = null;
 
         try {
             ShareFilesDB db = ShareFilesDB.intance();
 
-            String[] columns = new String[] { Columns.ID, Columns.FILE_PATH, Columns.SHARED };
-            String where = Columns.FILE_PATH + " = ?";
-            String[] whereArgs = new String[] { filePath };
+            String[] columns = new String[] { Columns.FILE_PATH };
+            String where = Columns.SHARED + " = ?";
+            String[] whereArgs = new String[] { String.valueOf(true) };
 
             c = db.query(columns, where, whereArgs, null);
 
-            List<FileDescriptor> fds = filteredOutBadRows(c);
-
-            isShared = fds.size() == 1;
+            int filePathCol = c.getColumnIndex(Columns.FILE_PATH);
+            while (c.moveToNext()) {
+                pathSharedSet.add(c.getString(filePathCol));
+            }
 
+            pathSharedSetLoaded = true;
         } catch (Exception e) {
-            LOG.log(Level.WARNING, "Failed to get num of shared files", e);
+            LOG.log(Level.WARNING, "Failed to load the shared files paths", e);
         } finally {
             if (c != null) {
                 c.close();
             }
         }
-
-        return isShared;
     }
 
     private List<FileDescriptor> filteredOutBadRows(Cursor c) {
@@ -185,7 +237,6 @@ public final class Librarian {
             String filePath = c.getString(filePathCol);
 
             if (!(new File(filePath)).exists()) {
-                //pathSharedSet.remove(filePath);
                 toRemove.add(filePath);
                 continue;
             }
@@ -211,9 +262,11 @@ public final class Librarian {
         return fds;
     }
 
+    /**
+     * @return null if the share table couldn't be read, so a failure is not
+     * taken for an empty list
+     */
     public List<FileDescriptor> getSharedFiles(byte fileType) {
-        List<FileDescriptor> result = new ArrayList<FileDescriptor>();
-
         Cursor c = null;
 
         try {
@@ -225,6 +278,10 @@ public final class Librarian {
 
             c = db.query(columns, where, whereArgs, null);
 
+            if (c == null) {
+                return null;
+            }
+
             List<FileDescriptor> fds = filteredOutBadRows(c);
 
             return fds;
@@ -237,7 +294,7 @@ public final class Librarian {
             }
         }
 
-        return result;
+        return null;
     }
 
     public void scan(File file) {
@@ -249,7 +306,7 @@ public final class Librarian {
             return FILE_STATE_SHARING;
         }
 
-        if (isFileShared(filePath)) {// pathSharedSet.contains(path)) {
+        if (isFileShared(filePath)) {
             return FILE_STATE_SHARED;
         }
 
@@ -257,19 +314,21 @@ public final class Librarian {
     }
 
     private void scan(File file, Set<File> ignorableFiles) {
-        if (ignorableFiles.contains(file)) {
-            return;
-        }
+        ScanPipeline pipeline = new ScanPipeline(ignorableFiles, new ScanPipeline.Listener() {
+            @Override
+            public void scanned(String filePath) {
+                getSharedPaths().add(filePath);
+            }
 
-        if (file.isDirectory()) {
-            for (File child : file.listFiles()) {
-                if (child.isDirectory() || child.isFile()) {
-                    scan(child);
+            @Override
+            public void progress(ScanPipeline pipeline) {
+                if (LOG.isLoggable(Level.FINE)) {
+                    LOG.fine("Scanning: " + pipeline);
                 }
             }
-        } else if (file.isFile()) {
-            new UniversalScanner().scan(file.getAbsolutePath());
-        }
+        });
+
+        pipeline.scan(file);
     }
 
     public void shareFile(final String filePath, final boolean share) {
@@ -290,7 +349,7 @@ public final class Librarian {
 
                 if (share) {
                     new UniversalScanner().scan(filePath);
-                    //pathSharedSet.add(filePath);
+                    getSharedPaths().add(filePath);
                 }
 
                 pathSharingSet.remove(filePath);
@@ -304,6 +363,56 @@ public final class Librarian {
         shareFileExec.execute(r);
     }
 
+    /**
+     * Removes the file, or all the files under it if it was a folder.
+     */
+    public void removeFromShareTable(final String path) {
+        shareFileExec.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    deleteFromShareTable(path);
+                    deleteFolderFilesFromShareTable(path + File.separator);
+                } catch (Throwable e) {
+                    LOG.log(Level.WARNING, "Error removing from share table: " + path, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Moves the row of a file deleted in the same folder where the new one
+     * was created, only if the size and modification date recorded for it
+     * are the ones of the new file. Otherwise they are different files, the
+     * old row is removed and the new file keeps the default share state.
+     */
+    public void renameInShareTable(final String oldPath, final File newFile) {
+        shareFileExec.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    String newPath = newFile.getAbsolutePath();
+
+                    ContentValues values = new ContentValues();
+                    values.put(Columns.FILE_PATH, newPath);
+
+                    String where = Columns.FILE_PATH + " = ? AND " + Columns.FILE_SIZE + " = ? AND " + Columns.DATE_MODIFIED + " = ?";
+                    String[] whereArgs = new String[] { oldPath, String.valueOf(newFile.length()), String.valueOf(newFile.lastModified()) };
+
+                    if (ShareFilesDB.intance().update(values, where, whereArgs) > 0) {
+                        if (getSharedPaths().remove(oldPath)) {
+                            pathSharedSet.add(newPath);
+                        }
+                    } else {
+                        deleteFromShareTable(oldPath);
+                    }
+                } catch (Throwable e) {
+                    LOG.log(Level.WARNING, "Error renaming in share table: " + oldPath, e);
+                }
+            }
+        });
+    }
+
     private void deleteFromShareTable(String filePath) {
         String where = Columns.FILE_PATH + " = ?";
         String[] whereArgs = new String[] { filePath };
@@ -311,6 +420,8 @@ public final class Librarian {
         ShareFilesDB db = ShareFilesDB.intance();
 
         db.delete(where, whereArgs);
+
+        getSharedPaths().remove(filePath);
     }
 
     public void deleteFolderFilesFromShareTable(String folderPath) {
@@ -321,6 +432,13 @@ public final class Librarian {
 
         try {
             db.delete(where, whereArgs);
+
+            Iterator<String> it = getSharedPaths().iterator();
+            while (it.hasNext()) {
+                if (it.next().startsWith(folderPath)) {
+                    it.remove();
+                }
+            }
         } catch (Exception e) {
 
         }
@@ -0,0 +1,329 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.FilenameUtils;
+import org.limewire.concurrent.ExecutorsHelper;
+
+import com.frostwire.content.ContentValues;
+import com.frostwire.core.providers.ShareFilesDB;
+import com.frostwire.core.providers.ShareFilesDB.Columns;
+import com.frostwire.database.Cursor;
+import com.limegroup.gnutella.MediaType;
+
+/**
+ * Scans a folder into the share table in three stages: the calling thread
+ * walks the folders, the audio and picture tags are parsed by small pools
+ * of threads, one per media type, and a single writer inserts the rows in
+ * batches. Files with the same size and modification date as their row in
+ * the table are not parsed again.
+ * <p>
+ * A pipeline is used for one scan and then discarded.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class ScanPipeline {
+
+    private static final Logger LOG = Logger.getLogger(ScanPipeline.class.getName());
+
+    /**
+     * Rows written per transaction.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * Files parsed or waiting for the writer at the same time, the walk
+     * stops when the parsers fall this far behind.
+     */
+    private static final int MAX_PENDING = 256;
+
+    private static final int PARSER_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+    private static final ContentValues END = new ContentValues();
+
+    public interface Listener {
+
+        /**
+         * The file is in the share table, either written now or unchanged
+         * since the last scan. Called from the writer or the walking thread.
+         */
+        void scanned(String filePath);
+
+        /**
+         * Called from the writer after every batch.
+         */
+        void progress(ScanPipeline pipeline);
+    }
+
+    private final Set<File> ignorableFiles;
+    private final Listener listener;
+
+    private final UniversalScanner scanner;
+    private final BlockingQueue<ContentValues> parsed;
+    private final Semaphore pending;
+
+    private final AtomicInteger filesFound;
+    private final AtomicInteger filesSkipped;
+    private final AtomicInteger filesWritten;
+
+    private long startTime;
+
+    public ScanPipeline(Set<File> ignorableFiles, Listener listener) {
+        this.ignorableFiles = ignorableFiles;
+        this.listener = listener;
+
+        this.scanner = new UniversalScanner();
+        this.parsed = new LinkedBlockingQueue<ContentValues>();
+        this.pending = new Semaphore(MAX_PENDING);
+
+        this.filesFound = new AtomicInteger();
+        this.filesSkipped = new AtomicInteger();
+        this.filesWritten = new AtomicInteger();
+    }
+
+    /**
+     * Scans the file or all the files under the folder, returns when all
+     * of them are in the share table.
+     */
+    public void scan(File root) {
+        startTime = System.currentTimeMillis();
+
+        Map<String, long[]> known = loadKnownFiles(root);
+
+        ExecutorService audioParsers = ExecutorsHelper.newFixedSizeThreadPool(PARSER_THREADS, "ScanPipeline-audio");
+        ExecutorService pictureParsers = ExecutorsHelper.newFixedSizeThreadPool(PARSER_THREADS, "ScanPipeline-pictures");
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "ScanPipeline-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        try {
+            walk(root, known, audioParsers, pictureParsers);
+
+            // all the parsed files handed to the writer
+            pending.acquireUninterruptibly(MAX_PENDING);
+            pending.release(MAX_PENDING);
+        } catch (Throwable e) {
+            LOG.log(Level.WARNING, "Error scanning " + root, e);
+        } finally {
+            audioParsers.shutdown();
+            pictureParsers.shutdown();
+
+            parsed.add(END);
+
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        LOG.info("Scanned " + root + ": " + this);
+    }
+
+    public int getFilesFound() {
+        return filesFound.get();
+    }
+
+    public int getFilesSkipped() {
+        return filesSkipped.get();
+    }
+
+    public int getFilesWritten() {
+        return filesWritten.get();
+    }
+
+    /**
+     * Files parsed and written per second since the scan started.
+     */
+    public double getThroughput() {
+        long elapsed = System.currentTimeMillis() - startTime;
+        return elapsed > 0 ? filesWritten.get() * 1000.0 / elapsed : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "found=" + getFilesFound() + ", skipped=" + getFilesSkipped() + ", written=" + getFilesWritten() + ", files/s=" + (int) getThroughput();
+    }
+
+    private void walk(File root, Map<String, long[]> known, ExecutorService audioParsers, ExecutorService pictureParsers) {
+        Deque<File> stack = new ArrayDeque<File>();
+        stack.push(root);
+
+        while (!stack.isEmpty()) {
+            File file = stack.pop();
+
+            if (ignorableFiles.contains(file)) {
+                continue;
+            }
+
+            if (file.isDirectory()) {
+                File[] children = file.listFiles();
+                if (children != null) {
+                    for (File child : children) {
+                        stack.push(child);
+                    }
+                }
+            } else if (file.isFile()) {
+                filesFound.incrementAndGet();
+
+                final String filePath = file.getAbsolutePath();
+
+                long[] sizeAndDate = known.get(filePath);
+                if (sizeAndDate != null && sizeAndDate[0] == file.length() && sizeAndDate[1] == file.lastModified()) {
+                    filesSkipped.incrementAndGet();
+                    listener.scanned(filePath);
+                    continue;
+                }
+
+                pending.acquireUninterruptibly();
+
+                MediaType mt = MediaType.getMediaTypeForExtension(FilenameUtils.getExtension(filePath));
+
+                if (MediaType.getAudioMediaType().equals(mt)) {
+                    audioParsers.execute(new ParseTask(filePath));
+                } else if (MediaType.getImageMediaType().equals(mt)) {
+                    pictureParsers.execute(new ParseTask(filePath));
+                } else {
+                    // nothing to parse, no need for another thread
+                    new ParseTask(filePath).run();
+                }
+            }
+        }
+    }
+
+    private void write() {
+        ShareFilesDB db = ShareFilesDB.intance();
+
+        List<ContentValues> batch = new ArrayList<ContentValues>(BATCH_SIZE);
+        boolean done = false;
+
+        while (!done) {
+            try {
+                ContentValues values = parsed.poll(1, TimeUnit.SECONDS);
+                if (values == END) {
+                    done = true;
+                } else if (values != null) {
+                    batch.add(values);
+                    parsed.drainTo(batch, BATCH_SIZE - batch.size());
+                    done = batch.remove(END);
+                }
+            } catch (InterruptedException e) {
+                done = true;
+            }
+
+            if (!batch.isEmpty() && (batch.size() >= BATCH_SIZE || parsed.isEmpty() || done)) {
+                try {
+                    if (db.replaceAll(batch)) {
+                        for (ContentValues values : batch) {
+                            listener.scanned(values.getAsString(Columns.FILE_PATH));
+                        }
+
+                        filesWritten.addAndGet(batch.size());
+                    } else {
+                        LOG.warning("Unable to write " + batch.size() + " scanned files, rolled back");
+                    }
+                    listener.progress(this);
+                } catch (Throwable e) {
+                    LOG.log(Level.WARNING, "Error writing scanned files", e);
+                } finally {
+                    pending.release(batch.size());
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Size and modification date of the files already in the table under
+     * the root, by path.
+     */
+    private Map<String, long[]> loadKnownFiles(File root) {
+        Map<String, long[]> known = new HashMap<String, long[]>();
+
+        Cursor c = null;
+
+        try {
+            String[] columns = new String[] { Columns.FILE_PATH, Columns.FILE_SIZE, Columns.DATE_MODIFIED };
+            String where = Columns.FILE_PATH + " LIKE ? AND " + Columns.SHARED + " = ?";
+            String[] whereArgs = new String[] { root.getAbsolutePath() + "%", String.valueOf(true) };
+
+            c = ShareFilesDB.intance().query(columns, where, whereArgs, null);
+
+            int filePathCol = c.getColumnIndex(Columns.FILE_PATH);
+            int fileSizeCol = c.getColumnIndex(Columns.FILE_SIZE);
+            int dateModifiedCol = c.getColumnIndex(Columns.DATE_MODIFIED);
+
+            while (c.moveToNext()) {
+                known.put(c.getString(filePathCol), new long[] { c.getLong(fileSizeCol), c.getLong(dateModifiedCol) });
+            }
+        } catch (Throwable e) {
+            LOG.log(Level.WARNING, "Error reading the scanned files under " + root, e);
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+
+        return known;
+    }
+
+    private final class ParseTask implements Runnable {
+
+        private final String filePath;
+
+        public ParseTask(String filePath) {
+            this.filePath = filePath;
+        }
+
+        @Override
+        public void run() {
+            try {
+                parsed.add(scanner.read(filePath, true));
+            } catch (Throwable e) {
+                LOG.log(Level.WARNING, "Error parsing " + filePath, e);
+                pending.release();
+            }
+        }
+    }
+}
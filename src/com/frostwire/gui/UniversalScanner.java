@@ -35,6 +35,7 @@ import com.frostwire.core.providers.ShareFilesDB;
 import com.frostwire.core.providers.ShareFilesDB.Columns;
 import com.frostwire.gui.library.tags.TagsData;
 import com.frostwire.gui.library.tags.TagsReader;
+import com.frostwire.gui.searchfield.SearchSuggestions;
 import com.frostwire.util.MimeDetector;
 import com.limegroup.gnutella.MediaType;
 
@@ -51,28 +52,38 @@ public class UniversalScanner {
     }
 
     public void scan(String filePath) {
+        ShareFilesDB db = ShareFilesDB.intance();
+
+        db.insert(read(filePath, true));
+    }
+
+    /**
+     * Reads the values of the file for the share table, without writing
+     * them. Parsing the tags of audio and pictures is the slow part.
+     */
+    public ContentValues read(String filePath, boolean shared) {
         try {
             MediaType mt = MediaType.getMediaTypeForExtension(FilenameUtils.getExtension(filePath));
 
             if (mt == null) {
-                scanDocument(filePath, true);
+                return readDocument(filePath, shared);
             } else if (mt.equals(MediaType.getAudioMediaType())) {
-                scanAudio(filePath, true);
+                return readAudio(filePath, shared);
             } else if (mt.equals(MediaType.getImageMediaType())) {
-                scanPictures(filePath, true);
+                return readPictures(filePath, shared);
             } else if (mt.equals(MediaType.getVideoMediaType())) {
-                scanVideo(filePath, true); // until we integrate mplayer for video and research metadata extraction
+                return readVideo(filePath, shared); // until we integrate mplayer for video and research metadata extraction
             } else {
-                scanDocument(filePath, true);
+                return readDocument(filePath, shared);
             }
 
         } catch (Throwable e) {
-            scanDocument(filePath, true);
             LOG.log(Level.WARNING, "Error scanning file, scanned as document: " + filePath, e);
+            return readDocument(filePath, shared);
         }
     }
 
-    private void scanPictures(String filePath, boolean shared) {
+    private ContentValues readPictures(String filePath, boolean shared) {
         File file = new File(filePath);
 
         ContentValues values = new ContentValues();
@@ -118,9 +129,7 @@ public class UniversalScanner {
             values.put(Columns.YEAR, "");
         }
 
-        ShareFilesDB db = ShareFilesDB.intance();
-
-        db.insert(values);
+        return values;
     }
 
     private void fillCommonValues(ContentValues values, byte fileType, String filePath, File file, String mime, boolean shared) {
@@ -133,7 +142,7 @@ public class UniversalScanner {
         values.put(Columns.SHARED, shared);
     }
 
-    private void scanAudio(String filePath, boolean shared) {
+    private ContentValues readAudio(String filePath, boolean shared) {
         File file = new File(filePath);
 
         ContentValues values = new ContentValues();
@@ -148,6 +157,8 @@ public class UniversalScanner {
             values.put(Columns.ARTIST, mt.getArtist());
             values.put(Columns.ALBUM, mt.getAlbum());
             values.put(Columns.YEAR, mt.getYear());
+
+            SearchSuggestions.instance().addMetadata(mt.getArtist(), mt.getAlbum(), mt.getTitle());
         } catch (Throwable e) {
             String displayName = FilenameUtils.getBaseName(file.getName());
 
@@ -157,21 +168,19 @@ public class UniversalScanner {
             values.put(Columns.YEAR, "");
         }
 
-        ShareFilesDB db = ShareFilesDB.intance();
-
-        db.insert(values);
+        return values;
     }
 
-    private void scanVideo(String filePath, boolean shared) {
+    private ContentValues readVideo(String filePath, boolean shared) {
         String mime = "video/" + FilenameUtils.getExtension(filePath);
-        scanBasic(Constants.FILE_TYPE_VIDEOS, filePath, mime, shared);
+        return readBasic(Constants.FILE_TYPE_VIDEOS, filePath, mime, shared);
     }
 
-    private void scanDocument(String filePath, boolean shared) {
-        scanBasic(Constants.FILE_TYPE_DOCUMENTS, filePath, getMimeType(filePath), shared);
+    private ContentValues readDocument(String filePath, boolean shared) {
+        return readBasic(Constants.FILE_TYPE_DOCUMENTS, filePath, getMimeType(filePath), shared);
     }
 
-    private void scanBasic(byte fileType, String filePath, String mime, boolean shared) {
+    private ContentValues readBasic(byte fileType, String filePath, String mime, boolean shared) {
         File file = new File(filePath);
 
         String displayName = FilenameUtils.getBaseName(file.getName());
@@ -185,9 +194,7 @@ public class UniversalScanner {
         values.put(Columns.ALBUM, "");
         values.put(Columns.YEAR, "");
 
-        ShareFilesDB db = ShareFilesDB.intance();
-
-        db.insert(values);
+        return values;
     }
 
     private static String getMimeType(String filePath) {
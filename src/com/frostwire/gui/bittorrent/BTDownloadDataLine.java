@@ -29,6 +29,7 @@ import com.frostwire.transfers.TransferState;
 import org.limewire.util.OSUtils;
 
 import com.frostwire.gui.library.LibraryMediator;
+import com.frostwire.gui.library.LibraryWatcher;
 import com.frostwire.torrent.PaymentOptions;
 import com.limegroup.gnutella.gui.GUIMediator;
 import com.limegroup.gnutella.gui.GUIUtils;
@@ -108,6 +109,11 @@ final class BTDownloadDataLine extends AbstractDataLine<BTDownload> {
     private boolean _notification;
 
     private PaymentOptions paymentOptions;
+
+    /**
+     * The last snapshot applied to this line.
+     */
+    private Snapshot _snapshot;
     
     /**
      * Column index for the file name.
@@ -399,35 +405,76 @@ final class BTDownloadDataLine extends AbstractDataLine<BTDownload> {
      * @implements DataLine interface
      */
     public void update() {
-        _transferState = initializer.getState();
-        _progress = initializer.getProgress();
-        _download = initializer.getBytesReceived();
-        _upload = initializer.getBytesSent();
-        _downloadSpeed = initializer.getDownloadSpeed();
-        _uploadSpeed = initializer.getUploadSpeed();
-        _timeLeft = initializer.getETA();
-        _seeds = initializer.getSeedsString();
-        _peers = initializer.getPeersString();
-        _shareRatio = initializer.getShareRatio();
-        _seedToPeerRatio = initializer.getSeedToPeerRatio();
-        _size = initializer.getSize();
-        dateCreated = initializer.getDateCreated();
-        
-        if (initializer.getCopyrightLicenseBroker() != null && 
-            initializer.getCopyrightLicenseBroker().license != null) {
-            license = initializer.getCopyrightLicenseBroker().license.getName();
-        } else {
-            license = "";
-        }
-        
-        if (initializer.getPaymentOptions() != null) {
-            paymentOptions = initializer.getPaymentOptions();
-        }
+        apply(sample());
+    }
+
+    /**
+     * Reads the state of the download, safe to call outside the event
+     * dispatch thread.
+     */
+    Snapshot sample() {
+        return new Snapshot(initializer);
+    }
 
+    /**
+     * Updates the data of this line with a snapshot taken by {@link #sample()}.
+     * 
+     * @return true if something displayed in the line changed
+     */
+    boolean apply(Snapshot snapshot) {
+        boolean changed = !snapshot.equals(_snapshot);
+
+        if (changed) {
+            _snapshot = snapshot;
+
+            _transferState = snapshot.transferState;
+            _progress = snapshot.progress;
+            _download = snapshot.download;
+            _upload = snapshot.upload;
+            _downloadSpeed = snapshot.downloadSpeed;
+            _uploadSpeed = snapshot.uploadSpeed;
+            _timeLeft = snapshot.timeLeft;
+            _seeds = snapshot.seeds;
+            _peers = snapshot.peers;
+            _shareRatio = snapshot.shareRatio;
+            _seedToPeerRatio = snapshot.seedToPeerRatio;
+            _size = snapshot.size;
+            dateCreated = snapshot.dateCreated;
+            license = snapshot.license;
+
+            if (snapshot.paymentOptions != null) {
+                paymentOptions = snapshot.paymentOptions;
+            }
+        }
 
-        if (getInitializeObject().isCompleted()) {
+        if (snapshot.completed) {
             showNotification();
         }
+
+        return changed;
+    }
+
+    /**
+     * The values below come from the last snapshot, so reading them in the
+     * event dispatch thread doesn't call into the download.
+     */
+    boolean isSampledResumable() {
+        return _snapshot != null && _snapshot.resumable;
+    }
+
+    boolean isSampledPausable() {
+        return _snapshot != null && _snapshot.pausable;
+    }
+
+    boolean isSampledCompleted() {
+        return _snapshot != null && _snapshot.completed;
+    }
+
+    /**
+     * True if the download can be removed by the clear inactive action.
+     */
+    boolean isSampledClearable() {
+        return _snapshot != null && _snapshot.clearable;
     }
 
     private void showNotification() {
@@ -442,6 +489,9 @@ final class BTDownloadDataLine extends AbstractDataLine<BTDownload> {
                     actions = new Action[] { new LaunchAction(file), new ShowInLibraryAction(file) };
                 }
                 notification = new Notification(theDownload.getDisplayName(), getIcon(), actions);
+                if (file != null) {
+                    LibraryWatcher.instance().rescan(file);
+                }
                 LibraryMediator.instance().getLibraryExplorer().clearDirectoryHolderCaches();
 
                 iTunesScanIfNecessaryForNonTorrentDownloadItem(theDownload, file);
@@ -515,6 +565,81 @@ final class BTDownloadDataLine extends AbstractDataLine<BTDownload> {
         }
     }
 
+    /**
+     * The values of a download shown in the table at a given time.
+     */
+    static final class Snapshot {
+
+        final TransferState transferState;
+        final int progress;
+        final long download;
+        final long upload;
+        final double downloadSpeed;
+        final double uploadSpeed;
+        final long timeLeft;
+        final String seeds;
+        final String peers;
+        final String shareRatio;
+        final String seedToPeerRatio;
+        final long size;
+        final Date dateCreated;
+        final String license;
+        final PaymentOptions paymentOptions;
+        final boolean completed;
+        final boolean resumable;
+        final boolean pausable;
+        final boolean clearable;
+
+        Snapshot(BTDownload dl) {
+            transferState = dl.getState();
+            progress = dl.getProgress();
+            download = dl.getBytesReceived();
+            upload = dl.getBytesSent();
+            downloadSpeed = dl.getDownloadSpeed();
+            uploadSpeed = dl.getUploadSpeed();
+            timeLeft = dl.getETA();
+            seeds = dl.getSeedsString();
+            peers = dl.getPeersString();
+            shareRatio = dl.getShareRatio();
+            seedToPeerRatio = dl.getSeedToPeerRatio();
+            size = dl.getSize();
+            dateCreated = dl.getDateCreated();
+
+            if (dl.getCopyrightLicenseBroker() != null && dl.getCopyrightLicenseBroker().license != null) {
+                license = dl.getCopyrightLicenseBroker().license.getName();
+            } else {
+                license = "";
+            }
+
+            paymentOptions = dl.getPaymentOptions();
+            completed = dl.isCompleted();
+            resumable = dl.isResumable();
+            pausable = dl.isPausable();
+            clearable = BTDownloadMediator.isClearable(transferState, completed);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Snapshot)) {
+                return false;
+            }
+            Snapshot other = (Snapshot) o;
+            return transferState == other.transferState && progress == other.progress && download == other.download && upload == other.upload && downloadSpeed == other.downloadSpeed && uploadSpeed == other.uploadSpeed && timeLeft == other.timeLeft && size == other.size && completed == other.completed && resumable == other.resumable && pausable == other.pausable && paymentOptions == other.paymentOptions && eq(seeds, other.seeds) && eq(peers, other.peers) && eq(shareRatio, other.shareRatio) && eq(seedToPeerRatio, other.seedToPeerRatio) && eq(dateCreated, other.dateCreated) && eq(license, other.license);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (download ^ (download >>> 32)) * 31 + progress;
+        }
+
+        private static boolean eq(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
     @Override
     public boolean isDynamic(int col) {
         return false;
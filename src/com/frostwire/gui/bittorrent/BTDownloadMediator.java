@@ -280,11 +280,10 @@ public final class BTDownloadMediator extends AbstractTableMediator<BTDownloadRo
         if (selRows.length > 0) {
             BTDownloadDataLine dataLine = DATA_MODEL.get(selRows[0]);
 
-            BTDownload dl = dataLine.getInitializeObject();
-
-            boolean resumable = dl.isResumable();
-            boolean pausable = dl.isPausable();
-            boolean completed = dl.isCompleted();
+            // sampled in the background by the model refresh
+            boolean resumable = dataLine.isSampledResumable();
+            boolean pausable = dataLine.isSampledPausable();
+            boolean completed = dataLine.isSampledCompleted();
 
             resumeAction.setEnabled(resumable);
             pauseAction.setEnabled(pausable);
@@ -295,9 +294,7 @@ public final class BTDownloadMediator extends AbstractTableMediator<BTDownloadRo
         int n = DATA_MODEL.getRowCount();
         boolean anyClearable = false;
         for (int i = n - 1; i >= 0; i--) {
-            BTDownloadDataLine btDownloadDataLine = DATA_MODEL.get(i);
-            BTDownload initializeObject = btDownloadDataLine.getInitializeObject();
-            if (isClearable(initializeObject)) {
+            if (DATA_MODEL.get(i).isSampledClearable()) {
                 anyClearable = true;
                 break;
             }
@@ -819,8 +816,11 @@ public final class BTDownloadMediator extends AbstractTableMediator<BTDownloadRo
     }
 
     public boolean isClearable(BTDownload initializeObject) {
-        TransferState state = initializeObject.getState();
-        return state != TransferState.SEEDING && state != TransferState.CHECKING && initializeObject.isCompleted();
+        return isClearable(initializeObject.getState(), initializeObject.isCompleted());
+    }
+
+    static boolean isClearable(TransferState state, boolean completed) {
+        return state != TransferState.SEEDING && state != TransferState.CHECKING && completed;
     }
 
     public void removeCompleted() {
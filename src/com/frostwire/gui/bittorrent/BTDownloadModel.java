@@ -1,9 +1,18 @@
 package com.frostwire.gui.bittorrent;
 
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.limewire.concurrent.ExecutorsHelper;
+
+import com.frostwire.logging.Logger;
 import com.frostwire.transfers.TransferState;
 
+import com.limegroup.gnutella.gui.GUIMediator;
 import com.limegroup.gnutella.gui.tables.BasicDataLineModel;
 
 /**
@@ -17,8 +26,21 @@ public class BTDownloadModel extends BasicDataLineModel<BTDownloadDataLine, BTDo
      */
     private static final long serialVersionUID = 8163563369069283107L;
 
+    private static final Logger LOG = Logger.getLogger(BTDownloadModel.class);
+
+    /**
+     * Samples the state of the downloads outside the event dispatch thread.
+     */
+    private static final ExecutorService SNAPSHOTTER = ExecutorsHelper.newProcessingQueue("BTDownloadModel-snapshotter");
+
     private HashSet<String> _hashDownloads;
 
+    /**
+     * True while a snapshot is being taken or applied, the refreshes that
+     * happen meanwhile are skipped.
+     */
+    private final AtomicBoolean _sampling = new AtomicBoolean();
+
     /**
      * Initialize the model by setting the class of its DataLines.
      */
@@ -72,30 +94,111 @@ public class BTDownloadModel extends BasicDataLineModel<BTDownloadDataLine, BTDo
     }
 
     /**
-     * Over-ride the default refresh so that we can
-     * set the CLEAR_BUTTON as appropriate.
+     * Over-ride the default refresh so that the downloads are sampled in
+     * the background and only the rows that changed are repainted.
+     * <p>
+     * Must be called from the event dispatch thread, the new values show
+     * up once the snapshot is applied, usually well before the next refresh.
      */
     public Object refresh() {
-        try {
-            int size = getRowCount();
+        int size = getRowCount();
+        if (size == 0 || !_sampling.compareAndSet(false, true)) {
+            return Boolean.TRUE;
+        }
 
-            for (int i = 0; i < size; i++) {
-                BTDownloadDataLine ud = get(i);
-                ud.update();
-            }
+        final BTDownloadDataLine[] lines = new BTDownloadDataLine[size];
+        for (int i = 0; i < size; i++) {
+            lines[i] = get(i);
+        }
 
-            fireTableRowsUpdated(0, size);
-        } catch (Exception e) {
-            System.out.println("ATENTION: Send the following output to the FrostWire Development team.");
-            System.out.println("===============================START COPY & PASTE=======================================");
-            e.printStackTrace();
-            System.out.println("===============================END COPY & PASTE=======================================");
+        try {
+            SNAPSHOTTER.execute(new Runnable() {
+                public void run() {
+                    final BTDownloadDataLine.Snapshot[] snapshots = new BTDownloadDataLine.Snapshot[lines.length];
+                    for (int i = 0; i < lines.length; i++) {
+                        try {
+                            snapshots[i] = lines[i].sample();
+                        } catch (Throwable e) {
+                            LOG.error("Error sampling download state", e);
+                        }
+                    }
+
+                    GUIMediator.safeInvokeLater(new Runnable() {
+                        public void run() {
+                            try {
+                                applySnapshots(lines, snapshots);
+                            } finally {
+                                _sampling.set(false);
+                            }
+                        }
+                    });
+                }
+            });
+        } catch (Throwable e) {
+            _sampling.set(false);
+            LOG.error("Error scheduling the transfers refresh", e);
             return Boolean.FALSE;
         }
 
         return Boolean.TRUE;
     }
 
+    /**
+     * Applies the snapshots to the lines still in the model and fires one
+     * update event per run of consecutive changed rows.
+     */
+    private void applySnapshots(BTDownloadDataLine[] lines, BTDownloadDataLine.Snapshot[] snapshots) {
+        int[] changed = new int[lines.length];
+        int numChanged = 0;
+
+        // rows may have been added, removed or sorted while sampling
+        Map<BTDownloadDataLine, Integer> rows = null;
+
+        for (int i = 0; i < lines.length; i++) {
+            if (snapshots[i] == null) {
+                continue;
+            }
+
+            int row;
+            if (i < getRowCount() && get(i) == lines[i]) {
+                row = i;
+            } else {
+                if (rows == null) {
+                    rows = new IdentityHashMap<BTDownloadDataLine, Integer>();
+                    for (int j = 0; j < getRowCount(); j++) {
+                        rows.put(get(j), j);
+                    }
+                }
+                Integer r = rows.get(lines[i]);
+                if (r == null) {
+                    continue;
+                }
+                row = r;
+            }
+
+            if (lines[i].apply(snapshots[i])) {
+                changed[numChanged++] = row;
+            }
+        }
+
+        if (numChanged == 0) {
+            return;
+        }
+
+        Arrays.sort(changed, 0, numChanged);
+
+        int first = changed[0];
+        int last = first;
+        for (int i = 1; i < numChanged; i++) {
+            if (changed[i] != last + 1) {
+                fireTableRowsUpdated(first, last);
+                first = changed[i];
+            }
+            last = changed[i];
+        }
+        fireTableRowsUpdated(first, last);
+    }
+
     @Override
     public int add(BTDownload downloader) {
         _hashDownloads.add(downloader.getHash());
@@ -74,6 +74,8 @@ public class BittorrentDownload implements com.frostwire.gui.bittorrent.BTDownlo
         if (!dl.wasPaused()) {
             dl.resume();
         }
+
+        TorrentFileIndex.instance().update(this);
     }
 
     public BTDownload getDl() {
@@ -231,10 +233,14 @@ public class BittorrentDownload implements com.frostwire.gui.bittorrent.BTDownlo
             displayName = dl.getDisplayName();
             size = calculateSize(dl);
             partial = dl.isPartial();
+
+            TorrentFileIndex.instance().update(BittorrentDownload.this);
         }
 
         @Override
         public void finished(BTDownload dl) {
+            TorrentFileIndex.instance().reindex(BittorrentDownload.this);
+
             if (!SharingSettings.SEED_FINISHED_TORRENTS.getValue() || (dl.isPartial() && !SharingSettings.SEED_HANDPICKED_TORRENT_FILES.getValue())) {
                 dl.pause();
             }
@@ -261,6 +267,7 @@ public class BittorrentDownload implements com.frostwire.gui.bittorrent.BTDownlo
 
         @Override
         public void removed(BTDownload dl, Set<File> incompleteFiles) {
+            TorrentFileIndex.instance().remove(BittorrentDownload.this);
             finalCleanup(incompleteFiles);
         }
     }
@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
+import com.frostwire.gui.searchfield.SearchSuggestions;
 import com.frostwire.transfers.TransferState;
 
 import com.frostwire.torrent.CopyrightLicenseBroker;
@@ -37,6 +38,7 @@ import com.frostwire.util.HttpClient;
 import com.frostwire.util.HttpClient.HttpClientListener;
 import com.frostwire.util.HttpClient.RangeNotSupportedException;
 import com.frostwire.util.HttpClientFactory;
+import com.frostwire.util.StreamingMD5;
 import com.limegroup.gnutella.gui.I18n;
 import com.limegroup.gnutella.settings.SharingSettings;
 import org.apache.commons.io.FilenameUtils;
@@ -62,6 +64,7 @@ public class HttpDownload implements BTDownload {
     private final File incompleteFile;
 
     private final String md5; //optional
+    private final StreamingMD5 streamingMD5; // null if no md5
     private final HttpClient httpClient;
     private final HttpClientListener httpClientListener;
     private final Date dateCreated;
@@ -82,6 +85,9 @@ public class HttpDownload implements BTDownload {
 
     private boolean isResumable;
 
+    // not null while downloading over several connections
+    private volatile SegmentedHttpDownload segmented;
+
     public HttpDownload(String theURL, String theTitle, String saveFileAs, long fileSize, String md5hash, boolean shouldResume, boolean deleteFileWhenTransferCancelled) {
         url = theURL;
         title = theTitle;
@@ -89,6 +95,7 @@ public class HttpDownload implements BTDownload {
 
         size = fileSize;
         md5 = md5hash;
+        streamingMD5 = md5 != null ? new StreamingMD5() : null;
         deleteDataWhenCancelled = deleteFileWhenTransferCancelled;
 
         completeFile = buildFile(SharingSettings.TORRENT_DATA_DIR_SETTING.getValue(), saveAs);
@@ -140,7 +147,15 @@ public class HttpDownload implements BTDownload {
     public void remove() {
         if (state != TransferState.FINISHED) {
             state = TransferState.CANCELING;
-            httpClient.cancel();
+            cancelTransfer();
+        }
+    }
+
+    private void cancelTransfer() {
+        httpClient.cancel();
+        SegmentedHttpDownload s = segmented;
+        if (s != null) {
+            s.cancel();
         }
     }
 
@@ -153,7 +168,7 @@ public class HttpDownload implements BTDownload {
     public void pause() {
         if (state != TransferState.FINISHED) {
             state = TransferState.CANCELING;
-            httpClient.cancel();
+            cancelTransfer();
         }
     }
 
@@ -267,6 +282,7 @@ public class HttpDownload implements BTDownload {
                         saveFile = expectedFile;
                         bytesReceived = expectedFile.length();
                         state = TransferState.FINISHED;
+                        SearchSuggestions.instance().addFilename(expectedFile.getName());
                         onComplete();
                         return;
                     }
@@ -277,7 +293,28 @@ public class HttpDownload implements BTDownload {
                         }
                     }
 
-                    httpClient.save(url, incompleteFile, resume);
+                    if (downloadSegmented(resume)) {
+                        return;
+                    }
+
+                    boolean append = resume;
+                    File segmentsFile = SegmentedHttpDownload.getStateFile(incompleteFile);
+                    if (segmentsFile.exists()) {
+                        // the file was preallocated for several connections, not a valid prefix
+                        cleanupFile(segmentsFile);
+                        bytesReceived = 0;
+                        append = false;
+                    }
+
+                    if (streamingMD5 != null) {
+                        if (append) {
+                            streamingMD5.resume(incompleteFile, null);
+                        } else {
+                            streamingMD5.reset();
+                        }
+                    }
+
+                    httpClient.save(url, incompleteFile, append);
                 } catch (IOException e) {
                     e.printStackTrace();
                     httpClientListener.onError(httpClient, e);
@@ -286,6 +323,50 @@ public class HttpDownload implements BTDownload {
         });
     }
 
+    /**
+     * Downloads over several connections if the file is big enough and the
+     * server takes ranges.
+     * 
+     * @return false if the download should go over one connection
+     */
+    private boolean downloadSegmented(boolean resume) throws IOException {
+        if (size > 0 && size < SegmentedHttpDownload.MIN_SIZE) {
+            return false;
+        }
+
+        long total = SegmentedHttpDownload.probe(url);
+        if (total < SegmentedHttpDownload.MIN_SIZE || (size > 0 && total != size)) {
+            return false;
+        }
+
+        size = total;
+        isResumable = true;
+
+        if (streamingMD5 != null) {
+            // the ranges arrive out of order, checked once complete
+            streamingMD5.reset();
+        }
+
+        SegmentedHttpDownload s = new SegmentedHttpDownload(url, incompleteFile, total, new SegmentedDownloadListener());
+        segmented = s;
+        try {
+            bytesReceived = s.prepare(resume);
+            state = TransferState.DOWNLOADING;
+
+            s.download();
+        } finally {
+            segmented = null;
+        }
+
+        if (s.isCanceled()) {
+            httpClientListener.onCancel(httpClient);
+        } else {
+            httpClientListener.onComplete(httpClient);
+        }
+
+        return true;
+    }
+
     private void cleanupFile(File f) {
         if (f.exists()) {
             boolean delete = f.delete();
@@ -297,6 +378,7 @@ public class HttpDownload implements BTDownload {
 
     private void cleanupIncomplete() {
         cleanupFile(incompleteFile);
+        cleanupFile(SegmentedHttpDownload.getStateFile(incompleteFile));
     }
 
     private void cleanupComplete() {
@@ -320,6 +402,17 @@ public class HttpDownload implements BTDownload {
         });
     }
 
+    /**
+     * Uses the MD5 computed while downloading if it saw every byte of the
+     * file, reads the file again otherwise.
+     */
+    private boolean verifyMD5(File file) {
+        if (streamingMD5 != null && streamingMD5.getLength() == file.length()) {
+            return DigestUtils.compareMD5(streamingMD5.getMD5(), md5);
+        }
+        return checkMD5(file);
+    }
+
     /** files are saved with (1), (2),... if there's one with the same name already. */
     private static File buildFile(File savePath, String name) {
         String baseName = FilenameUtils.getBaseName(name);
@@ -384,6 +477,11 @@ public class HttpDownload implements BTDownload {
 
         @Override
         public void onData(HttpClient client, byte[] buffer, int offset, int length) {
+            if (streamingMD5 != null && buffer != null) {
+                // written to the file even while pausing
+                streamingMD5.update(buffer, offset, length);
+            }
+
             if (!state.equals(TransferState.PAUSING) && !state.equals(TransferState.CANCELING)) {
                 bytesReceived += length;
                 updateAverageDownloadSpeed();
@@ -393,7 +491,7 @@ public class HttpDownload implements BTDownload {
 
         @Override
         public void onComplete(HttpClient client) {
-            if (md5 != null && !checkMD5(incompleteFile)) {
+            if (md5 != null && !verifyMD5(incompleteFile)) {
                 state = TransferState.ERROR_HASH_MD5;
                 cleanupIncomplete();
                 return;
@@ -406,6 +504,7 @@ public class HttpDownload implements BTDownload {
             } else {
                 state = TransferState.FINISHED;
                 cleanupIncomplete();
+                SearchSuggestions.instance().addFilename(completeFile.getName());
                 HttpDownload.this.onComplete();
             }
         }
@@ -449,6 +548,16 @@ public class HttpDownload implements BTDownload {
         }
     }
 
+    private final class SegmentedDownloadListener implements SegmentedHttpDownload.Listener {
+        @Override
+        public void onData(int length) {
+            // the ranges report at the same time
+            synchronized (HttpDownload.this) {
+                httpClientListener.onData(httpClient, null, 0, length);
+            }
+        }
+    }
+
     /** Meant to be overwritten by children classes that want to do something special
      * after the download is completed. */
     protected void onComplete() {
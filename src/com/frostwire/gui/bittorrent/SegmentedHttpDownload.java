@@ -0,0 +1,577 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.bittorrent;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.commons.io.IOUtils;
+import org.limewire.concurrent.ExecutorsHelper;
+
+import com.frostwire.logging.Logger;
+
+/**
+ * Downloads a file over several connections at once, each one asking the
+ * server for a range of the file and writing it in place of a file that
+ * has its final size from the start.
+ * <p>
+ * The ranges still to download are saved next to the incomplete file, so a
+ * paused download goes on where each range stopped. A connection that
+ * finishes its range takes over half of the range with the longest time
+ * left, so a slow connection doesn't hold the whole file back.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+final class SegmentedHttpDownload {
+
+    private static final Logger LOG = Logger.getLogger(SegmentedHttpDownload.class);
+
+    /**
+     * Files smaller than this are downloaded over one connection.
+     */
+    public static final long MIN_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * A range is not split if the halves would be smaller than this.
+     */
+    private static final long MIN_SEGMENT_SIZE = 512 * 1024;
+
+    private static final int MAX_CONNECTIONS = 4;
+
+    private static final int MAX_RETRIES = 3;
+
+    private static final int TIMEOUT = 10000;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final long SAVE_INTERVAL_MILLISECONDS = 2000;
+
+    private static final ExecutorService SEGMENT_POOL = ExecutorsHelper.newThreadPool("SegmentedHttpDownload");
+
+    public interface Listener {
+
+        /**
+         * Called from the connection threads, at the same time for
+         * different ranges.
+         */
+        void onData(int length);
+    }
+
+    private final String url;
+    private final File file;
+    private final File stateFile;
+    private final long size;
+    private final Listener listener;
+
+    // guarded by this
+    private final List<Segment> segments;
+    private final LinkedList<Segment> unassigned;
+    private int running;
+    private Throwable error;
+
+    private volatile boolean canceled;
+
+    public SegmentedHttpDownload(String url, File file, long size, Listener listener) {
+        this.url = url;
+        this.file = file;
+        this.stateFile = getStateFile(file);
+        this.size = size;
+        this.listener = listener;
+
+        this.segments = new ArrayList<Segment>();
+        this.unassigned = new LinkedList<Segment>();
+    }
+
+    /**
+     * Asks the server for the first byte of the file.
+     *
+     * @return the size of the file if the server answers with a range,
+     * -1 otherwise
+     */
+    public static long probe(String url) {
+        HttpURLConnection conn = null;
+        try {
+            conn = open(url, 0, 1);
+            if (conn.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                return -1;
+            }
+
+            // bytes 0-0/12345
+            String contentRange = conn.getHeaderField("Content-Range");
+            if (contentRange == null) {
+                return -1;
+            }
+            int slash = contentRange.lastIndexOf('/');
+            if (slash == -1 || contentRange.endsWith("*")) {
+                return -1;
+            }
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (Throwable e) {
+            LOG.warn("Unable to probe range support of " + url, e);
+            return -1;
+        } finally {
+            if (conn != null) {
+                conn.disconnect();
+            }
+        }
+    }
+
+    /**
+     * File where the ranges still to download are saved.
+     */
+    public static File getStateFile(File incompleteFile) {
+        return new File(incompleteFile.getParentFile(), incompleteFile.getName() + ".segments");
+    }
+
+    /**
+     * Sets up the ranges, from the saved ones if resuming, and makes the
+     * file its final size.
+     *
+     * @return the number of bytes already downloaded
+     */
+    public long prepare(boolean resume) throws IOException {
+        synchronized (this) {
+            segments.clear();
+            unassigned.clear();
+
+            if (!resume || !loadState()) {
+                long start = 0;
+                // a download over one connection leaves a valid prefix
+                if (resume && !stateFile.exists() && file.exists() && file.length() < size) {
+                    start = file.length();
+                }
+                split(start);
+            }
+
+            unassigned.addAll(segments);
+        }
+
+        // the state first, a file of the final size without it would look complete
+        saveState();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            if (raf.length() != size) {
+                raf.setLength(size);
+            }
+        } finally {
+            raf.close();
+        }
+
+        return size - getRemaining();
+    }
+
+    /**
+     * Downloads the ranges, returns when all are done, the download is
+     * canceled or one of them failed.
+     */
+    public void download() throws IOException {
+        int connections;
+        synchronized (this) {
+            connections = Math.min(MAX_CONNECTIONS, unassigned.size());
+            running = connections;
+        }
+
+        for (int i = 0; i < connections; i++) {
+            SEGMENT_POOL.execute(new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            });
+        }
+
+        boolean interrupted = false;
+        while (!interrupted) {
+            synchronized (this) {
+                if (running == 0) {
+                    break;
+                }
+                try {
+                    wait(SAVE_INTERVAL_MILLISECONDS);
+                } catch (InterruptedException e) {
+                    // the workers stop on their own, don't wait for them
+                    canceled = true;
+                    interrupted = true;
+                    Thread.currentThread().interrupt();
+                }
+                if (running == 0) {
+                    break;
+                }
+            }
+            if (!interrupted) {
+                saveStateQuietly();
+            }
+        }
+
+        LOG.info("Segments of " + url + ": " + segmentStats());
+
+        if (error != null) {
+            saveStateQuietly();
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            }
+            throw new IOException(error);
+        }
+
+        if (canceled) {
+            saveStateQuietly();
+        } else {
+            stateFile.delete();
+        }
+    }
+
+    public void cancel() {
+        canceled = true;
+    }
+
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    private void work() {
+        try {
+            Segment segment;
+            while ((segment = next()) != null) {
+                fetch(segment);
+            }
+        } catch (Throwable e) {
+            synchronized (this) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+            canceled = true;
+        } finally {
+            synchronized (this) {
+                running--;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * A range no connection took yet, or the second half of the range
+     * with the longest time left.
+     */
+    private synchronized Segment next() {
+        if (canceled) {
+            return null;
+        }
+
+        if (!unassigned.isEmpty()) {
+            return unassigned.removeFirst();
+        }
+
+        Segment slowest = null;
+        long slowestTimeLeft = 0;
+        for (Segment s : segments) {
+            long remaining = s.getRemaining();
+            if (remaining < 2 * MIN_SEGMENT_SIZE) {
+                continue;
+            }
+            long speed = Math.max(1, s.getSpeed());
+            long timeLeft = remaining / speed;
+            if (slowest == null || timeLeft > slowestTimeLeft) {
+                slowest = s;
+                slowestTimeLeft = timeLeft;
+            }
+        }
+
+        if (slowest == null) {
+            return null;
+        }
+
+        Segment stolen = slowest.splitHalf();
+        if (stolen != null) {
+            segments.add(stolen);
+        }
+        return stolen;
+    }
+
+    private void fetch(Segment segment) throws IOException {
+        int retries = 0;
+
+        while (!canceled && segment.getRemaining() > 0) {
+            try {
+                fetchOnce(segment);
+            } catch (IOException e) {
+                if (canceled || ++retries > MAX_RETRIES) {
+                    throw e;
+                }
+                LOG.warn("Retrying range of " + url + " at " + segment.getPosition() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void fetchOnce(Segment segment) throws IOException {
+        HttpURLConnection conn = open(url, segment.getPosition(), segment.getEnd());
+        InputStream in = null;
+        RandomAccessFile raf = null;
+
+        try {
+            if (conn.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+                throw new IOException("Range not supported, got HTTP " + conn.getResponseCode() + " for " + url);
+            }
+
+            in = conn.getInputStream();
+            raf = new RandomAccessFile(file, "rw");
+            FileChannel channel = raf.getChannel();
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while (!canceled && (n = in.read(buffer)) != -1) {
+                int written = segment.write(channel, buffer, n);
+                if (written > 0) {
+                    listener.onData(written);
+                }
+                if (written < n || segment.getRemaining() == 0) {
+                    // the rest of the range went to another connection
+                    break;
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(in);
+            if (raf != null) {
+                raf.close();
+            }
+            conn.disconnect();
+        }
+    }
+
+    private static HttpURLConnection open(String url, long start, long end) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(TIMEOUT);
+        conn.setReadTimeout(TIMEOUT);
+        conn.setRequestProperty("Range", "bytes=" + start + "-" + (end - 1));
+        return conn;
+    }
+
+    private void split(long start) {
+        long length = size - start;
+        int n = (int) Math.max(1, Math.min(MAX_CONNECTIONS, length / MIN_SEGMENT_SIZE));
+        long chunk = length / n;
+
+        for (int i = 0; i < n; i++) {
+            long end = i == n - 1 ? size : start + chunk;
+            segments.add(new Segment(start, end));
+            start = end;
+        }
+    }
+
+    private synchronized long getRemaining() {
+        long remaining = 0;
+        for (Segment s : segments) {
+            remaining += s.getRemaining();
+        }
+        return remaining;
+    }
+
+    private synchronized String segmentStats() {
+        StringBuilder sb = new StringBuilder();
+        for (Segment s : segments) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(s.start).append("-").append(s.getEnd()).append(" @ ").append(s.getSpeed() / 1024).append("KB/s");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reads the saved ranges, the first line is the size of the file and
+     * the others the position and end of each range.
+     *
+     * @return false if there is nothing saved for a file of this size
+     */
+    private boolean loadState() {
+        if (!stateFile.exists() || !file.exists()) {
+            return false;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(stateFile), "UTF-8"));
+
+            String line = reader.readLine();
+            if (line == null || Long.parseLong(line.trim()) != size) {
+                return false;
+            }
+
+            List<Segment> loaded = new ArrayList<Segment>();
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0) {
+                    continue;
+                }
+                String[] parts = line.split(" ");
+                long position = Long.parseLong(parts[0]);
+                long end = Long.parseLong(parts[1]);
+                if (position < 0 || end > size || position > end) {
+                    return false;
+                }
+                loaded.add(new Segment(position, end));
+            }
+
+            segments.addAll(loaded);
+            return true;
+        } catch (Throwable e) {
+            LOG.warn("Unable to read download state " + stateFile, e);
+            return false;
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
+    private void saveState() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(size).append('\n');
+        synchronized (this) {
+            for (Segment s : segments) {
+                if (s.getRemaining() > 0) {
+                    sb.append(s.getPosition()).append(' ').append(s.getEnd()).append('\n');
+                }
+            }
+        }
+
+        // written aside and renamed, a crash doesn't leave half a state
+        File tmp = new File(stateFile.getParentFile(), stateFile.getName() + ".tmp");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+        try {
+            writer.write(sb.toString());
+        } finally {
+            writer.close();
+        }
+
+        if (!tmp.renameTo(stateFile)) {
+            stateFile.delete();
+            if (!tmp.renameTo(stateFile)) {
+                throw new IOException("Unable to save download state " + stateFile);
+            }
+        }
+    }
+
+    private void saveStateQuietly() {
+        try {
+            saveState();
+        } catch (Throwable e) {
+            LOG.warn("Unable to save download state " + stateFile, e);
+        }
+    }
+
+    private static final class Segment {
+
+        private final long start;
+
+        // guarded by this
+        private long position;
+        private long end;
+
+        private long speed;
+        private long speedMarkTimestamp;
+        private long speedMarkPosition;
+
+        public Segment(long position, long end) {
+            this.start = position;
+            this.position = position;
+            this.end = end;
+            this.speedMarkTimestamp = System.currentTimeMillis();
+            this.speedMarkPosition = position;
+        }
+
+        public synchronized long getPosition() {
+            return position;
+        }
+
+        public synchronized long getEnd() {
+            return end;
+        }
+
+        public synchronized long getRemaining() {
+            return end - position;
+        }
+
+        public synchronized long getSpeed() {
+            long elapsed = System.currentTimeMillis() - speedMarkTimestamp;
+            if (elapsed > 2000) {
+                // stalled since the last mark
+                return Math.min(speed, ((position - speedMarkPosition) * 1000) / elapsed);
+            }
+            return speed;
+        }
+
+        /**
+         * Writes the bytes at the position, up to the end of the range.
+         *
+         * @return the number of bytes written
+         */
+        public synchronized int write(FileChannel channel, byte[] buffer, int length) throws IOException {
+            int n = (int) Math.min(length, end - position);
+
+            ByteBuffer bb = ByteBuffer.wrap(buffer, 0, n);
+            long p = position;
+            while (bb.hasRemaining()) {
+                p += channel.write(bb, p);
+            }
+            position += n;
+
+            long now = System.currentTimeMillis();
+            if (now - speedMarkTimestamp >= 1000) {
+                speed = ((position - speedMarkPosition) * 1000) / (now - speedMarkTimestamp);
+                speedMarkTimestamp = now;
+                speedMarkPosition = position;
+            }
+
+            return n;
+        }
+
+        /**
+         * Gives the second half of the bytes left to a new range.
+         */
+        public synchronized Segment splitHalf() {
+            long remaining = end - position;
+            if (remaining < 2 * MIN_SEGMENT_SIZE) {
+                return null;
+            }
+
+            long middle = position + remaining / 2;
+            Segment other = new Segment(middle, end);
+            end = middle;
+            return other;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.bittorrent;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.frostwire.logging.Logger;
+import com.frostwire.transfers.TransferItem;
+import com.frostwire.transfers.TransferState;
+
+/**
+ * Index of the files of the torrent downloads, kept up to date by the
+ * download events, so the library doesn't have to walk every item of
+ * every torrent to know which files to hide or which download owns a file.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class TorrentFileIndex {
+
+    private static final Logger LOG = Logger.getLogger(TorrentFileIndex.class);
+
+    /**
+     * While a torrent receives bytes without a change of progress, files can
+     * still finish, the index is read again after this many milliseconds.
+     */
+    private static final long REINDEX_INTERVAL = 5000;
+
+    private static final TorrentFileIndex INSTANCE = new TorrentFileIndex();
+
+    public static TorrentFileIndex instance() {
+        return INSTANCE;
+    }
+
+    private final Map<BittorrentDownload, Entry> entries;
+
+    // download -> generation of its latest update, gone once removed
+    private final Map<BittorrentDownload, Long> generations;
+    private long generation;
+
+    // file -> download, for all the files of the torrents
+    private final Map<File, BittorrentDownload> owners;
+
+    // file -> download, for the incomplete or skipped files only
+    private final Map<File, BittorrentDownload> incomplete;
+    private final Map<File, BittorrentDownload> skipped;
+
+    private volatile Set<File> incompleteSnapshot;
+    private volatile Set<File> skippedSnapshot;
+    private volatile Set<File> ignorableSnapshot;
+
+    private TorrentFileIndex() {
+        this.entries = new HashMap<BittorrentDownload, Entry>();
+        this.generations = new HashMap<BittorrentDownload, Long>();
+        this.owners = new HashMap<File, BittorrentDownload>();
+        this.incomplete = new HashMap<File, BittorrentDownload>();
+        this.skipped = new HashMap<File, BittorrentDownload>();
+    }
+
+    /**
+     * Indexes the files of the download again if something that changes
+     * them changed since the last time: the state, the progress, the files
+     * selected or, every few seconds, the bytes received.
+     */
+    public void update(BittorrentDownload download) {
+        update(download, false);
+    }
+
+    /**
+     * Indexes the files of the download again now, for instance after the
+     * priorities of its files changed or it finished.
+     */
+    public void reindex(BittorrentDownload download) {
+        update(download, true);
+    }
+
+    private void update(BittorrentDownload download, boolean force) {
+        com.frostwire.bittorrent.BTDownload dl = download.getDl();
+
+        TransferState state;
+        int progress;
+        boolean partial;
+        long wantedSize;
+        long bytesReceived;
+        try {
+            state = dl.getState();
+            progress = dl.getProgress();
+            partial = dl.isPartial();
+            // the size of the files not skipped, changes with the selection
+            wantedSize = download.getSize();
+            bytesReceived = dl.getTotalBytesReceived();
+        } catch (Throwable e) {
+            LOG.error("Error reading torrent state", e);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+
+        long updateGeneration;
+        synchronized (this) {
+            if (!force) {
+                Entry entry = entries.get(download);
+                if (entry != null && entry.state == state && entry.progress == progress && entry.partial == partial && entry.wantedSize == wantedSize && (entry.bytesReceived == bytesReceived || now - entry.time < REINDEX_INTERVAL)) {
+                    return;
+                }
+            }
+            updateGeneration = ++generation;
+            generations.put(download, updateGeneration);
+        }
+
+        // read outside the lock, can be slow for big torrents
+        Entry entry = new Entry(state, progress, partial, wantedSize, bytesReceived, now);
+        try {
+            for (TransferItem item : dl.getItems()) {
+                File f = item.getFile();
+                entry.files.add(f);
+                if (item.isSkipped()) {
+                    entry.skipped.add(f);
+                }
+            }
+            entry.incomplete.addAll(dl.getIncompleteFiles());
+        } catch (Throwable e) {
+            LOG.error("Error getting file information", e);
+            return;
+        }
+
+        synchronized (this) {
+            // removed meanwhile, or a later update started
+            Long latest = generations.get(download);
+            if (latest == null || latest != updateGeneration) {
+                return;
+            }
+            unindex(download, entries.put(download, entry));
+            index(download, entry);
+        }
+    }
+
+    /**
+     * Forgets the files of a removed download.
+     */
+    public synchronized void remove(BittorrentDownload download) {
+        generations.remove(download);
+        unindex(download, entries.remove(download));
+    }
+
+    /**
+     * Returns true if the file is incomplete or skipped in any torrent.
+     */
+    public synchronized boolean isIgnorable(File f) {
+        return incomplete.containsKey(f) || skipped.containsKey(f);
+    }
+
+    /**
+     * Returns the download the file belongs to, or null.
+     */
+    public synchronized BittorrentDownload getDownload(File f) {
+        return owners.get(f);
+    }
+
+    /**
+     * Immutable view of the files incomplete or skipped at the time of
+     * the call, rebuilt only after a change.
+     */
+    public Set<File> getIgnorableFiles() {
+        Set<File> set = ignorableSnapshot;
+        if (set == null) {
+            synchronized (this) {
+                if (ignorableSnapshot == null) {
+                    Set<File> s = new HashSet<File>(incomplete.keySet());
+                    s.addAll(skipped.keySet());
+                    ignorableSnapshot = Collections.unmodifiableSet(s);
+                }
+                set = ignorableSnapshot;
+            }
+        }
+        return set;
+    }
+
+    public Set<File> getIncompleteFiles() {
+        Set<File> set = incompleteSnapshot;
+        if (set == null) {
+            synchronized (this) {
+                if (incompleteSnapshot == null) {
+                    incompleteSnapshot = Collections.unmodifiableSet(new HashSet<File>(incomplete.keySet()));
+                }
+                set = incompleteSnapshot;
+            }
+        }
+        return set;
+    }
+
+    public Set<File> getSkippedFiles() {
+        Set<File> set = skippedSnapshot;
+        if (set == null) {
+            synchronized (this) {
+                if (skippedSnapshot == null) {
+                    skippedSnapshot = Collections.unmodifiableSet(new HashSet<File>(skipped.keySet()));
+                }
+                set = skippedSnapshot;
+            }
+        }
+        return set;
+    }
+
+    private void index(BittorrentDownload download, Entry entry) {
+        for (File f : entry.files) {
+            owners.put(f, download);
+        }
+        for (File f : entry.incomplete) {
+            incomplete.put(f, download);
+        }
+        for (File f : entry.skipped) {
+            skipped.put(f, download);
+        }
+
+        invalidateSnapshots();
+    }
+
+    private void unindex(BittorrentDownload download, Entry entry) {
+        if (entry == null) {
+            return;
+        }
+
+        // only if still owned by this download, another torrent can share the path
+        for (File f : entry.files) {
+            if (owners.get(f) == download) {
+                owners.remove(f);
+            }
+        }
+        for (File f : entry.incomplete) {
+            if (incomplete.get(f) == download) {
+                incomplete.remove(f);
+            }
+        }
+        for (File f : entry.skipped) {
+            if (skipped.get(f) == download) {
+                skipped.remove(f);
+            }
+        }
+
+        invalidateSnapshots();
+    }
+
+    private void invalidateSnapshots() {
+        incompleteSnapshot = null;
+        skippedSnapshot = null;
+        ignorableSnapshot = null;
+    }
+
+    private static final class Entry {
+
+        private final TransferState state;
+        private final int progress;
+        private final boolean partial;
+        private final long wantedSize;
+        private final long bytesReceived;
+        private final long time;
+
+        private final Set<File> files;
+        private final Set<File> incomplete;
+        private final Set<File> skipped;
+
+        public Entry(TransferState state, int progress, boolean partial, long wantedSize, long bytesReceived, long time) {
+            this.state = state;
+            this.progress = progress;
+            this.partial = partial;
+            this.wantedSize = wantedSize;
+            this.bytesReceived = bytesReceived;
+            this.time = time;
+            this.files = new HashSet<File>();
+            this.incomplete = new HashSet<File>();
+            this.skipped = new HashSet<File>();
+        }
+    }
+}
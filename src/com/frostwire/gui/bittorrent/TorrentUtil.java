@@ -62,17 +62,11 @@ public final class TorrentUtil {
 
     private static final Logger LOG = Logger.getLogger(TorrentUtil.class);
 
+    /**
+     * Returns a copy of the skipped files of all the torrents.
+     */
     public static Set<File> getSkipedFiles() {
-        Set<File> set = new HashSet<File>();
-        List<BTDownload> downloads = BTDownloadMediator.instance().getDownloads();
-
-        for (BTDownload d : downloads) {
-            if (d instanceof BittorrentDownload) {
-                set.addAll(getSkippedFiles(((BittorrentDownload) d).getDl()));
-            }
-        }
-
-        return set;
+        return new HashSet<File>(TorrentFileIndex.instance().getSkippedFiles());
     }
 
     public static Set<File> getSkippedFiles(com.frostwire.bittorrent.BTDownload dm) {
@@ -91,38 +85,14 @@ public final class TorrentUtil {
     }
 
     public static BittorrentDownload getDownloadManager(File f) {
-        List<BTDownload> downloads = BTDownloadMediator.instance().getDownloads();
-        for (BTDownload d : downloads) {
-            if (d instanceof BittorrentDownload) {
-                BittorrentDownload bt = (BittorrentDownload) d;
-                com.frostwire.bittorrent.BTDownload dl = bt.getDl();
-
-                List<TransferItem> items = dl.getItems();
-
-                for (TransferItem item : items) {
-                    if (f.equals(item.getFile())) {
-                        return bt;
-                    }
-                }
-            }
-        }
-
-        return null;
+        return TorrentFileIndex.instance().getDownload(f);
     }
 
+    /**
+     * Returns a copy of the incomplete files of all the torrents.
+     */
     public static Set<File> getIncompleteFiles() {
-        Set<File> set = new HashSet<File>();
-
-        List<BTDownload> downloads = BTDownloadMediator.instance().getDownloads();
-        for (BTDownload d : downloads) {
-            if (d instanceof BittorrentDownload) {
-                BittorrentDownload bt = (BittorrentDownload) d;
-                com.frostwire.bittorrent.BTDownload dl = bt.getDl();
-                set.addAll(dl.getIncompleteFiles());
-            }
-        }
-
-        return set;
+        return new HashSet<File>(TorrentFileIndex.instance().getIncompleteFiles());
     }
 
     public static String getMagnet(String hash) {
@@ -187,9 +157,11 @@ public final class TorrentUtil {
         return hex;
     }
 
+    /**
+     * Returns the incomplete and skipped files of all the torrents, the set
+     * is an immutable snapshot and must not be modified.
+     */
     public static Set<File> getIgnorableFiles() {
-        Set<File> set = TorrentUtil.getIncompleteFiles();
-        set.addAll(TorrentUtil.getSkipedFiles());
-        return set;
+        return TorrentFileIndex.instance().getIgnorableFiles();
     }
 }
@@ -119,7 +119,7 @@ class SlidePanel extends JPanel {
                         }
                     });
                 }
-            });
+            }, index == 0);
         } catch (MalformedURLException e) {
             e.printStackTrace();
         }
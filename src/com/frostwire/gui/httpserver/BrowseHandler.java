@@ -18,19 +18,30 @@
 
 package com.frostwire.gui.httpserver;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 import java.util.zip.GZIPOutputStream;
 
 import com.frostwire.core.FileDescriptor;
+import com.frostwire.core.providers.ShareFilesDB;
 import com.frostwire.gui.Librarian;
 import com.frostwire.logging.Logger;
-import com.frostwire.util.JsonUtils;
 import com.frostwire.util.URLUtils;
+import com.google.gson.stream.JsonWriter;
 import com.sun.net.httpserver.HttpExchange;
 
 /**
+ * Serves the list of shared files of a type. The gzipped json is kept per
+ * file type until the share table changes, and the peers that already
+ * have it get a not modified response.
+ * 
  * @author gubatron
  * @author aldenml
  *
@@ -39,11 +50,17 @@ class BrowseHandler extends AbstractHandler {
 
     private static final Logger LOG = Logger.getLogger(BrowseHandler.class);
 
+    private final Map<Byte, Payload> cache;
+
+    public BrowseHandler() {
+        this.cache = new HashMap<Byte, Payload>();
+    }
+
     @Override
     public void handle(HttpExchange exchange) throws IOException {
         assertUPnPActive();
 
-        GZIPOutputStream os = null;
+        OutputStream os = null;
 
         byte type = -1;
 
@@ -55,20 +72,30 @@ class BrowseHandler extends AbstractHandler {
             }
             
             if (type == -1) {
-                exchange.sendResponseHeaders(Code.HTTP_BAD_REQUEST, 0);
+                exchange.sendResponseHeaders(Code.HTTP_BAD_REQUEST, -1);
+                return;
+            }
+
+            Payload payload = getPayload(type);
+
+            if (payload == null) {
+                exchange.sendResponseHeaders(Code.HTTP_INTERNAL_ERROR, -1);
                 return;
             }
 
-            String response = getResponse(exchange, type);
+            exchange.getResponseHeaders().set("ETag", payload.etag);
+
+            if (payload.etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(Code.HTTP_NOT_MODIFIED, -1);
+                return;
+            }
 
             exchange.getResponseHeaders().set("Content-Encoding", "gzip");
             exchange.getResponseHeaders().set("Content-Type", "text/json; charset=UTF-8");
-            exchange.sendResponseHeaders(Code.HTTP_OK, 0);
+            exchange.sendResponseHeaders(Code.HTTP_OK, payload.data.length);
 
-            os = new GZIPOutputStream(exchange.getResponseBody());
-
-            os.write(response.getBytes("UTF-8"));
-            os.finish();
+            os = exchange.getResponseBody();
+            os.write(payload.data);
 
         } catch (IOException e) {
             LOG.warn("Error browsing files type=" + type);
@@ -81,16 +108,94 @@ class BrowseHandler extends AbstractHandler {
         }
     }
 
-    private String getResponse(HttpExchange exchange, byte fileType) {
+    /**
+     * Returns the cached response, built again if the share table was
+     * written since, or null if the shared files couldn't be read.
+     */
+    private Payload getPayload(byte fileType) throws IOException {
+        synchronized (cache) {
+            long generation = ShareFilesDB.intance().getGeneration();
+
+            Payload payload = cache.get(fileType);
+            if (payload == null || payload.generation != generation) {
+                payload = buildPayload(fileType, generation);
+                if (payload == null) {
+                    // not cached, the next request tries again
+                    return null;
+                }
+                cache.put(fileType, payload);
+            }
+
+            return payload;
+        }
+    }
+
+    /**
+     * Writes the json directly into the gzip stream, same format as the
+     * serialized <code>{"files":[...]}</code> list.
+     */
+    private Payload buildPayload(byte fileType, long generation) throws IOException {
         List<FileDescriptor> fileDescriptors = Librarian.instance().getSharedFiles(fileType);
 
-        FileDescriptorList list = new FileDescriptorList();
-        list.files = fileDescriptors;
+        if (fileDescriptors == null) {
+            LOG.warn("Unable to read the shared files type=" + fileType);
+            return null;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CheckedOutputStream checked = new CheckedOutputStream(bytes, new CRC32());
+        GZIPOutputStream gzip = new GZIPOutputStream(checked);
+
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(gzip, "UTF-8"));
+        writer.setHtmlSafe(true);
+        writer.setSerializeNulls(false);
 
-        return JsonUtils.toJson(list);
+        try {
+            writer.beginObject();
+            writer.name("files");
+            writer.beginArray();
+            for (FileDescriptor fd : fileDescriptors) {
+                writeFileDescriptor(writer, fd);
+            }
+            writer.endArray();
+            writer.endObject();
+        } finally {
+            writer.close();
+        }
+
+        byte[] data = bytes.toByteArray();
+        String etag = "\"" + fileType + "-" + Long.toHexString(checked.getChecksum().getValue()) + "-" + Integer.toHexString(data.length) + "\"";
+
+        return new Payload(data, etag, generation);
+    }
+
+    private static void writeFileDescriptor(JsonWriter writer, FileDescriptor fd) throws IOException {
+        writer.beginObject();
+        writer.name("id").value(fd.id);
+        writer.name("fileType").value(fd.fileType);
+        writer.name("filePath").value(fd.filePath);
+        writer.name("fileSize").value(fd.fileSize);
+        writer.name("mime").value(fd.mime);
+        writer.name("dateAdded").value(fd.dateAdded);
+        writer.name("dateModified").value(fd.dateModified);
+        writer.name("shared").value(fd.shared);
+        writer.name("title").value(fd.title);
+        writer.name("artist").value(fd.artist);
+        writer.name("album").value(fd.album);
+        writer.name("year").value(fd.year);
+        writer.endObject();
     }
 
-    static final class FileDescriptorList {
-        public List<FileDescriptor> files;
+    private static final class Payload {
+
+        private final byte[] data;
+        private final String etag;
+        private final long generation;
+
+        public Payload(byte[] data, String etag, long generation) {
+            this.data = data;
+            this.etag = etag;
+            this.generation = generation;
+        }
     }
 }
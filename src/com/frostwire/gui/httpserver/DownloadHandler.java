@@ -20,10 +20,19 @@ package com.frostwire.gui.httpserver;
 
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.limewire.concurrent.ExecutorsHelper;
 
 import com.frostwire.core.FileDescriptor;
 import com.frostwire.gui.Librarian;
@@ -31,9 +40,15 @@ import com.frostwire.gui.bittorrent.BTDownloadMediator;
 import com.frostwire.gui.transfers.PeerHttpUpload;
 import com.frostwire.logging.Logger;
 import com.frostwire.util.URLUtils;
+import com.limegroup.gnutella.settings.LibrarySettings;
 import com.sun.net.httpserver.HttpExchange;
 
 /**
+ * Serves the shared files, at most
+ * {@link LibrarySettings#LIBRARY_WIFI_SHARING_MAX_CONCURRENT_UPLOADS} at the
+ * same time, the rest of the requests get a busy response. Supports single
+ * byte ranges so the peers can resume and seek inside media files.
+ * 
  * @author gubatron
  * @author aldenml
  *
@@ -42,25 +57,56 @@ class DownloadHandler extends AbstractHandler {
 
     private static final Logger LOG = Logger.getLogger(DownloadHandler.class);
 
+    /**
+     * Bytes handed to the channel at a time, between checks for
+     * cancellation and the rate limit.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final ThreadPoolExecutor uploads;
+
+    public DownloadHandler() {
+        int max = maxConcurrentUploads();
+        uploads = new ThreadPoolExecutor(max, max, 5L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), ExecutorsHelper.daemonThreadFactory("HttpServer-DownloadHandler"));
+        uploads.allowCoreThreadTimeOut(true);
+    }
+
     @Override
     public void handle(final HttpExchange exchange) throws IOException {
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    internalHandler(exchange);
-                } catch (IOException e) {
-                    LOG.warn("DownloadHandler async handle error", e);
+        updatePoolSize();
+
+        try {
+            uploads.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        internalHandler(exchange);
+                    } catch (IOException e) {
+                        LOG.warn("DownloadHandler async handle error", e);
+                    }
                 }
+            });
+        } catch (RejectedExecutionException e) {
+            try {
+                sendBusyResponse(exchange);
+            } finally {
+                exchange.close();
             }
-        }).start();
+        }
+    }
+
+    /**
+     * Stops taking uploads, the ones in progress finish.
+     */
+    public void shutdown() {
+        uploads.shutdown();
     }
-    
+
     public void internalHandler(HttpExchange exchange) throws IOException {
         assertUPnPActive();
 
         OutputStream os = null;
-        FileInputStream fis = null;
+        RandomAccessFile raf = null;
 
         byte type = -1;
         int id = -1;
@@ -80,62 +126,55 @@ class DownloadHandler extends AbstractHandler {
             }
             
             if (type == -1 || id == -1) {
-                exchange.sendResponseHeaders(Code.HTTP_BAD_REQUEST, 0);
+                exchange.sendResponseHeaders(Code.HTTP_BAD_REQUEST, -1);
                 return;
             }
 
-            //if (TransferManager.instance().getActiveUploads() >= ConfigurationManager.instance().maxConcurrentUploads()) {
-            //    sendBusyResponse(exchange);
-            //    return;
-            //}
-
             FileDescriptor fd = Librarian.instance().getSharedFileDescriptor(type, id);
             if (fd == null) {
                 throw new IOException("There is no such file shared");
             }
 
-            //upload = TransferManager.instance().upload(fd);
-            upload = BTDownloadMediator.instance().upload(fd);
+            File file = new File(fd.filePath);
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+
+            long fileLength = channel.size();
 
             exchange.getResponseHeaders().add("Content-Type", fd.mime);
-            
-            File file = new File(fd.filePath);
-            
-            exchange.sendResponseHeaders(Code.HTTP_OK, file.length());
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
 
-            os = exchange.getResponseBody();
+            long[] range = parseRange(exchange.getRequestHeaders().getFirst("Range"), fileLength);
 
-            fis = new FileInputStream(file);
+            if (range == null) {
+                exchange.getResponseHeaders().add("Content-Range", "bytes */" + fileLength);
+                exchange.sendResponseHeaders(Code.HTTP_RANGE_NOT_SATISFIABLE, -1);
+                return;
+            }
 
-            byte[] buffer = new byte[4 * 1024];
-            int n;
-            int count = 0;
+            long position = range[0];
+            long length = range[1] - range[0] + 1;
 
-            while ((n = fis.read(buffer, 0, buffer.length)) != -1) {
-                os.write(buffer, 0, n);
-                upload.addBytesSent(n);
-                
-                if (upload.isCanceled()) {
-                    try {
-                        throw new IOException("Upload cancelled");
-                    } finally {
-                        os.close();
-                    }
-                }
-                
-                count += n;
-                if (count > 4096) {
-                    count = 0;
-                    Thread.yield();
-                }
+            //upload = TransferManager.instance().upload(fd);
+            upload = BTDownloadMediator.instance().upload(fd);
+
+            if (length == fileLength) {
+                exchange.sendResponseHeaders(Code.HTTP_OK, fileLength > 0 ? fileLength : -1);
+            } else {
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + fileLength);
+                exchange.sendResponseHeaders(Code.HTTP_PARTIAL, length);
             }
 
+            os = exchange.getResponseBody();
+
+            transfer(channel, position, length, os, upload);
+
         } catch (IOException e) {
             LOG.info("Error uploading file type=" + type + ", id=" + id);
             throw e;
         } finally {
             close(os);
-            close(fis);
+            close(raf);
 
             try {
                 exchange.close();
@@ -149,6 +188,101 @@ class DownloadHandler extends AbstractHandler {
         }
     }
 
+    /**
+     * Copies the region of the file letting the channel pick the fastest
+     * way to move the bytes, instead of going through a heap buffer here.
+     */
+    private void transfer(FileChannel channel, long position, long length, OutputStream os, PeerHttpUpload upload) throws IOException {
+        WritableByteChannel out = Channels.newChannel(os);
+        RateLimiter limiter = new RateLimiter(LibrarySettings.LIBRARY_WIFI_SHARING_MAX_UPLOAD_SPEED.getValue() * 1024L);
+
+        long end = position + length;
+
+        while (position < end) {
+            long n = channel.transferTo(position, Math.min(CHUNK_SIZE, end - position), out);
+            if (n <= 0) {
+                throw new IOException("File truncated while uploading");
+            }
+
+            position += n;
+            upload.addBytesSent((int) n);
+
+            if (upload.isCanceled()) {
+                throw new IOException("Upload cancelled");
+            }
+
+            limiter.sent(n);
+        }
+    }
+
+    /**
+     * Returns the first and last byte to send, the whole file if there is
+     * no range or it can't be understood, null if the range is outside
+     * the file.
+     */
+    static long[] parseRange(String header, long fileLength) {
+        long[] all = new long[] { 0, fileLength - 1 };
+
+        if (header == null || !header.startsWith("bytes=") || header.indexOf(',') != -1) {
+            // multiple ranges are not supported, the whole file is sent
+            return all;
+        }
+
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash == -1) {
+            return all;
+        }
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+
+            long start;
+            long end;
+
+            if (first.length() == 0) {
+                // suffix range, the last n bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, fileLength - suffix);
+                end = fileLength - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.length() == 0 ? fileLength - 1 : Math.min(Long.parseLong(last), fileLength - 1);
+            }
+
+            if (start < 0 || start >= fileLength || end < start) {
+                return null;
+            }
+
+            return new long[] { start, end };
+        } catch (NumberFormatException e) {
+            return all;
+        }
+    }
+
+    private void updatePoolSize() {
+        int max = maxConcurrentUploads();
+        synchronized (uploads) {
+            if (uploads.getMaximumPoolSize() != max) {
+                if (max > uploads.getMaximumPoolSize()) {
+                    uploads.setMaximumPoolSize(max);
+                    uploads.setCorePoolSize(max);
+                } else {
+                    uploads.setCorePoolSize(max);
+                    uploads.setMaximumPoolSize(max);
+                }
+            }
+        }
+    }
+
+    private static int maxConcurrentUploads() {
+        return Math.max(1, LibrarySettings.LIBRARY_WIFI_SHARING_MAX_CONCURRENT_UPLOADS.getValue());
+    }
+
     private void close(Closeable c) {
         if (c != null) {
             try {
@@ -159,8 +293,8 @@ class DownloadHandler extends AbstractHandler {
         }
     }
 
-    //    private void sendBusyResponse(HttpExchange exchange) throws IOException {
-    //        exchange.getResponseHeaders().add("Retry-After", "10"); // retry in 10 seconds
-    //        exchange.sendResponseHeaders(Code.HTTP_UNAVAILABLE, 0);
-    //    }
+    private void sendBusyResponse(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Retry-After", "10"); // retry in 10 seconds
+        exchange.sendResponseHeaders(Code.HTTP_UNAVAILABLE, -1);
+    }
 }
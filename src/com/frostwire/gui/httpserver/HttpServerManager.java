@@ -19,9 +19,12 @@
 package com.frostwire.gui.httpserver;
 
 import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.limewire.concurrent.ExecutorsHelper;
+
 import com.sun.net.httpserver.HttpServer;
 
 /**
@@ -33,7 +36,15 @@ public class HttpServerManager {
 
     private static final Logger LOG = Logger.getLogger(HttpServerManager.class.getName());
 
+    /**
+     * Threads for the finger and browse requests, the downloads are
+     * handed off to the pool of the download handler.
+     */
+    private static final int REQUEST_THREADS = 2;
+
     private HttpServer httpServer;
+    private ExecutorService executor;
+    private DownloadHandler downloadHandler;
 
     public HttpServerManager() {
     }
@@ -48,9 +59,14 @@ public class HttpServerManager {
 
             httpServer = HttpServer.create(new InetSocketAddress(port), 10);
 
+            executor = ExecutorsHelper.newFixedSizeThreadPool(REQUEST_THREADS, "HttpServer");
+            downloadHandler = new DownloadHandler();
+
+            httpServer.setExecutor(executor);
+
             httpServer.createContext("/finger", new FingerHandler());
             httpServer.createContext("/browse", new BrowseHandler());
-            httpServer.createContext("/download", new DownloadHandler());
+            httpServer.createContext("/download", downloadHandler);
 
             httpServer.start();
 
@@ -70,6 +86,16 @@ public class HttpServerManager {
             LOG.log(Level.WARNING, "Something wrong stopping the HTTP server", e);
         }
 
+        if (downloadHandler != null) {
+            downloadHandler.shutdown();
+            downloadHandler = null;
+        }
+
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+
         httpServer = null;
     }
 }
@@ -0,0 +1,83 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.httpserver;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Keeps a transfer under a given number of bytes per second, sleeping
+ * after the bytes sent get ahead of the allowed rate.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+final class RateLimiter {
+
+    /**
+     * How far behind the limit a transfer can fall before the unused
+     * bandwidth is forgotten, so a stall is not followed by a burst.
+     */
+    private static final long MAX_CREDIT_MILLIS = 1000;
+
+    private final long bytesPerSecond;
+
+    private long start;
+    private long bytes;
+
+    /**
+     * @param bytesPerSecond the maximum rate, 0 or less for no limit
+     */
+    public RateLimiter(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.start = System.currentTimeMillis();
+    }
+
+    public boolean isUnlimited() {
+        return bytesPerSecond <= 0;
+    }
+
+    /**
+     * Accounts the bytes just sent and waits if the transfer is going
+     * faster than the limit.
+     */
+    public void sent(long n) throws InterruptedIOException {
+        if (isUnlimited()) {
+            return;
+        }
+
+        bytes += n;
+
+        long now = System.currentTimeMillis();
+        long expected = bytes * 1000 / bytesPerSecond;
+        long elapsed = now - start;
+
+        if (expected > elapsed) {
+            try {
+                Thread.sleep(expected - elapsed);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Upload interrupted");
+            }
+        } else if (elapsed - expected > MAX_CREDIT_MILLIS) {
+            start = now - MAX_CREDIT_MILLIS;
+            bytes = 0;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.library;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import javax.imageio.ImageIO;
+
+import org.limewire.concurrent.ExecutorsHelper;
+import org.limewire.util.ByteUtils;
+import org.limewire.util.CommonUtils;
+
+import com.frostwire.gui.library.tags.TagsReader;
+import com.frostwire.logging.Logger;
+
+/**
+ * Artwork of the media files, scaled down to thumbnails and cached in
+ * memory and on disk, keyed by path and modification date so an edited
+ * file gets its artwork read again.
+ * <p>
+ * The tags are read by a single worker. A newer request from the same
+ * owner replaces the one still waiting, and the requests for a file that
+ * is already being read wait for that read instead of starting another.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class CoverArtCache {
+
+    private static final Logger LOG = Logger.getLogger(CoverArtCache.class);
+
+    /**
+     * Max width and height of the thumbnails.
+     */
+    public static final int THUMBNAIL_SIZE = 350;
+
+    private static final long MAX_MEMORY_BYTES = 16 * 1024 * 1024;
+
+    private static final int MAX_DISK_FILES = 2000;
+
+    /**
+     * Writes to disk between checks of the number of files.
+     */
+    private static final int PRUNE_INTERVAL = 100;
+
+    private static final BufferedImage NO_ARTWORK = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+
+    private static final CoverArtCache instance = new CoverArtCache();
+
+    public static CoverArtCache instance() {
+        return instance;
+    }
+
+    public interface Listener {
+
+        /**
+         * Called from the worker thread, the image is null if the file
+         * has no artwork.
+         */
+        void onArtwork(File file, BufferedImage image);
+    }
+
+    private final ExecutorService worker;
+    private final File dir;
+
+    // guarded by this
+    private final LinkedHashMap<String, BufferedImage> memory;
+    private long memoryBytes;
+    private final LinkedHashMap<Object, Request> pending;
+    private final Map<String, List<Request>> inFlight;
+    private final Map<Object, Request> latest;
+    private boolean draining;
+
+    // only used by the worker
+    private int writes;
+
+    private CoverArtCache() {
+        this.worker = ExecutorsHelper.newProcessingQueue("CoverArtCache");
+        this.dir = new File(CommonUtils.getUserSettingsDir(), "coverart");
+
+        this.memory = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true);
+        this.pending = new LinkedHashMap<Object, Request>();
+        this.inFlight = new HashMap<String, List<Request>>();
+        this.latest = new HashMap<Object, Request>();
+    }
+
+    /**
+     * Returns the thumbnail if it's in memory, without waiting.
+     *
+     * @return the thumbnail, or null if not in memory or the file has no
+     * artwork
+     */
+    public synchronized BufferedImage getIfPresent(File file) {
+        BufferedImage image = memory.get(key(file));
+        return image != NO_ARTWORK ? image : null;
+    }
+
+    /**
+     * Reads the thumbnail of the file in the background, the listener is
+     * not called if the owner requests another file before this one is
+     * ready.
+     *
+     * @param owner the view asking, usually the component that shows it
+     */
+    public void request(Object owner, File file, Listener listener) {
+        Request request = new Request(owner, file, key(file), listener);
+
+        BufferedImage image;
+        synchronized (this) {
+            latest.put(owner, request);
+            pending.remove(owner);
+
+            image = memory.get(request.key);
+            if (image == null) {
+                List<Request> waiting = inFlight.get(request.key);
+                if (waiting != null) {
+                    waiting.add(request);
+                } else {
+                    pending.put(owner, request);
+                    if (!draining) {
+                        draining = true;
+                        worker.execute(new Runnable() {
+                            public void run() {
+                                drain();
+                            }
+                        });
+                    }
+                }
+                return;
+            }
+        }
+
+        // in memory, same thread as the caller
+        deliver(request, image);
+    }
+
+    /**
+     * Forgets the pending request of the owner.
+     */
+    public synchronized void cancel(Object owner) {
+        pending.remove(owner);
+        latest.remove(owner);
+    }
+
+    private void drain() {
+        while (true) {
+            Request request;
+            List<Request> waiting;
+            BufferedImage cached;
+
+            synchronized (this) {
+                Iterator<Request> it = pending.values().iterator();
+                if (!it.hasNext()) {
+                    draining = false;
+                    return;
+                }
+                request = it.next();
+                it.remove();
+
+                cached = memory.get(request.key);
+                waiting = new ArrayList<Request>();
+                waiting.add(request);
+                if (cached == null) {
+                    inFlight.put(request.key, waiting);
+                }
+            }
+
+            if (cached != null) {
+                // read for another owner while this one was waiting
+                deliver(request, cached);
+                continue;
+            }
+
+            BufferedImage image = null;
+            try {
+                image = load(request.file, request.key);
+            } catch (Throwable e) {
+                LOG.warn("Error reading artwork of " + request.file, e);
+            }
+
+            synchronized (this) {
+                inFlight.remove(request.key);
+                if (image != null) {
+                    putInMemory(request.key, image);
+                }
+            }
+
+            for (Request r : waiting) {
+                deliver(r, image);
+            }
+        }
+    }
+
+    private void deliver(Request request, BufferedImage image) {
+        synchronized (this) {
+            if (latest.get(request.owner) != request) {
+                // the owner moved on to another file
+                return;
+            }
+            latest.remove(request.owner);
+        }
+
+        try {
+            request.listener.onArtwork(request.file, image != NO_ARTWORK ? image : null);
+        } catch (Throwable e) {
+            LOG.warn("Error delivering artwork of " + request.file, e);
+        }
+    }
+
+    /**
+     * From disk if possible, from the tags otherwise.
+     *
+     * @return the thumbnail, or NO_ARTWORK
+     */
+    private BufferedImage load(File file, String key) {
+        File thumbnail = new File(dir, key + ".png");
+
+        if (thumbnail.exists()) {
+            if (thumbnail.length() == 0) {
+                return NO_ARTWORK;
+            }
+            try {
+                BufferedImage image = ImageIO.read(thumbnail);
+                if (image != null) {
+                    return image;
+                }
+            } catch (Throwable e) {
+                LOG.warn("Error reading cached artwork " + thumbnail, e);
+            }
+        }
+
+        BufferedImage artwork = new TagsReader(file).getArtwork();
+        BufferedImage image = artwork != null ? scale(artwork) : NO_ARTWORK;
+
+        store(thumbnail, image);
+
+        return image;
+    }
+
+    private void store(File thumbnail, BufferedImage image) {
+        try {
+            if (!dir.exists() && !dir.mkdirs()) {
+                return;
+            }
+
+            if (image == NO_ARTWORK) {
+                // empty file, so we don't parse the tags again
+                thumbnail.createNewFile();
+            } else {
+                ImageIO.write(image, "png", thumbnail);
+            }
+
+            if (++writes % PRUNE_INTERVAL == 0) {
+                prune();
+            }
+        } catch (Throwable e) {
+            LOG.warn("Error caching artwork " + thumbnail, e);
+        }
+    }
+
+    /**
+     * Deletes the least recently written thumbnails above the limit.
+     */
+    private void prune() {
+        File[] files = dir.listFiles();
+        if (files == null || files.length <= MAX_DISK_FILES) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File a, File b) {
+                long d = a.lastModified() - b.lastModified();
+                return d < 0 ? -1 : (d > 0 ? 1 : 0);
+            }
+        });
+
+        for (int i = 0; i < files.length - MAX_DISK_FILES; i++) {
+            files[i].delete();
+        }
+    }
+
+    private void putInMemory(String key, BufferedImage image) {
+        BufferedImage old = memory.put(key, image);
+        if (old != null) {
+            memoryBytes -= bytes(old);
+        }
+        memoryBytes += bytes(image);
+
+        Iterator<BufferedImage> it = memory.values().iterator();
+        while (memoryBytes > MAX_MEMORY_BYTES && it.hasNext()) {
+            memoryBytes -= bytes(it.next());
+            it.remove();
+        }
+    }
+
+    private static long bytes(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+
+    /**
+     * Scales the artwork down to fit the thumbnail size, keeping the
+     * aspect ratio.
+     */
+    private static BufferedImage scale(BufferedImage artwork) {
+        int w = artwork.getWidth();
+        int h = artwork.getHeight();
+
+        if (w <= THUMBNAIL_SIZE && h <= THUMBNAIL_SIZE) {
+            return artwork;
+        }
+
+        double ratio = Math.min((double) THUMBNAIL_SIZE / w, (double) THUMBNAIL_SIZE / h);
+        int tw = Math.max(1, (int) (w * ratio));
+        int th = Math.max(1, (int) (h * ratio));
+
+        BufferedImage thumbnail = new BufferedImage(tw, th, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = thumbnail.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g2.drawImage(artwork, 0, 0, tw, th, null);
+        g2.dispose();
+
+        return thumbnail;
+    }
+
+    private static String key(File file) {
+        String str = file.getAbsolutePath() + ":" + file.lastModified();
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            return ByteUtils.encodeHex(md.digest(str.getBytes("UTF-8")));
+        } catch (Throwable e) {
+            return Integer.toHexString(str.hashCode());
+        }
+    }
+
+    private static final class Request {
+
+        private final Object owner;
+        private final File file;
+        private final String key;
+        private final Listener listener;
+
+        public Request(Object owner, File file, String key, Listener listener) {
+            this.owner = owner;
+            this.file = file;
+            this.key = key;
+            this.listener = listener;
+        }
+    }
+}
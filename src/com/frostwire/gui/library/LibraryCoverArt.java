@@ -30,7 +30,6 @@ import java.io.File;
 
 import javax.swing.JPanel;
 
-import com.frostwire.gui.library.tags.TagsReader;
 import com.limegroup.gnutella.gui.GUIMediator;
 
 /**
@@ -67,26 +66,24 @@ public final class LibraryCoverArt extends JPanel {
             return;
         }
         this.file = file;
-        Thread t = new Thread(new Runnable() {
-            public void run() {
-                Image image = retrieveImage(file);
-                if (file != null && file.equals(LibraryCoverArt.this.file)) {
-                    setPrivateImage(image);
+        if (file == null) {
+            CoverArtCache.instance().cancel(this);
+            setImageLater(defaultCoverArt);
+            return;
+        }
+        CoverArtCache.instance().request(this, file, new CoverArtCache.Listener() {
+            public void onArtwork(File f, BufferedImage image) {
+                if (f.equals(LibraryCoverArt.this.file)) {
+                    setImageLater(image);
                 }
             }
-        }, "Cover Art extract");
-        t.setDaemon(true);
-        t.start();
+        });
     }
 
     public void setDefault() {
         this.file = null;
-        new Thread(new Runnable() {
-            public void run() {
-                Image image = retrieveImage(file);
-                setPrivateImage(image);
-            }
-        }).start();
+        CoverArtCache.instance().cancel(this);
+        setImageLater(defaultCoverArt);
     }
 
     @Override
@@ -95,18 +92,12 @@ public final class LibraryCoverArt extends JPanel {
         g.drawImage(background, 0, 0, null);
     }
 
-    /**
-     * Synchronous.
-     * @param file
-     * @return
-     */
-    private Image retrieveImage(File file) {
-        if (file == null) {
-            return defaultCoverArt;
-        }
-        Image image = new TagsReader(file).getArtwork();
-
-        return image;
+    private void setImageLater(final Image image) {
+        GUIMediator.safeInvokeLater(new Runnable() {
+            public void run() {
+                setPrivateImage(image);
+            }
+        });
     }
 
     private void setPrivateImage(Image image) {
@@ -26,6 +26,7 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
@@ -162,7 +163,7 @@ public class LibraryExplorer extends AbstractLibraryListPanel {
         if (directoryHolder instanceof StarredDirectoryHolder) {
             Playlist playlist = LibraryMediator.getLibrary().getStarredPlaylist();
             LibraryMediator.instance().updateTableItems(playlist);
-            String status = LibraryUtils.getPlaylistDurationInDDHHMMSS(playlist) + ", " + playlist.getItems().size() + " " + I18n.tr("tracks");
+            String status = LibraryUtils.getPlaylistDurationInDDHHMMSS(playlist) + ", " + playlist.getItemCount() + " " + I18n.tr("tracks");
             LibraryMediator.instance().getLibrarySearch().setStatus(status);
 
         }
@@ -398,8 +399,14 @@ public class LibraryExplorer extends AbstractLibraryListPanel {
                     }
                 });
 
+                // without the library watcher nothing keeps the cache up to date, scan it again from time to time
+                boolean stale = !LibraryWatcher.instance().isRunning() && _mtsfdh.getCacheAge() > SavedFilesDirectoryHolder.UNWATCHED_CACHE_MAX_AGE;
+
                 final List<File> cache = new ArrayList<File>(_mtsfdh.getCache());
-                if (cache.size() == 0) {
+                if (!_mtsfdh.isCacheLoaded() || stale) {
+                    _mtsfdh.startCacheLoading();
+
+                    boolean completed = true;
 
                     File torrentDataDirFile = SharingSettings.TORRENT_DATA_DIR_SETTING.getValue();
 
@@ -413,13 +420,16 @@ public class LibraryExplorer extends AbstractLibraryListPanel {
                             continue;
                         }
                         if (dir.equals(torrentDataDirFile)) {
-                            search(dir, ignore, LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
+                            completed &= search(dir, ignore, LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
                         } else if (dir.equals(LibrarySettings.USER_MUSIC_FOLDER.getValue()) && !_mtsfdh.getMediaType().equals(MediaType.getAudioMediaType())) {
                             continue;
                         } else {
-                            search(dir, new HashSet<File>(), LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
+                            completed &= search(dir, new HashSet<File>(), LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
                         }
                     }
+
+                    // the changes seen by the library watcher during the scan are applied now
+                    _mtsfdh.setCacheLoaded(completed);
                 } else {
                     GUIMediator.safeInvokeLater(new Runnable() {
                         public void run() {
@@ -435,10 +445,13 @@ public class LibraryExplorer extends AbstractLibraryListPanel {
             }
         }
 
-        private void search(File file, Set<File> ignore, Set<File> exludedSubFolders) {
+        /**
+         * Returns false if the search was interrupted by a change of selection.
+         */
+        private boolean search(File file, Set<File> ignore, Set<File> exludedSubFolders) {
 
             if (file == null || !file.isDirectory() || !file.exists()) {
-                return;
+                return true;
             }
 
             //avoids npe if for some reason the directory holder is not selected.
@@ -453,7 +466,7 @@ public class LibraryExplorer extends AbstractLibraryListPanel {
 
                 DirectoryHolder directoryHolder = getSelectedDirectoryHolder();
                 if (!_mtsfdh.equals(directoryHolder)) {
-                    return;
+                    return false;
                 }
 
                 if (ignore.contains(child)) {
@@ -480,8 +493,12 @@ public class LibraryExplorer extends AbstractLibraryListPanel {
             GUIMediator.safeInvokeLater(r);
 
             for (File directory : directories) {
-                search(directory, ignore, exludedSubFolders);
+                if (!search(directory, ignore, exludedSubFolders)) {
+                    return false;
+                }
             }
+
+            return true;
         }
     }
 
@@ -644,20 +661,13 @@ public class LibraryExplorer extends AbstractLibraryListPanel {
 
     /**
      * Cleans the caches of all directory holders and refreshes the current selection.
+     * If the library watcher is running the caches are already up to date and
+     * only the selection is refreshed.
      */
     public void clearDirectoryHolderCaches() {
         try {
-            Enumeration<?> e = root.depthFirstEnumeration();
-            while (e.hasMoreElements()) {
-                LibraryNode node = (LibraryNode) e.nextElement();
-                if (node instanceof DirectoryHolderNode) {
-                    DirectoryHolder holder = ((DirectoryHolderNode) node).getDirectoryHolder();
-                    if (holder instanceof MediaTypeSavedFilesDirectoryHolder) {
-                        ((MediaTypeSavedFilesDirectoryHolder) holder).clearCache();
-                    } else if (holder instanceof SavedFilesDirectoryHolder) {
-                        ((SavedFilesDirectoryHolder) holder).clearCache();
-                    }
-                }
+            if (!LibraryWatcher.instance().isRunning()) {
+                clearCaches();
             }
 
             refreshSelection();
@@ -667,6 +677,62 @@ public class LibraryExplorer extends AbstractLibraryListPanel {
         }
     }
 
+    /**
+     * Cleans the caches of all directory holders, the next selection will scan the disk.
+     */
+    public void clearCaches() {
+        Enumeration<?> e = root.depthFirstEnumeration();
+        while (e.hasMoreElements()) {
+            LibraryNode node = (LibraryNode) e.nextElement();
+            if (node instanceof DirectoryHolderNode) {
+                DirectoryHolder holder = ((DirectoryHolderNode) node).getDirectoryHolder();
+                if (holder instanceof MediaTypeSavedFilesDirectoryHolder) {
+                    ((MediaTypeSavedFilesDirectoryHolder) holder).clearCache();
+                } else if (holder instanceof SavedFilesDirectoryHolder) {
+                    ((SavedFilesDirectoryHolder) holder).clearCache();
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the changes detected by the {@link LibraryWatcher} to the
+     * directory holders caches that are loaded, or being loaded. The tree
+     * is walked in the event dispatch thread.
+     */
+    public void updateDirectoryHolderCaches(Collection<File> added, Collection<File> removed) {
+        final List<File> addedFiles = new ArrayList<File>(added);
+        final List<File> removedFiles = new ArrayList<File>(removed);
+
+        GUIMediator.safeInvokeLater(new Runnable() {
+            public void run() {
+                updateDirectoryHolderCachesInEDT(addedFiles, removedFiles);
+            }
+        });
+    }
+
+    private void updateDirectoryHolderCachesInEDT(Collection<File> added, Collection<File> removed) {
+        Enumeration<?> e = root.depthFirstEnumeration();
+        while (e.hasMoreElements()) {
+            LibraryNode node = (LibraryNode) e.nextElement();
+            if (node instanceof DirectoryHolderNode) {
+                DirectoryHolder holder = ((DirectoryHolderNode) node).getDirectoryHolder();
+                if (holder instanceof MediaTypeSavedFilesDirectoryHolder) {
+                    MediaTypeSavedFilesDirectoryHolder mtsfdh = (MediaTypeSavedFilesDirectoryHolder) holder;
+                    List<File> files = new ArrayList<File>();
+                    for (File f : added) {
+                        if (mtsfdh.accept(f)) {
+                            files.add(f);
+                        }
+                    }
+                    mtsfdh.updateCache(files, removed);
+                } else if (holder instanceof SavedFilesDirectoryHolder) {
+                    ((SavedFilesDirectoryHolder) holder).updateCache(added, removed);
+                }
+            }
+        }
+    }
+
     private class RefreshAction extends AbstractAction {
 
         /**
@@ -0,0 +1,166 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.library;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The files of a directory holder, loaded by a scan of the disk and then
+ * kept up to date by the {@link LibraryWatcher}.
+ * <p>
+ * The changes seen by the watcher while the scan runs are merged and
+ * applied in one go once it finishes.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+final class LibraryFileCache {
+
+    private final Set<File> files;
+
+    private volatile boolean loaded;
+    private volatile long loadedTime;
+
+    // guarded by files
+    private boolean loading;
+    private final Set<File> pendingAdded;
+    private final Set<File> pendingRemoved;
+
+    public LibraryFileCache() {
+        this.files = Collections.synchronizedSet(new HashSet<File>());
+        this.pendingAdded = new HashSet<File>();
+        this.pendingRemoved = new HashSet<File>();
+    }
+
+    /**
+     * The synchronized set of files, lock it to iterate.
+     */
+    public Set<File> getFiles() {
+        return files;
+    }
+
+    /**
+     * True if the cache holds the result of a complete scan.
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Milliseconds since the cache finished loading.
+     */
+    public long getAge() {
+        return System.currentTimeMillis() - loadedTime;
+    }
+
+    public void clear() {
+        synchronized (files) {
+            loaded = false;
+            loading = false;
+            clearPending();
+            files.clear();
+        }
+    }
+
+    /**
+     * Starts keeping the changes, until {@link #setLoaded(boolean)} or
+     * {@link #load(Collection)}. The current files are kept.
+     */
+    public void startLoading() {
+        synchronized (files) {
+            loaded = false;
+            loading = true;
+            clearPending();
+        }
+    }
+
+    public void add(Collection<File> added) {
+        files.addAll(added);
+    }
+
+    /**
+     * Removes the given files, or all the files under them if they are folders.
+     */
+    public void remove(Collection<File> removed) {
+        LibraryUtils.removeFilesAndChildren(files, removed);
+    }
+
+    /**
+     * Applies the changes detected by the {@link LibraryWatcher}, or keeps them
+     * for later if the cache is being loaded.
+     */
+    public void update(Collection<File> added, Collection<File> removed) {
+        synchronized (files) {
+            if (loaded) {
+                remove(removed);
+                add(added);
+            } else if (loading) {
+                // a removed folder takes the files added under it before
+                LibraryUtils.removeFilesAndChildren(pendingAdded, removed);
+                pendingRemoved.addAll(removed);
+
+                pendingRemoved.removeAll(added);
+                pendingAdded.addAll(added);
+            }
+        }
+    }
+
+    /**
+     * Ends the loading, the kept changes are applied if it completed.
+     */
+    public void setLoaded(boolean loaded) {
+        synchronized (files) {
+            if (loaded && loading) {
+                applyPending();
+            }
+            clearPending();
+            loading = false;
+            loadedTime = System.currentTimeMillis();
+            this.loaded = loaded;
+        }
+    }
+
+    /**
+     * Replaces the files with the ones scanned and ends the loading.
+     */
+    public File[] load(Collection<File> scanned) {
+        synchronized (files) {
+            files.clear();
+            files.addAll(scanned);
+            setLoaded(true);
+
+            return files.toArray(new File[0]);
+        }
+    }
+
+    private void applyPending() {
+        LibraryUtils.removeFilesAndChildren(files, pendingRemoved);
+        files.addAll(pendingAdded);
+    }
+
+    private void clearPending() {
+        pendingAdded.clear();
+        pendingRemoved.clear();
+    }
+}
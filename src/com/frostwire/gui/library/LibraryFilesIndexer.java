@@ -0,0 +1,229 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.library;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+import org.limewire.concurrent.ExecutorsHelper;
+import org.limewire.util.FileUtils;
+
+import com.frostwire.alexandria.db.LibraryDatabase;
+import com.frostwire.alexandria.db.LibraryFilesDB;
+import com.frostwire.logging.Logger;
+import com.limegroup.gnutella.settings.LibrarySettings;
+
+/**
+ * Keeps the persistent token index of the library folders, see {@link LibraryFilesDB}.
+ * The folders are crawled once in the background, after that the library
+ * search is answered from the index.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class LibraryFilesIndexer {
+
+    private static final Logger LOG = Logger.getLogger(LibraryFilesIndexer.class);
+
+    /**
+     * Number of files crawled before they are written to the index in one transaction.
+     */
+    private static final int CRAWL_BATCH_SIZE = 500;
+
+    private static final LibraryFilesIndexer instance = new LibraryFilesIndexer();
+
+    private final ExecutorService executor;
+    private final Set<File> indexedFolders;
+    private final Set<File> pendingFolders;
+
+    public static LibraryFilesIndexer instance() {
+        return instance;
+    }
+
+    private LibraryFilesIndexer() {
+        this.executor = ExecutorsHelper.newProcessingQueue("LibraryFilesIndexer");
+        this.indexedFolders = Collections.synchronizedSet(new HashSet<File>());
+        this.pendingFolders = Collections.synchronizedSet(new HashSet<File>());
+    }
+
+    /**
+     * Returns true if all the folders are fully indexed, otherwise, the missing
+     * ones are scheduled for indexing and false is returned.
+     */
+    public boolean isIndexed(Set<File> folders) {
+        boolean indexed = true;
+
+        for (File folder : folders) {
+            if (indexedFolders.contains(folder)) {
+                continue;
+            }
+
+            if (LibraryFilesDB.isFolderIndexed(getDatabase(), folder)) {
+                indexedFolders.add(folder);
+            } else {
+                indexed = false;
+                index(folder);
+            }
+        }
+
+        return indexed;
+    }
+
+    public List<String> search(String query, Set<File> folders, int offset, int limit) {
+        return LibraryFilesDB.search(getDatabase(), query, folders, offset, limit);
+    }
+
+    /**
+     * Schedules a full crawl of the folder.
+     */
+    public void index(final File folder) {
+        if (!pendingFolders.add(folder)) {
+            return;
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    LibraryDatabase db = getDatabase();
+                    LibraryFilesDB.removeFolder(db, folder);
+                    crawl(db, folder, LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
+                    LibraryFilesDB.setFolderIndexed(db, folder, true);
+                    indexedFolders.add(folder);
+                } catch (Throwable e) {
+                    LOG.error("Error indexing library folder: " + folder, e);
+                } finally {
+                    pendingFolders.remove(folder);
+                }
+            }
+        });
+    }
+
+    /**
+     * Updates the index for a single file or a folder subtree, for instance
+     * after a download finishes.
+     */
+    public void update(final File file) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    LibraryDatabase db = getDatabase();
+                    if (file.isDirectory()) {
+                        LibraryFilesDB.removeFolder(db, file);
+                        crawl(db, file, LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
+                    } else if (file.exists()) {
+                        LibraryFilesDB.add(db, file);
+                    } else {
+                        // it could have been a file or a whole folder
+                        LibraryFilesDB.remove(db, file.getAbsolutePath());
+                        LibraryFilesDB.removeFolder(db, file);
+                    }
+                } catch (Throwable e) {
+                    LOG.error("Error updating library index for: " + file, e);
+                }
+            }
+        });
+    }
+
+    public void remove(final String filePath) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    LibraryFilesDB.remove(getDatabase(), filePath);
+                } catch (Throwable e) {
+                    LOG.error("Error removing from library index: " + filePath, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops the index of the folders no longer in the library and schedules
+     * the new ones.
+     */
+    public void refreshFolders() {
+        final Set<File> folders = new HashSet<File>(LibrarySettings.DIRECTORIES_TO_INCLUDE.getValue());
+        folders.removeAll(LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    LibraryDatabase db = getDatabase();
+
+                    Set<File> removed = new HashSet<File>(LibraryFilesDB.getIndexedFolders(db));
+                    removed.removeAll(folders);
+
+                    for (File folder : removed) {
+                        indexedFolders.remove(folder);
+                        LibraryFilesDB.setFolderIndexed(db, folder, false);
+                        LibraryFilesDB.removeFolder(db, folder);
+                    }
+
+                    folders.remove(null);
+                    isIndexed(folders);
+                } catch (Throwable e) {
+                    LOG.error("Error refreshing library index folders", e);
+                }
+            }
+        });
+    }
+
+    private void crawl(LibraryDatabase db, File folder, Set<File> excludedFolders) {
+        List<File> batch = new ArrayList<File>(CRAWL_BATCH_SIZE);
+        crawl(db, folder, excludedFolders, batch);
+        LibraryFilesDB.add(db, batch);
+    }
+
+    private void crawl(LibraryDatabase db, File folder, Set<File> excludedFolders, List<File> batch) {
+        if (folder == null || !folder.isDirectory()) {
+            return;
+        }
+
+        for (File child : FileUtils.listFiles(folder)) {
+            if (child.isHidden()) {
+                continue;
+            }
+
+            if (child.isDirectory()) {
+                if (!excludedFolders.contains(child)) {
+                    crawl(db, child, excludedFolders, batch);
+                }
+            } else if (child.isFile() && !child.getName().toLowerCase().equals(".ds_store")) {
+                batch.add(child);
+                if (batch.size() >= CRAWL_BATCH_SIZE) {
+                    LibraryFilesDB.add(db, batch);
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    private LibraryDatabase getDatabase() {
+        return LibraryMediator.getLibrary().getLibraryDatabase();
+    }
+}
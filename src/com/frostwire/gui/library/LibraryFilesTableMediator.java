@@ -28,6 +28,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.*;
 import javax.swing.event.MouseInputListener;
@@ -254,31 +255,25 @@ final class LibraryFilesTableMediator extends AbstractLibraryTableMediator<Libra
      * @return
      */
     private boolean isAnyBeingShared() {
-        boolean oneBeingShared = false;
-        int[] selectedRows = TABLE.getSelectedRows();
-        for (int i : selectedRows) {
-            LibraryFilesTableDataLine libraryFilesTableDataLine = DATA_MODEL.get(i);
+        return getSelectedShareStates().containsValue(Librarian.FILE_STATE_SHARING);
+    }
 
-            if (Librarian.instance().getFileShareState(libraryFilesTableDataLine.getInitializeObject().getAbsolutePath()) == Librarian.FILE_STATE_SHARING) {
-                oneBeingShared = true;
-                break;
+    private boolean areAllSelectedFilesShared() {
+        for (int state : getSelectedShareStates().values()) {
+            if (state != Librarian.FILE_STATE_SHARED) {
+                return false;
             }
         }
-        return oneBeingShared;
+        return true;
     }
 
-    private boolean areAllSelectedFilesShared() {
-        boolean allAreShared = true;
+    private Map<String, Integer> getSelectedShareStates() {
         int[] selectedRows = TABLE.getSelectedRows();
+        List<String> paths = new ArrayList<String>(selectedRows.length);
         for (int i : selectedRows) {
-            LibraryFilesTableDataLine libraryFilesTableDataLine = DATA_MODEL.get(i);
-
-            if (Librarian.instance().getFileShareState(libraryFilesTableDataLine.getInitializeObject().getAbsolutePath()) != Librarian.FILE_STATE_SHARED) {
-                allAreShared = false;
-                break;
-            }
+            paths.add(DATA_MODEL.get(i).getInitializeObject().getAbsolutePath());
         }
-        return allAreShared;
+        return Librarian.instance().getShareStates(paths);
     }
 
     private boolean areAllSelectedFilesMP4s() {
@@ -420,20 +415,14 @@ final class LibraryFilesTableMediator extends AbstractLibraryTableMediator<Libra
 
                 @Override
                 public void run() {
-                    for (final File file : fPartition) {
-                        GUIMediator.safeInvokeLater(new Runnable() {
-                            public void run() {
-                                addUnsorted(file);
-                            }
-                        });
-                    }
-
                     GUIMediator.safeInvokeLater(new Runnable() {
                         public void run() {
+                            for (File file : fPartition) {
+                                addUnsorted(file);
+                            }
                             LibraryMediator.instance().getLibrarySearch().addResults(fPartition.size());
                         }
                     });
-
                 }
             });
 
@@ -195,6 +195,7 @@ final class LibraryFilesTransferHandler extends TransferHandler {
                                 LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.remove(f);
                             }
                             
+                            LibraryWatcher.instance().refreshFolders();
                             LibraryMediator.instance().clearDirectoryHolderCaches();
                             
                             //show tools -> library option pane
@@ -43,6 +43,7 @@ import com.frostwire.gui.player.DeviceMediaSource;
 import com.frostwire.gui.player.InternetRadioAudioSource;
 import com.frostwire.gui.player.MediaPlayer;
 import com.frostwire.gui.player.MediaSource;
+import com.frostwire.gui.searchfield.SearchSuggestions;
 import com.frostwire.gui.theme.ThemeMediator;
 import com.limegroup.gnutella.gui.GUIMediator;
 import com.limegroup.gnutella.gui.I18n;
@@ -132,6 +133,8 @@ public class LibraryMediator {
         MAIN_PANEL.add(splitPane);
         
         clerk = new DeviceDiscoveryClerk();
+
+        LibraryWatcher.instance().start();
     }
 
     public DeviceDiscoveryClerk getDeviceDiscoveryClerk() {
@@ -443,6 +446,8 @@ public class LibraryMediator {
                 scan(hashCode, file);
             }
         } else {
+            SearchSuggestions.instance().addFilename(location.getName());
+
             List<MediaTypeSavedFilesDirectoryHolder> holders = getLibraryExplorer().getMediaTypeSavedFilesDirectoryHolders();
             for (MediaTypeSavedFilesDirectoryHolder holder : holders) {
                 Set<File> cache = holder.getCache();
@@ -313,7 +313,7 @@ public class LibraryPlaylists extends AbstractLibraryListPanel {
         if (playlist != null) {
             playlist.refresh();
             LibraryMediator.instance().updateTableItems(playlist);
-            String status = LibraryUtils.getPlaylistDurationInDDHHMMSS(playlist) + ", " + playlist.getItems().size() + " " + I18n.tr("tracks");
+            String status = LibraryUtils.getPlaylistDurationInDDHHMMSS(playlist) + ", " + playlist.getItemCount() + " " + I18n.tr("tracks");
             LibraryMediator.instance().getLibrarySearch().setStatus(status);
         }
 
@@ -25,11 +25,14 @@ import java.awt.Image;
 import java.awt.Point;
 import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.io.File;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -64,6 +67,7 @@ import com.limegroup.gnutella.gui.actions.LimeAction;
 import com.limegroup.gnutella.gui.actions.SearchAction;
 import com.limegroup.gnutella.gui.search.GenericCellEditor;
 import com.limegroup.gnutella.gui.tables.LimeJTable;
+import com.limegroup.gnutella.gui.util.BackgroundExecutorService;
 import com.limegroup.gnutella.gui.util.GUILauncher;
 import com.limegroup.gnutella.gui.util.GUILauncher.LaunchableProvider;
 import com.limegroup.gnutella.util.QueryUtils;
@@ -79,8 +83,20 @@ import com.limegroup.gnutella.util.QueryUtils;
  */
 final class LibraryPlaylistsTableMediator extends AbstractLibraryTableMediator<LibraryPlaylistsTableModel, LibraryPlaylistsTableDataLine, PlaylistItem> {
 
+    /**
+     * Number of items read from the database at once, the next page is
+     * read when the table is scrolled near the end.
+     */
+    private static final int PAGE_SIZE = 500;
+
     private Playlist currentPlaylist;
 
+    // paging state of the current playlist, only used in the event dispatch thread
+    private int pagesGeneration;
+    private int loadedItems;
+    private boolean allItemsLoaded;
+    private boolean loadingPage;
+
     /**
      * Variables so the PopupMenu & ButtonRow can have the same listeners
      */
@@ -281,7 +297,19 @@ final class LibraryPlaylistsTableMediator extends AbstractLibraryTableMediator<L
      * Upgrade getScrolledTablePane to public access.
      */
     public JComponent getScrolledTablePane() {
-        return super.getScrolledTablePane();
+        boolean created = TABLE_PANE == null;
+        JComponent pane = super.getScrolledTablePane();
+        if (created) {
+            SCROLL_PANE.getVerticalScrollBar().addAdjustmentListener(new AdjustmentListener() {
+                @Override
+                public void adjustmentValueChanged(AdjustmentEvent e) {
+                    if (isNearTableEnd()) {
+                        loadNextPage();
+                    }
+                }
+            });
+        }
+        return pane;
     }
 
     /* Don't display anything for this.  The LibraryMediator will do it. */
@@ -374,24 +402,125 @@ final class LibraryPlaylistsTableMediator extends AbstractLibraryTableMediator<L
      * Perform lookups to remove any store files from the shared folder
      * view and to only display store files in the store view
      */
-    void updateTableItems(Playlist playlist) {
+    void updateTableItems(final Playlist playlist) {
         if (playlist == null) {
             return;
         }
 
         currentPlaylist = playlist;
-        List<PlaylistItem> items = currentPlaylist.getItems();
 
-        clearTable();
-        for (final PlaylistItem item : items) {
-            GUIMediator.safeInvokeLater(new Runnable() {
-                @Override
-                public void run() {
-                    addUnsorted(item);
-                }
-            });
+        GUIMediator.safeInvokeLater(new Runnable() {
+            @Override
+            public void run() {
+                pagesGeneration++;
+                loadedItems = 0;
+                allItemsLoaded = false;
+                loadingPage = false;
+
+                clearTable();
+                loadNextPage();
+            }
+        });
+    }
+
+    /**
+     * Reads the next page of the current playlist in the background and
+     * adds it to the table. Must be called in the event dispatch thread.
+     */
+    private void loadNextPage() {
+        final Playlist playlist = currentPlaylist;
+        if (playlist == null || allItemsLoaded || loadingPage) {
+            return;
         }
-        forceResort();
+
+        loadingPage = true;
+        final int generation = pagesGeneration;
+        final int offset = loadedItems;
+
+        BackgroundExecutorService.schedule(new Runnable() {
+            @Override
+            public void run() {
+                final List<PlaylistItem> items = playlist.getItems(offset, PAGE_SIZE);
+
+                GUIMediator.safeInvokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != pagesGeneration) {
+                            // another playlist, or all the items were loaded meanwhile
+                            return;
+                        }
+
+                        loadingPage = false;
+                        addPage(items, items.size() < PAGE_SIZE);
+
+                        // keep going until the viewport is full
+                        if (isNearTableEnd()) {
+                            loadNextPage();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Reads in the background all the items not loaded yet, adds them to the
+     * table and then sorts it by the given column, in the event dispatch
+     * thread. Must be called in the event dispatch thread.
+     */
+    private void loadRemainingItemsAndSort(final int columnToSort) {
+        final Playlist playlist = currentPlaylist;
+
+        // discard the page being read, if any, and hold the next ones
+        pagesGeneration++;
+        loadingPage = true;
+        final int generation = pagesGeneration;
+        final int offset = loadedItems;
+
+        BackgroundExecutorService.schedule(new Runnable() {
+            @Override
+            public void run() {
+                final List<PlaylistItem> items = playlist.getItems(offset, Integer.MAX_VALUE);
+
+                GUIMediator.safeInvokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != pagesGeneration) {
+                            // another playlist, or another sort meanwhile
+                            return;
+                        }
+
+                        loadingPage = false;
+                        addPage(items, true);
+                        sortLoadedItems(columnToSort);
+                        // the header was painted before the sort
+                        TABLE.getTableHeader().repaint();
+                    }
+                });
+            }
+        });
+    }
+
+    private void addPage(List<PlaylistItem> items, boolean last) {
+        loadedItems += items.size();
+        allItemsLoaded = last;
+        addAll(items);
+        if (last) {
+            resetAudioPlayerFileView();
+        }
+    }
+
+    /**
+     * True if less than a screen of rows is left below the visible ones,
+     * computed from the rows since the layout may be pending.
+     */
+    private boolean isNearTableEnd() {
+        if (SCROLL_PANE == null || !TABLE.isShowing()) {
+            return false;
+        }
+        JViewport viewport = SCROLL_PANE.getViewport();
+        int bottom = viewport.getViewPosition().y + viewport.getHeight();
+        return bottom >= DATA_MODEL.getRowCount() * TABLE.getRowHeight() - viewport.getHeight();
     }
 
     /**
@@ -848,8 +977,18 @@ final class LibraryPlaylistsTableMediator extends AbstractLibraryTableMediator<L
         }
     }
 
+    /**
+     * The rows of the table if the whole playlist is loaded, since they can be
+     * sorted. Otherwise the table holds the first pages in the playlist order,
+     * and the items are read from the database when the player copies the view.
+     */
     @Override
     public List<MediaSource> getFilesView() {
+        Playlist playlist = currentPlaylist;
+        if (playlist != null && !allItemsLoaded) {
+            return new PlaylistFilesView(playlist);
+        }
+
         int size = DATA_MODEL.getRowCount();
         List<MediaSource> result = new ArrayList<MediaSource>(size);
         for (int i = 0; i < size; i++) {
@@ -864,11 +1003,25 @@ final class LibraryPlaylistsTableMediator extends AbstractLibraryTableMediator<L
 
     @Override
     protected void sortAndMaintainSelection(int columnToSort) {
+        if (columnToSort != -1 && currentPlaylist != null && !allItemsLoaded) {
+            // sorting by a column needs all the items
+            loadRemainingItemsAndSort(columnToSort);
+            return;
+        }
+        sortLoadedItems(columnToSort);
+    }
+
+    private void sortLoadedItems(int columnToSort) {
         super.sortAndMaintainSelection(columnToSort);
         resetAudioPlayerFileView();
     }
 
     private void resetAudioPlayerFileView() {
+        if (!allItemsLoaded) {
+            // the rows are still in the playlist order, the player view is right
+            return;
+        }
+
         Playlist playlist = MediaPlayer.instance().getCurrentPlaylist();
         if (playlist != null && playlist.equals(currentPlaylist)) {
             if (MediaPlayer.instance().getPlaylistFilesView() != null) {
@@ -881,4 +1034,41 @@ final class LibraryPlaylistsTableMediator extends AbstractLibraryTableMediator<L
     protected MediaSource createMediaSource(LibraryPlaylistsTableDataLine line) {
         return new MediaSource(line.getInitializeObject());
     }
+
+    /**
+     * All the items of a playlist in the sort index order, read the first
+     * time the view is accessed. The player copies it in the background, so
+     * the items are not read in the event dispatch thread.
+     */
+    private static final class PlaylistFilesView extends AbstractList<MediaSource> {
+
+        private final Playlist playlist;
+
+        private List<MediaSource> sources;
+
+        public PlaylistFilesView(Playlist playlist) {
+            this.playlist = playlist;
+        }
+
+        @Override
+        public MediaSource get(int index) {
+            return getSources().get(index);
+        }
+
+        @Override
+        public int size() {
+            return getSources().size();
+        }
+
+        private synchronized List<MediaSource> getSources() {
+            if (sources == null) {
+                List<PlaylistItem> items = playlist.getItems(0, Integer.MAX_VALUE);
+                sources = new ArrayList<MediaSource>(items.size());
+                for (PlaylistItem item : items) {
+                    sources.add(new MediaSource(item));
+                }
+            }
+            return sources;
+        }
+    }
 }
@@ -29,6 +29,7 @@ import java.io.File;
 import java.io.FileFilter;
 import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
@@ -67,6 +68,8 @@ import com.limegroup.gnutella.settings.LibrarySettings;
  */
 public class LibrarySearch extends JPanel {
 
+    private static final int SEARCH_INDEX_PAGE_SIZE = 200;
+
     private JLabel statusLabel;
     private SearchField searchField;
 
@@ -315,14 +318,16 @@ public class LibrarySearch extends JPanel {
                 });
 
                 if (directoryHolder instanceof MediaTypeSavedFilesDirectoryHolder) {
-                    List<File> cache = new ArrayList<File>(((MediaTypeSavedFilesDirectoryHolder) directoryHolder).getCache());
-                    if (cache.size() > 0) {
+                    MediaTypeSavedFilesDirectoryHolder mtsfdh = (MediaTypeSavedFilesDirectoryHolder) directoryHolder;
+                    List<File> cache = new ArrayList<File>(mtsfdh.getCache());
+                    if (mtsfdh.isCacheLoaded() || cache.size() > 0) {
                         search(cache);
                         return;
                     }
                 } else if (directoryHolder instanceof SavedFilesDirectoryHolder) {
-                    List<File> cache = new ArrayList<File>(((SavedFilesDirectoryHolder) directoryHolder).getCache());
-                    if (cache.size() > 0) {
+                    SavedFilesDirectoryHolder sfdh = (SavedFilesDirectoryHolder) directoryHolder;
+                    List<File> cache = new ArrayList<File>(sfdh.getCache());
+                    if (sfdh.isCacheLoaded() || cache.size() > 0) {
                         search(cache);
                         return;
                     }
@@ -336,27 +341,111 @@ public class LibrarySearch extends JPanel {
                 }
 
                 if (directoryHolder instanceof SavedFilesDirectoryHolder) {
-                    search(((SavedFilesDirectoryHolder) directoryHolder).getDirectory(), ignore, LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
+                    File directory = ((SavedFilesDirectoryHolder) directoryHolder).getDirectory();
+                    if (!searchIndex(Collections.singleton(directory), ignore)) {
+                        search(directory, ignore, LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
+                    }
                     return;
                 }
 
                 Set<File> directories = new HashSet<File>(LibrarySettings.DIRECTORIES_TO_INCLUDE.getValue());
                 directories.removeAll(LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
+                directories.remove(null);
+
+                if (directoryHolder instanceof MediaTypeSavedFilesDirectoryHolder && !((MediaTypeSavedFilesDirectoryHolder) directoryHolder).getMediaType().equals(MediaType.getAudioMediaType())) {
+                    directories.remove(LibrarySettings.USER_MUSIC_FOLDER.getValue());
+                }
+
+                if (searchIndex(directories, ignore)) {
+                    return;
+                }
+
                 for (File dir : directories) {
-                    if (dir == null) {
+                    search(dir, new HashSet<File>(), LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
+                }
+            } catch (Throwable e) {
+                // just until we refactor this
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * Answers the query from the library files index, in pages sorted by
+         * relevance. If the folders are not indexed yet it returns false and
+         * the caller should fall back to walk the folders.
+         */
+        private boolean searchIndex(Set<File> directories, Set<File> excludeFiles) {
+            LibraryFilesIndexer indexer = LibraryFilesIndexer.instance();
+
+            if (!indexer.isIndexed(directories)) {
+                return false;
+            }
+
+            // removed after the pages are read, removing them now would shift the offsets
+            List<String> stalePaths = new ArrayList<String>();
+            try {
+                searchIndexPages(indexer, directories, excludeFiles, stalePaths);
+            } finally {
+                for (String path : stalePaths) {
+                    indexer.remove(path);
+                }
+            }
+
+            return true;
+        }
+
+        private void searchIndexPages(LibraryFilesIndexer indexer, Set<File> directories, Set<File> excludeFiles, List<String> stalePaths) {
+            int offset = 0;
+            List<String> page;
+
+            do {
+                if (canceled) {
+                    return;
+                }
+
+                /////
+                //Stop search if the user selected another item in the library tree
+                DirectoryHolder currentDirectoryHolder = LibraryMediator.instance().getLibraryExplorer().getSelectedDirectoryHolder();
+                if (!directoryHolder.equals(currentDirectoryHolder)) {
+                    return;
+                }
+                /////
+
+                page = indexer.search(_query, directories, offset, SEARCH_INDEX_PAGE_SIZE);
+                offset += page.size();
+
+                final List<File> results = new ArrayList<File>(page.size());
+
+                for (String path : page) {
+                    File file = new File(path);
+
+                    if (excludeFiles.contains(file)) {
                         continue;
                     }
 
-                    if (dir.equals(LibrarySettings.USER_MUSIC_FOLDER) && directoryHolder instanceof MediaTypeSavedFilesDirectoryHolder && !((MediaTypeSavedFilesDirectoryHolder) directoryHolder).getMediaType().equals(MediaType.getAudioMediaType())) {
+                    if (!file.exists()) {
+                        stalePaths.add(path);
                         continue;
-                    } else {
-                        search(dir, new HashSet<File>(), LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
+                    }
+
+                    // saved files holder only accepts direct children, the index is recursive
+                    if (directoryHolder instanceof SavedFilesDirectoryHolder || directoryHolder.accept(file)) {
+                        results.add(file);
                     }
                 }
-            } catch (Throwable e) {
-                // just until we refactor this
-                e.printStackTrace();
-            }
+
+                Runnable r = new Runnable() {
+                    public void run() {
+                        LibraryMediator.instance().addFilesToLibraryTable(results);
+
+                        if (directoryHolder instanceof SavedFilesDirectoryHolder) {
+                            LibraryFilesTableMediator.instance().resetAudioPlayerFileView();
+                        }
+                    }
+                };
+                GUIMediator.safeInvokeLater(r);
+
+            } while (page.size() == SEARCH_INDEX_PAGE_SIZE);
         }
 
         /**
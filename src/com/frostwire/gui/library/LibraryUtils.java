@@ -26,6 +26,9 @@ import java.io.InputStreamReader;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -78,46 +81,64 @@ public class LibraryUtils {
 
     private static final ExecutorService executor;
 
+    /**
+     * Number of imported files saved together in a single transaction.
+     */
+    private static final int PLAYLIST_ITEMS_CHUNK_SIZE = 100;
+
     static {
         executor = ExecutorsHelper.newProcessingQueue("LibraryUtils-Executor");
     }
 
-    private static void addPlaylistItem(Playlist playlist, File file, boolean starred) {
-        addPlaylistItem(playlist, file, starred, -1);
-    }
-
-    private static void addPlaylistItem(Playlist playlist, File file, boolean starred, int index) {
+    private static PlaylistItem newPlaylistItem(Playlist playlist, File file, boolean starred) {
         try {
             LibraryMediator.instance().getLibrarySearch().pushStatus(I18n.tr("Importing") + " " + file.getName());
             TagsData mt = new TagsReader(file).parse();
-            PlaylistItem item = playlist.newItem(file.getAbsolutePath(), file.getName(), file.length(), FilenameUtils.getExtension(file.getName()), mt.getTitle(), mt.getDuration(), mt.getArtist(), mt.getAlbum(), "",// TODO: cover art path
+            return playlist.newItem(file.getAbsolutePath(), file.getName(), file.length(), FilenameUtils.getExtension(file.getName()), mt.getTitle(), mt.getDuration(), mt.getArtist(), mt.getAlbum(), "",// TODO: cover art path
                     mt.getBitrate(), mt.getComment(), mt.getGenre(), mt.getTrack(), mt.getYear(), starred);
+        } finally {
+            LibraryMediator.instance().getLibrarySearch().revertStatus();
+        }
+    }
 
-            List<PlaylistItem> items = playlist.getItems();
-            if (index != -1 && index < items.size()) {
+    /**
+     * Adds the new items to the playlist and saves them, together with the
+     * items whose sort index changed, in a single transaction.
+     */
+    private static void addPlaylistItems(Playlist playlist, List<PlaylistItem> newItems, int index) {
+        if (newItems.isEmpty()) {
+            return;
+        }
 
-                // insert item
-                items.add(index, item);
+        List<PlaylistItem> items = playlist.getItems();
+        List<PlaylistItem> toSave;
 
-                // update all sort indexes from insertion point onwards
-                for (int i = index; i < items.size(); i++) {
-                    PlaylistItem cur_item = items.get(i);
-                    cur_item.setSortIndex(i + 1); //set index 1-based
-                    cur_item.save();
-                }
+        if (index != -1 && index < items.size()) {
+
+            // insert items
+            items.addAll(index, newItems);
+
+            // update all sort indexes from insertion point onwards
+            toSave = new ArrayList<PlaylistItem>(items.size() - index);
+            for (int i = index; i < items.size(); i++) {
+                PlaylistItem cur_item = items.get(i);
+                cur_item.setSortIndex(i + 1); //set index 1-based
+                toSave.add(cur_item);
+            }
 
-            } else {
+        } else {
+            for (PlaylistItem item : newItems) {
                 items.add(item);
                 item.setSortIndex(items.size()); // set sort index to 1-based size
-                item.save();
             }
+            toSave = newItems;
+        }
 
-            if (isPlaylistSelected(playlist)) {
-                // refresh UI
-                LibraryMediator.instance().getLibraryPlaylists().refreshSelection();
-            }
-        } finally {
-            LibraryMediator.instance().getLibrarySearch().revertStatus();
+        playlist.saveItems(toSave);
+
+        if (isPlaylistSelected(playlist)) {
+            // refresh UI
+            LibraryMediator.instance().getLibraryPlaylists().refreshSelection();
         }
     }
 
@@ -457,12 +478,15 @@ public class LibraryUtils {
     }
 
     private static void addToPlaylist(Playlist playlist, List<? extends AbstractLibraryTableDataLine<?>> lines) {
+        List<File> files = new ArrayList<File>(lines.size());
         for (int i = 0; i < lines.size() && !playlist.isDeleted(); i++) {
             AbstractLibraryTableDataLine<?> line = lines.get(i);
             if (MediaPlayer.isPlayableFile(line.getFile())) {
-                LibraryUtils.addPlaylistItem(playlist, line.getFile(), false);
+                files.add(line.getFile());
             }
         }
+
+        addToPlaylist(playlist, files, false, -1);
     }
 
     private static int addToPlaylist(Playlist playlist, File[] files, boolean starred, Set<File> ignore) {
@@ -470,17 +494,50 @@ public class LibraryUtils {
     }
 
     private static int addToPlaylist(Playlist playlist, File[] files, boolean starred, int index, Set<File> ignore) {
+        List<File> playableFiles = new ArrayList<File>();
+        collectPlayableFiles(playlist, files, ignore, playableFiles);
+
+        return addToPlaylist(playlist, playableFiles, starred, index);
+    }
+
+    /**
+     * Reads the tags of the files and adds them in chunks of
+     * {@link #PLAYLIST_ITEMS_CHUNK_SIZE}, every chunk saved in one transaction.
+     */
+    private static int addToPlaylist(Playlist playlist, List<File> files, boolean starred, int index) {
+        List<PlaylistItem> chunk = new ArrayList<PlaylistItem>(PLAYLIST_ITEMS_CHUNK_SIZE);
         int count = 0;
+
+        for (int i = 0; i < files.size() && !playlist.isDeleted(); i++) {
+            chunk.add(newPlaylistItem(playlist, files.get(i), starred));
+
+            if (chunk.size() == PLAYLIST_ITEMS_CHUNK_SIZE) {
+                addPlaylistItems(playlist, chunk, index != -1 ? index + count : -1);
+                count += chunk.size();
+                chunk = new ArrayList<PlaylistItem>(PLAYLIST_ITEMS_CHUNK_SIZE);
+            }
+        }
+
+        if (!chunk.isEmpty() && !playlist.isDeleted()) {
+            addPlaylistItems(playlist, chunk, index != -1 ? index + count : -1);
+            count += chunk.size();
+        }
+
+        return count;
+    }
+
+    private static void collectPlayableFiles(Playlist playlist, File[] files, Set<File> ignore, List<File> playableFiles) {
+        if (files == null) {
+            return;
+        }
+
         for (int i = 0; i < files.length && !playlist.isDeleted(); i++) {
             if (MediaPlayer.isPlayableFile(files[i]) && !ignore.contains(files[i])) {
-                LibraryUtils.addPlaylistItem(playlist, files[i], starred, index + count);
-                count++;
+                playableFiles.add(files[i]);
             } else if (files[i].isDirectory()) {
-                count += addToPlaylist(playlist, files[i].listFiles(), starred, index + count, ignore);
+                collectPlayableFiles(playlist, files[i].listFiles(), ignore, playableFiles);
             }
         }
-
-        return count;
     }
 
     private static void addToPlaylist(Playlist playlist, PlaylistItem[] playlistItems) {
@@ -502,7 +559,6 @@ public class LibraryUtils {
                 items.add(index + i, playlistItems[i]);
                 if (starred) {
                     playlistItems[i].setStarred(starred);
-                    playlistItems[i].save();
                 }
             }
             for (int i = 0; i < toRemove.size() && !playlist.isDeleted(); i++) {
@@ -520,10 +576,11 @@ public class LibraryUtils {
             for (int i = 0; i < items.size(); i++) {
                 PlaylistItem item = items.get(i);
                 item.setSortIndex(i + 1); // set index 1-based
-                item.save();
             }
+            playlist.saveItems(new ArrayList<PlaylistItem>(items));
 
         } else {
+            List<PlaylistItem> toSave = new ArrayList<PlaylistItem>(playlistItems.length);
             for (int i = 0; i < playlistItems.length && !playlist.isDeleted(); i++) {
 
                 playlistItems[i].setPlaylist(playlist);
@@ -534,19 +591,14 @@ public class LibraryUtils {
                     playlistItems[i].setStarred(starred);
                 }
 
-                playlistItems[i].save();
+                toSave.add(playlistItems[i]);
             }
+            playlist.saveItems(toSave);
         }
     }
 
     public static String getPlaylistDurationInDDHHMMSS(Playlist playlist) {
-        List<PlaylistItem> items = playlist.getItems();
-        float totalSecs = 0;
-        for (PlaylistItem item : items) {
-            totalSecs += item.getTrackDurationInSecs();
-        }
-
-        return getSecondsInDDHHMMSS((int) totalSecs);
+        return getSecondsInDDHHMMSS((int) playlist.getTotalDuration());
     }
 
     public static boolean directoryContainsPlayableExtensions(File directory, int depth) {
@@ -872,8 +924,8 @@ public class LibraryUtils {
         for (int i = 0; i < items.size(); i++) {
             PlaylistItem item = items.get(i);
             item.setSortIndex(i + 1); // set index (1-based)
-            item.save();
         }
+        playlist.saveItems(new ArrayList<PlaylistItem>(items));
 
         // initiate UI refresh
         GUIMediator.safeInvokeLater(new Runnable() {
@@ -882,4 +934,29 @@ public class LibraryUtils {
             }
         });
     }
+
+    /**
+     * Removes from the set the given files and all the files under them if
+     * they are folders. The set is used as the lock, for synchronized sets.
+     */
+    public static void removeFilesAndChildren(Set<File> set, Collection<File> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+
+        Set<File> toRemove = new HashSet<File>(files);
+
+        synchronized (set) {
+            Iterator<File> it = set.iterator();
+            while (it.hasNext()) {
+                File f = it.next();
+                for (File p = f; p != null; p = p.getParentFile()) {
+                    if (toRemove.contains(p)) {
+                        it.remove();
+                        break;
+                    }
+                }
+            }
+        }
+    }
 }
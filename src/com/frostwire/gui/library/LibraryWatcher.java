@@ -0,0 +1,408 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.library;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.limewire.concurrent.ExecutorsHelper;
+import org.limewire.util.FileUtils;
+
+import com.frostwire.gui.Librarian;
+import com.frostwire.gui.bittorrent.TorrentUtil;
+import com.frostwire.logging.Logger;
+import com.limegroup.gnutella.settings.LibrarySettings;
+
+/**
+ * Watches the library folders and pushes the changes into the directory
+ * holders caches, the library files index and the share table, so the
+ * library doesn't need to crawl the disk again after the first scan.
+ *
+ * Events are coalesced by path and dispatched after a short quiet period,
+ * and an overflow only rescans the folder that lost the events.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class LibraryWatcher {
+
+    private static final Logger LOG = Logger.getLogger(LibraryWatcher.class);
+
+    private static final long QUIET_PERIOD = 500; // ms
+    private static final long MAX_DELAY = 3000; // ms
+    private static final int MAX_BATCH_SIZE = 2000;
+
+    private static final LibraryWatcher instance = new LibraryWatcher();
+
+    private final Map<WatchKey, Path> keys;
+    private final ExecutorService dispatcher;
+
+    private WatchService watchService;
+    private volatile boolean running;
+    private volatile boolean refreshRequested;
+
+    public static LibraryWatcher instance() {
+        return instance;
+    }
+
+    private LibraryWatcher() {
+        this.keys = new ConcurrentHashMap<WatchKey, Path>();
+        this.dispatcher = ExecutorsHelper.newProcessingQueue("LibraryWatcher-Dispatcher");
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (Throwable e) {
+            LOG.warn("Unable to create the library watch service, library caches will be rebuilt on demand", e);
+            return;
+        }
+
+        running = true;
+        refreshRequested = true;
+
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processEvents();
+            }
+        }, "LibraryWatcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Call after the library folders settings change, the folders are
+     * registered again and the directory holders caches are dropped.
+     */
+    public void refreshFolders() {
+        refreshRequested = true;
+
+        LibraryFilesIndexer.instance().refreshFolders();
+        LibraryMediator.instance().getLibraryExplorer().clearCaches();
+    }
+
+    /**
+     * Rescans a file or folder subtree, for instance after a download
+     * finishes and its files are no longer ignorable.
+     */
+    public void rescan(final File file) {
+        dispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                Set<File> rescanned = new HashSet<File>();
+                rescanned.add(file);
+                dispatch(collectFiles(file), new HashSet<File>(), rescanned, new HashMap<File, File>());
+            }
+        });
+    }
+
+    private void processEvents() {
+        Map<Path, WatchEvent.Kind<?>> pending = new LinkedHashMap<Path, WatchEvent.Kind<?>>();
+        Set<Path> overflowed = new LinkedHashSet<Path>();
+        long firstEventTime = 0;
+
+        while (running) {
+            try {
+                if (refreshRequested) {
+                    refreshRequested = false;
+                    registerFolders();
+                }
+
+                WatchKey key;
+                if (pending.isEmpty() && overflowed.isEmpty()) {
+                    key = watchService.poll(MAX_DELAY, TimeUnit.MILLISECONDS);
+                    firstEventTime = System.currentTimeMillis();
+                } else {
+                    key = watchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS);
+                }
+
+                if (key != null) {
+                    Path dir = keys.get(key);
+
+                    if (dir != null) {
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            WatchEvent.Kind<?> kind = event.kind();
+
+                            if (kind == OVERFLOW) {
+                                overflowed.add(dir);
+                                continue;
+                            }
+
+                            Path child = dir.resolve((Path) event.context());
+
+                            if (kind == ENTRY_CREATE && Files.isDirectory(child)) {
+                                // files could be created before the registration
+                                register(child);
+                                overflowed.add(child);
+                            }
+
+                            coalesce(pending, child, kind);
+                        }
+                    }
+
+                    if (!key.reset()) {
+                        keys.remove(key);
+                    }
+                }
+
+                boolean quiet = key == null;
+                boolean tooLate = System.currentTimeMillis() - firstEventTime > MAX_DELAY;
+                boolean tooBig = pending.size() + overflowed.size() >= MAX_BATCH_SIZE;
+
+                if ((!pending.isEmpty() || !overflowed.isEmpty()) && (quiet || tooLate || tooBig)) {
+                    flush(pending, overflowed);
+                    pending = new LinkedHashMap<Path, WatchEvent.Kind<?>>();
+                    overflowed = new LinkedHashSet<Path>();
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Throwable e) {
+                LOG.error("Error processing library watch events", e);
+            }
+        }
+    }
+
+    private void coalesce(Map<Path, WatchEvent.Kind<?>> pending, Path path, WatchEvent.Kind<?> kind) {
+        if (kind != ENTRY_CREATE && kind != ENTRY_DELETE) {
+            return; // modifications don't change the library contents
+        }
+
+        WatchEvent.Kind<?> previous = pending.get(path);
+
+        if (previous == ENTRY_CREATE && kind == ENTRY_DELETE) {
+            pending.remove(path); // transient file
+        } else {
+            pending.put(path, kind);
+        }
+    }
+
+    private void flush(Map<Path, WatchEvent.Kind<?>> pending, Set<Path> overflowed) {
+        final Set<File> added = new LinkedHashSet<File>();
+        final Set<File> removed = new LinkedHashSet<File>();
+
+        // folder -> created/deleted files, to pair the possible renames
+        Map<File, List<File>> createdByFolder = new HashMap<File, List<File>>();
+        Map<File, List<File>> deletedByFolder = new HashMap<File, List<File>>();
+
+        for (Entry<Path, WatchEvent.Kind<?>> e : pending.entrySet()) {
+            File file = e.getKey().toFile();
+
+            if (e.getValue() == ENTRY_DELETE) {
+                removed.add(file);
+                multimapAdd(deletedByFolder, file.getParentFile(), file);
+            } else if (file.isFile()) {
+                added.add(file);
+                multimapAdd(createdByFolder, file.getParentFile(), file);
+            }
+        }
+
+        final Map<File, File> renamed = new HashMap<File, File>();
+
+        for (Entry<File, List<File>> e : deletedByFolder.entrySet()) {
+            List<File> created = createdByFolder.get(e.getKey());
+            if (e.getValue().size() == 1 && created != null && created.size() == 1) {
+                renamed.put(e.getValue().get(0), created.get(0));
+            }
+        }
+
+        final Set<Path> folders = new LinkedHashSet<Path>(overflowed);
+
+        dispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                Set<File> rescanned = new LinkedHashSet<File>();
+                for (Path folder : folders) {
+                    File f = folder.toFile();
+                    rescanned.add(f);
+                    added.addAll(collectFiles(f));
+                }
+
+                dispatch(added, removed, rescanned, renamed);
+            }
+        });
+    }
+
+    /**
+     * @param added files to add
+     * @param removed files or folders deleted from disk
+     * @param rescanned folders whose content was collected again in added
+     * @param renamed old file to new file, the old file is also in removed.
+     * Only a guess from the folder, the share table moves the row if the old
+     * file had the size and date of the new one.
+     */
+    private void dispatch(Set<File> added, Set<File> removed, Set<File> rescanned, Map<File, File> renamed) {
+        try {
+            if (!added.isEmpty()) {
+                added.removeAll(TorrentUtil.getIgnorableFiles());
+            }
+
+            Set<File> outdated = new HashSet<File>(removed);
+            outdated.addAll(rescanned);
+
+            LibraryMediator.instance().getLibraryExplorer().updateDirectoryHolderCaches(added, outdated);
+
+            LibraryFilesIndexer indexer = LibraryFilesIndexer.instance();
+            for (File file : removed) {
+                indexer.update(file);
+            }
+            for (File folder : rescanned) {
+                indexer.update(folder);
+            }
+            for (File file : added) {
+                if (!isUnder(file, rescanned)) {
+                    indexer.update(file);
+                }
+            }
+
+            Librarian librarian = Librarian.instance();
+            for (File file : removed) {
+                File newFile = renamed.get(file);
+                if (newFile != null) {
+                    librarian.renameInShareTable(file.getAbsolutePath(), newFile);
+                } else {
+                    librarian.removeFromShareTable(file.getAbsolutePath());
+                }
+            }
+        } catch (Throwable e) {
+            LOG.error("Error dispatching library changes", e);
+        }
+    }
+
+    private void registerFolders() {
+        for (WatchKey key : keys.keySet()) {
+            key.cancel();
+        }
+        keys.clear();
+
+        Set<File> folders = new HashSet<File>(LibrarySettings.DIRECTORIES_TO_INCLUDE.getValue());
+        folders.removeAll(LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue());
+
+        for (File folder : folders) {
+            if (folder != null && folder.isDirectory()) {
+                register(folder.toPath());
+            }
+        }
+    }
+
+    /**
+     * Registers the folder and all its subfolders.
+     */
+    private void register(Path start) {
+        final Set<File> excluded = LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue();
+
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    File f = dir.toFile();
+                    if (excluded.contains(f) || f.isHidden()) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+
+                    WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE);
+                    keys.put(key, dir);
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (Throwable e) {
+            LOG.warn("Unable to watch library folder: " + start, e);
+        }
+    }
+
+    private Set<File> collectFiles(File file) {
+        Set<File> files = new LinkedHashSet<File>();
+        collectFiles(file, LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue(), files);
+        return files;
+    }
+
+    private void collectFiles(File file, Set<File> excluded, Set<File> files) {
+        if (file.isHidden()) {
+            return;
+        }
+
+        if (file.isDirectory()) {
+            if (!excluded.contains(file)) {
+                for (File child : FileUtils.listFiles(file)) {
+                    collectFiles(child, excluded, files);
+                }
+            }
+        } else if (file.isFile() && !file.getName().toLowerCase().equals(".ds_store")) {
+            files.add(file);
+        }
+    }
+
+    private static boolean isUnder(File file, Set<File> folders) {
+        for (File parent = file.getParentFile(); parent != null; parent = parent.getParentFile()) {
+            if (folders.contains(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void multimapAdd(Map<File, List<File>> map, File key, File value) {
+        List<File> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<File>();
+            map.put(key, list);
+        }
+        list.add(value);
+    }
+}
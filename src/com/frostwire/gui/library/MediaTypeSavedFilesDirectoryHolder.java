@@ -19,8 +19,7 @@
 package com.frostwire.gui.library;
 
 import java.io.File;
-import java.util.HashSet;
-import java.util.List;
+import java.util.Collection;
 import java.util.Set;
 
 import javax.swing.Icon;
@@ -39,11 +38,11 @@ public class MediaTypeSavedFilesDirectoryHolder implements DirectoryHolder {
 
 	private MediaType type;
 
-	private Set<File> cache;
+	private final LibraryFileCache cache;
 
 	public MediaTypeSavedFilesDirectoryHolder(MediaType type) {
 		this.type = type;
-		cache = new HashSet<File>();
+		cache = new LibraryFileCache();
 	}
 
 	public MediaType getMediaType() {
@@ -84,14 +83,60 @@ public class MediaTypeSavedFilesDirectoryHolder implements DirectoryHolder {
     }
 
     public Set<File> getCache() {
-        return cache;
+        return cache.getFiles();
     }
 
-    public void addToCache(List<File> files) {
-        cache.addAll(files);
+    public void addToCache(Collection<File> files) {
+        cache.add(files);
+    }
+
+    /**
+     * Removes the given files, or all the files under them if they are folders.
+     */
+    public void removeFromCache(Collection<File> files) {
+        cache.remove(files);
     }
 
     public void clearCache() {
         cache.clear();
     }
+
+    /**
+     * Empties the cache before a scan of the disk, the changes seen by the
+     * {@link LibraryWatcher} until {@link #setCacheLoaded(boolean)} are kept
+     * and applied then.
+     */
+    public void startCacheLoading() {
+        synchronized (cache.getFiles()) {
+            cache.clear();
+            cache.startLoading();
+        }
+    }
+
+    /**
+     * Applies the changes detected by the {@link LibraryWatcher}, or keeps them
+     * for later if the cache is being loaded.
+     */
+    public void updateCache(Collection<File> added, Collection<File> removed) {
+        cache.update(added, removed);
+    }
+
+    /**
+     * True if the cache holds the result of a complete scan, and then it's
+     * kept up to date by the {@link LibraryWatcher}.
+     */
+    public boolean isCacheLoaded() {
+        return cache.isLoaded();
+    }
+
+    /**
+     * Milliseconds since the cache finished loading.
+     */
+    public long getCacheAge() {
+        return cache.getAge();
+    }
+
+    public void setCacheLoaded(boolean cacheLoaded) {
+        cache.setLoaded(cacheLoaded);
+    }
 }
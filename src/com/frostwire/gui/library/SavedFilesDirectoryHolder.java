@@ -19,10 +19,12 @@
 package com.frostwire.gui.library;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import javax.swing.Icon;
@@ -44,14 +46,20 @@ import com.limegroup.gnutella.settings.SharingSettings;
  */
 public class SavedFilesDirectoryHolder extends FileSettingDirectoryHolder {
 
+    /**
+     * Without the {@link LibraryWatcher} the cache is scanned again after this
+     * many milliseconds.
+     */
+    static final long UNWATCHED_CACHE_MAX_AGE = 5 * 60 * 1000;
+
     private final MediaType type;
 
-    private Set<File> cache;
+    private final LibraryFileCache cache;
 
     public SavedFilesDirectoryHolder(FileSetting saveDir, String name) {
         super(saveDir, name);
         type = MediaType.getAnyTypeMediaType();
-        cache = new HashSet<File>();
+        cache = new LibraryFileCache();
     }
 
     public Icon getIcon() {
@@ -90,18 +98,59 @@ public class SavedFilesDirectoryHolder extends FileSettingDirectoryHolder {
     }
 
     public void clearCache() {
-        if (cache != null) {
-            cache.clear();
+        cache.clear();
+    }
+
+    public boolean isCacheLoaded() {
+        return cache.isLoaded();
+    }
+
+    /**
+     * Milliseconds since the cache finished loading.
+     */
+    public long getCacheAge() {
+        return cache.getAge();
+    }
+
+    /**
+     * Applies the changes detected by the {@link LibraryWatcher}, or keeps them
+     * for later if the cache is being loaded.
+     */
+    public void updateCache(Collection<File> added, Collection<File> removed) {
+        cache.update(underDirectory(added), removed);
+    }
+
+    /**
+     * Adds the files under the save folder.
+     */
+    public void addToCache(Collection<File> files) {
+        cache.add(underDirectory(files));
+    }
+
+    public void removeFromCache(Collection<File> files) {
+        cache.remove(files);
+    }
+
+    private Collection<File> underDirectory(Collection<File> files) {
+        File directory = getDirectory();
+        List<File> result = new ArrayList<File>(files.size());
+        for (File f : files) {
+            if (directory != null && FileUtils.isAncestor(directory, f)) {
+                result.add(f);
+            }
         }
+        return result;
     }
 
     @Override
     public File[] getFiles() {
 
-        if (cache != null && cache.size() > 0) {
-            return cache.toArray(new File[0]);
+        if (cache.isLoaded() && (LibraryWatcher.instance().isRunning() || getCacheAge() < UNWATCHED_CACHE_MAX_AGE)) {
+            return cache.getFiles().toArray(new File[0]);
         }
 
+        cache.startLoading();
+
         _hideFiles = TorrentUtil.getIgnorableFiles();
 
         Set<File> directoriesToNotInclude = LibrarySettings.DIRECTORIES_NOT_TO_INCLUDE.getValue();
@@ -113,12 +162,10 @@ public class SavedFilesDirectoryHolder extends FileSettingDirectoryHolder {
             files.addAll(getFilesRecursively(directory, directoriesToNotInclude));
         }
 
-        cache = new HashSet<File>(files);
-
-        return cache.toArray(new File[0]);
+        return cache.load(files);
     }
 
     public Collection<File> getCache() {
-        return cache;
+        return cache.getFiles();
     }
 }
\ No newline at end of file
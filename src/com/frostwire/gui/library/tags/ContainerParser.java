@@ -0,0 +1,494 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.frostwire.gui.library.tags;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.frostwire.logging.Logger;
+
+/**
+ * Reads the duration, and the title and other info when the container has
+ * them, from the headers of WAV, AVI, Matroska/WebM and FLV files, without
+ * starting mplayer.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+class ContainerParser extends AbstractTagParser {
+
+    private static final Logger LOG = Logger.getLogger(ContainerParser.class);
+
+    /**
+     * Max size of a chunk or element read in full, bigger ones are skipped.
+     */
+    private static final int MAX_READ_SIZE = 1024 * 1024;
+
+    // matroska element ids
+    private static final int EBML_HEADER = 0x1A45DFA3;
+    private static final int MKV_SEGMENT = 0x18538067;
+    private static final int MKV_INFO = 0x1549A966;
+    private static final int MKV_CLUSTER = 0x1F43B675;
+    private static final int MKV_TIMECODE_SCALE = 0x2AD7B1;
+    private static final int MKV_DURATION = 0x4489;
+    private static final int MKV_TITLE = 0x7BA9;
+
+    private static final int FLV_SCRIPT_TAG = 18;
+
+    public ContainerParser(File file) {
+        super(file);
+    }
+
+    @Override
+    public TagsData parse() {
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+
+            byte[] magic = new byte[4];
+            in.readFully(magic);
+            in.seek(0);
+
+            Header header = null;
+            if (magic[0] == 'R' && magic[1] == 'I' && magic[2] == 'F' && magic[3] == 'F') {
+                header = readRiff(in);
+            } else if (toInt(magic) == EBML_HEADER) {
+                header = readMatroska(in);
+            } else if (magic[0] == 'F' && magic[1] == 'L' && magic[2] == 'V') {
+                header = readFlv(in);
+            }
+
+            if (header == null || header.duration <= 0) {
+                return null;
+            }
+
+            String bitrate = header.bitrate > 0 ? String.valueOf(header.bitrate) : String.valueOf((int) (file.length() * 8 / header.duration / 1000));
+            Map<String, String> info = header.info;
+
+            return sanitize((int) header.duration, bitrate, info.get("title"), info.get("artist"), info.get("album"), info.get("comment"), info.get("genre"), info.get("track"), info.get("year"));
+        } catch (Throwable e) {
+            LOG.warn("Unable to read container header of file: " + file, e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    @Override
+    public BufferedImage getArtwork() {
+        return null;
+    }
+
+    /**
+     * WAV and AVI, both a RIFF of chunks and lists of chunks.
+     */
+    private Header readRiff(RandomAccessFile in) throws IOException {
+        in.skipBytes(8); // RIFF and size
+        String form = readFourCC(in);
+
+        Header header = new Header();
+        RiffState state = new RiffState();
+
+        readRiffChunks(in, in.length(), state, header);
+
+        if ("WAVE".equals(form)) {
+            if (state.byteRate > 0 && state.dataSize > 0) {
+                header.duration = (double) state.dataSize / state.byteRate;
+                header.bitrate = (int) (state.byteRate * 8 / 1000);
+            }
+        } else if ("AVI ".equals(form)) {
+            long frames = state.odmlTotalFrames > 0 ? state.odmlTotalFrames : state.totalFrames;
+            if (state.microSecPerFrame > 0 && frames > 0) {
+                header.duration = (double) state.microSecPerFrame * frames / 1000000;
+            }
+        } else {
+            return null;
+        }
+
+        return header;
+    }
+
+    private void readRiffChunks(RandomAccessFile in, long end, RiffState state, Header header) throws IOException {
+        while (in.getFilePointer() + 8 <= end) {
+            String id = readFourCC(in);
+            long size = readIntLE(in) & 0xFFFFFFFFL;
+            long next = in.getFilePointer() + size + (size & 1); // padded to even
+
+            if ("LIST".equals(id)) {
+                String type = readFourCC(in);
+                if ("hdrl".equals(type) || "odml".equals(type) || "INFO".equals(type)) {
+                    String parentType = state.listType;
+                    state.listType = type;
+                    readRiffChunks(in, Math.min(next, end), state, header);
+                    state.listType = parentType;
+                }
+            } else if ("fmt ".equals(id) && size >= 16) {
+                in.skipBytes(8); // format, channels, sample rate
+                state.byteRate = readIntLE(in) & 0xFFFFFFFFL;
+            } else if ("data".equals(id)) {
+                state.dataSize = Math.min(size, end - in.getFilePointer());
+            } else if ("avih".equals(id) && size >= 20) {
+                state.microSecPerFrame = readIntLE(in) & 0xFFFFFFFFL;
+                in.skipBytes(12);
+                state.totalFrames = readIntLE(in) & 0xFFFFFFFFL;
+            } else if ("dmlh".equals(id) && size >= 4) {
+                state.odmlTotalFrames = readIntLE(in) & 0xFFFFFFFFL;
+            } else if ("INFO".equals(state.listType) && size > 0 && size <= MAX_READ_SIZE) {
+                String key = riffInfoKey(id);
+                if (key != null) {
+                    byte[] data = new byte[(int) size];
+                    in.readFully(data);
+                    header.info.put(key, trimNulls(new String(data, "ISO-8859-1")));
+                }
+            }
+
+            if (next > end) {
+                break;
+            }
+            in.seek(next);
+        }
+    }
+
+    private static String riffInfoKey(String id) {
+        if ("INAM".equals(id)) {
+            return "title";
+        } else if ("IART".equals(id)) {
+            return "artist";
+        } else if ("IPRD".equals(id)) {
+            return "album";
+        } else if ("ICMT".equals(id)) {
+            return "comment";
+        } else if ("IGNR".equals(id)) {
+            return "genre";
+        } else if ("ITRK".equals(id) || "IPRT".equals(id)) {
+            return "track";
+        } else if ("ICRD".equals(id)) {
+            return "year";
+        }
+        return null;
+    }
+
+    /**
+     * Matroska and WebM, the Info element of the Segment, before the
+     * first Cluster.
+     */
+    private Header readMatroska(RandomAccessFile in) throws IOException {
+        long length = in.length();
+
+        // EBML header
+        readEbmlId(in);
+        long headerSize = readEbmlSize(in);
+        in.seek(in.getFilePointer() + headerSize);
+
+        if (readEbmlId(in) != MKV_SEGMENT) {
+            return null;
+        }
+        long segmentSize = readEbmlSize(in);
+        long segmentEnd = segmentSize < 0 ? length : Math.min(length, in.getFilePointer() + segmentSize);
+
+        while (in.getFilePointer() < segmentEnd) {
+            int id = readEbmlId(in);
+            long size = readEbmlSize(in);
+
+            if (id == MKV_CLUSTER || size < 0) {
+                // the media data, no Info before it
+                return null;
+            }
+
+            if (id == MKV_INFO) {
+                return readMatroskaInfo(in, in.getFilePointer() + size);
+            }
+
+            in.seek(in.getFilePointer() + size);
+        }
+
+        return null;
+    }
+
+    private Header readMatroskaInfo(RandomAccessFile in, long end) throws IOException {
+        long timecodeScale = 1000000;
+        double duration = 0;
+        Header header = new Header();
+
+        while (in.getFilePointer() < end) {
+            int id = readEbmlId(in);
+            long size = readEbmlSize(in);
+            long next = in.getFilePointer() + size;
+
+            if (size < 0 || size > MAX_READ_SIZE) {
+                break;
+            }
+
+            if (id == MKV_TIMECODE_SCALE) {
+                timecodeScale = readUnsigned(in, (int) size);
+            } else if (id == MKV_DURATION) {
+                if (size == 4) {
+                    duration = Float.intBitsToFloat(in.readInt());
+                } else if (size == 8) {
+                    duration = Double.longBitsToDouble(in.readLong());
+                }
+            } else if (id == MKV_TITLE) {
+                byte[] data = new byte[(int) size];
+                in.readFully(data);
+                header.info.put("title", trimNulls(new String(data, "UTF-8")));
+            }
+
+            in.seek(next);
+        }
+
+        header.duration = duration * timecodeScale / 1000000000;
+        return header;
+    }
+
+    private static int readEbmlId(RandomAccessFile in) throws IOException {
+        int first = in.readUnsignedByte();
+        int length = vintLength(first);
+        if (length > 4) {
+            throw new IOException("Invalid EBML id");
+        }
+
+        int id = first;
+        for (int i = 1; i < length; i++) {
+            id = (id << 8) | in.readUnsignedByte();
+        }
+        return id;
+    }
+
+    /**
+     * @return the size, or -1 if unknown
+     */
+    private static long readEbmlSize(RandomAccessFile in) throws IOException {
+        int first = in.readUnsignedByte();
+        int length = vintLength(first);
+        if (length > 8) {
+            throw new IOException("Invalid EBML size");
+        }
+
+        long value = first & (0xFF >> length);
+        boolean allOnes = value == (0xFF >> length);
+        for (int i = 1; i < length; i++) {
+            int b = in.readUnsignedByte();
+            allOnes &= b == 0xFF;
+            value = (value << 8) | b;
+        }
+        return allOnes ? -1 : value;
+    }
+
+    private static int vintLength(int first) {
+        int length = 1;
+        int mask = 0x80;
+        while (length <= 8 && (first & mask) == 0) {
+            mask >>= 1;
+            length++;
+        }
+        return length;
+    }
+
+    private static long readUnsigned(RandomAccessFile in, int size) throws IOException {
+        long value = 0;
+        for (int i = 0; i < size; i++) {
+            value = (value << 8) | in.readUnsignedByte();
+        }
+        return value;
+    }
+
+    /**
+     * FLV, the onMetaData of the first script tag.
+     */
+    private Header readFlv(RandomAccessFile in) throws IOException {
+        in.skipBytes(5); // FLV, version, flags
+        long headerSize = in.readInt() & 0xFFFFFFFFL;
+        in.seek(headerSize + 4); // and the first previous tag size
+
+        // the metadata comes before the audio and video, look a few tags only
+        for (int i = 0; i < 8 && in.getFilePointer() + 11 <= in.length(); i++) {
+            int type = in.readUnsignedByte() & 0x1F;
+            int size = (int) readUnsigned(in, 3);
+            in.skipBytes(7); // timestamp and stream id
+            long next = in.getFilePointer() + size + 4;
+
+            if (type == FLV_SCRIPT_TAG && size <= MAX_READ_SIZE) {
+                byte[] data = new byte[size];
+                in.readFully(data);
+                Header header = readFlvMetadata(new DataInputStream(new ByteArrayInputStream(data)));
+                if (header != null) {
+                    return header;
+                }
+            }
+
+            in.seek(next);
+        }
+
+        return null;
+    }
+
+    private Header readFlvMetadata(DataInputStream in) throws IOException {
+        Object name = readAmf(in, 0);
+        if (!"onMetaData".equals(name)) {
+            return null;
+        }
+
+        Object value = readAmf(in, 0);
+        if (!(value instanceof Map)) {
+            return null;
+        }
+
+        Map<?, ?> metadata = (Map<?, ?>) value;
+
+        Header header = new Header();
+        header.duration = number(metadata.get("duration"));
+        header.bitrate = (int) (number(metadata.get("audiodatarate")) + number(metadata.get("videodatarate")));
+
+        Object title = metadata.get("title");
+        if (title instanceof String) {
+            header.info.put("title", (String) title);
+        }
+
+        return header;
+    }
+
+    /**
+     * An AMF0 value, numbers as Double, strings as String, objects and
+     * arrays as Map, the rest as null.
+     */
+    private static Object readAmf(DataInputStream in, int depth) throws IOException {
+        if (depth > 8) {
+            throw new IOException("AMF data too deep");
+        }
+
+        int type = in.readUnsignedByte();
+        switch (type) {
+        case 0: // number
+            return in.readDouble();
+        case 1: // boolean
+            return in.readUnsignedByte() != 0;
+        case 2: // string
+            return readAmfString(in, in.readUnsignedShort());
+        case 3: // object
+            return readAmfProperties(in, depth);
+        case 5: // null
+        case 6: // undefined
+            return null;
+        case 7: // reference
+            in.readUnsignedShort();
+            return null;
+        case 8: // ecma array
+            in.readInt();
+            return readAmfProperties(in, depth);
+        case 10: // strict array
+            int count = in.readInt();
+            Map<String, Object> array = new HashMap<String, Object>();
+            for (int i = 0; i < count; i++) {
+                array.put(String.valueOf(i), readAmf(in, depth + 1));
+            }
+            return array;
+        case 11: // date
+            in.readDouble();
+            in.readShort();
+            return null;
+        case 12: // long string
+            return readAmfString(in, in.readInt());
+        default:
+            throw new IOException("Unknown AMF type " + type);
+        }
+    }
+
+    private static Map<String, Object> readAmfProperties(DataInputStream in, int depth) throws IOException {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        while (true) {
+            int length = in.readUnsignedShort();
+            if (length == 0) {
+                if (in.readUnsignedByte() != 9) { // object end
+                    throw new IOException("Invalid AMF object end");
+                }
+                return properties;
+            }
+            String key = readAmfString(in, length);
+            properties.put(key, readAmf(in, depth + 1));
+        }
+    }
+
+    private static String readAmfString(DataInputStream in, int length) throws IOException {
+        if (length < 0 || length > MAX_READ_SIZE) {
+            throw new EOFException("Invalid AMF string");
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        return new String(data, "UTF-8");
+    }
+
+    private static double number(Object value) {
+        return value instanceof Double ? (Double) value : 0;
+    }
+
+    private static String readFourCC(RandomAccessFile in) throws IOException {
+        byte[] data = new byte[4];
+        in.readFully(data);
+        return new String(data, "ISO-8859-1");
+    }
+
+    private static int readIntLE(RandomAccessFile in) throws IOException {
+        int b0 = in.readUnsignedByte();
+        int b1 = in.readUnsignedByte();
+        int b2 = in.readUnsignedByte();
+        int b3 = in.readUnsignedByte();
+        return b0 | (b1 << 8) | (b2 << 16) | (b3 << 24);
+    }
+
+    private static int toInt(byte[] data) {
+        return ((data[0] & 0xFF) << 24) | ((data[1] & 0xFF) << 16) | ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+    }
+
+    private static String trimNulls(String s) {
+        int end = s.length();
+        while (end > 0 && (s.charAt(end - 1) == 0 || Character.isWhitespace(s.charAt(end - 1)))) {
+            end--;
+        }
+        return s.substring(0, end);
+    }
+
+    private static final class Header {
+
+        private double duration; // in seconds
+        private int bitrate; // in kbps, 0 if not known
+        private final Map<String, String> info = new HashMap<String, String>();
+    }
+
+    private static final class RiffState {
+
+        private String listType;
+        private long byteRate;
+        private long dataSize;
+        private long microSecPerFrame;
+        private long totalFrames;
+        private long odmlTotalFrames;
+    }
+}
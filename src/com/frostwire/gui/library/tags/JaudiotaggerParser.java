@@ -62,15 +62,7 @@ class JaudiotaggerParser extends AbstractTagParser {
             int duration = header.getTrackLength();
             String bitrate = header.getBitRate();
 
-            String title = getTitle(audioFile);
-            String artist = getArtist(audioFile);
-            String album = getAlbum(audioFile);
-            String comment = getComment(audioFile);
-            String genre = getGenre(audioFile);
-            String track = getTrack(audioFile);
-            String year = getYear(audioFile);
-
-            data = sanitize(duration, bitrate, title, artist, album, comment, genre, track, year);
+            data = parse(audioFile, duration, bitrate);
 
         } catch (Exception e) {
             LOG.warn("Unable to parse file using Jaudiotagger: " + file);
@@ -79,6 +71,21 @@ class JaudiotaggerParser extends AbstractTagParser {
         return data;
     }
 
+    /**
+     * The tags of the file with the duration and bitrate already known.
+     */
+    protected TagsData parse(AudioFile audioFile, int duration, String bitrate) {
+        String title = getTitle(audioFile);
+        String artist = getArtist(audioFile);
+        String album = getAlbum(audioFile);
+        String comment = getComment(audioFile);
+        String genre = getGenre(audioFile);
+        String track = getTrack(audioFile);
+        String year = getYear(audioFile);
+
+        return sanitize(duration, bitrate, title, artist, album, comment, genre, track, year);
+    }
+
     @Override
     public BufferedImage getArtwork() {
         BufferedImage data = null;
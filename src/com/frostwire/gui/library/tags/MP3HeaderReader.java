@@ -0,0 +1,355 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.frostwire.gui.library.tags;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the duration and bitrate of a mp3 from the first frame after the
+ * ID3v2 tag, only the head of the file is read.
+ * <p>
+ * The duration comes from the frame count of the Xing/Info or VBRI header
+ * when the encoder wrote one, otherwise it is estimated from the size of
+ * the audio and the bitrate of the first frame.
+ *
+ * @author aldenml
+ *
+ */
+final class MP3HeaderReader {
+
+    /**
+     * How much of the audio, after the ID3v2 tag, is searched for the first frame.
+     */
+    private static final int HEAD_SIZE = 64 * 1024;
+
+    private static final int ID3V2_HEADER_LENGTH = 10;
+    private static final int ID3V1_LENGTH = 128;
+
+    private static final int VERSION_2_5 = 0;
+    private static final int VERSION_2 = 2;
+    private static final int VERSION_1 = 3;
+
+    private static final int LAYER_3 = 1;
+    private static final int LAYER_2 = 2;
+    private static final int LAYER_1 = 3;
+
+    private static final int MODE_MONO = 3;
+
+    private static final int[][] BITRATES = {
+            // version 1, layer 1, 2, 3
+            { 0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448 }, //
+            { 0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384 }, //
+            { 0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320 }, //
+            // version 2 and 2.5, layer 1, 2 and 3
+            { 0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256 }, //
+            { 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160 } };
+
+    private static final int[] SAMPLE_RATES = { 44100, 48000, 32000 };
+
+    private final int tagSize;
+    private final boolean id3v1;
+    private final int duration;
+    private final String bitrate;
+
+    private MP3HeaderReader(int tagSize, boolean id3v1, int duration, String bitrate) {
+        this.tagSize = tagSize;
+        this.id3v1 = id3v1;
+        this.duration = duration;
+        this.bitrate = bitrate;
+    }
+
+    /**
+     * Size in bytes of the ID3v2 tag at the start of the file, 0 if there is none.
+     */
+    public int getTagSize() {
+        return tagSize;
+    }
+
+    public boolean hasID3v1Tag() {
+        return id3v1;
+    }
+
+    /**
+     * In seconds.
+     */
+    public int getDuration() {
+        return duration;
+    }
+
+    /**
+     * In kbps, with a '~' in front if it's variable, the same as jaudiotagger.
+     */
+    public String getBitrate() {
+        return bitrate;
+    }
+
+    /**
+     * @return null if there is no valid frame in the head of the file
+     */
+    public static MP3HeaderReader read(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel ch = raf.getChannel();
+            long fileLength = ch.size();
+
+            int tagSize = readID3v2Size(ch);
+            if (tagSize >= fileLength) {
+                return null;
+            }
+
+            boolean id3v1 = hasID3v1(ch, fileLength);
+            long audioEnd = id3v1 ? fileLength - ID3V1_LENGTH : fileLength;
+
+            ByteBuffer head = readHead(ch, tagSize, (int) Math.min(HEAD_SIZE, fileLength - tagSize));
+
+            int offset = findFrame(head);
+            if (offset == -1) {
+                return null;
+            }
+
+            return readFrame(head, offset, tagSize, id3v1, Math.max(0, audioEnd - tagSize - offset));
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static int readID3v2Size(FileChannel ch) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(ID3V2_HEADER_LENGTH);
+        ch.read(bb, 0);
+        if (bb.position() < ID3V2_HEADER_LENGTH || bb.get(0) != 'I' || bb.get(1) != 'D' || bb.get(2) != '3') {
+            return 0;
+        }
+
+        // synchsafe integer, 7 bits per byte
+        int size = ((bb.get(6) & 0x7F) << 21) | ((bb.get(7) & 0x7F) << 14) | ((bb.get(8) & 0x7F) << 7) | (bb.get(9) & 0x7F);
+        size += ID3V2_HEADER_LENGTH;
+
+        boolean footer = (bb.get(5) & 0x10) != 0;
+        if (footer) {
+            size += ID3V2_HEADER_LENGTH;
+        }
+
+        return size;
+    }
+
+    private static boolean hasID3v1(FileChannel ch, long fileLength) throws IOException {
+        if (fileLength < ID3V1_LENGTH) {
+            return false;
+        }
+
+        ByteBuffer bb = ByteBuffer.allocate(3);
+        ch.read(bb, fileLength - ID3V1_LENGTH);
+        return bb.position() == 3 && bb.get(0) == 'T' && bb.get(1) == 'A' && bb.get(2) == 'G';
+    }
+
+    /**
+     * Copies the bytes to the heap, a mapping of a few kilobytes costs more
+     * than the read and keeps the file open until it's collected.
+     */
+    private static ByteBuffer readHead(FileChannel ch, long position, int size) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(size);
+        while (bb.hasRemaining()) {
+            int n = ch.read(bb, position + bb.position());
+            if (n == -1) {
+                break;
+            }
+        }
+        bb.flip();
+        return bb;
+    }
+
+    /**
+     * The first valid frame header that is followed by another one, or that
+     * ends past the head.
+     */
+    private static int findFrame(ByteBuffer head) {
+        int limit = head.limit() - 4;
+
+        for (int i = 0; i < limit; i++) {
+            if ((head.get(i) & 0xFF) != 0xFF || (head.get(i + 1) & 0xE0) != 0xE0) {
+                continue;
+            }
+
+            int frameLength = frameLength(head, i);
+            if (frameLength <= 0) {
+                continue;
+            }
+
+            int next = i + frameLength;
+            if (next > limit) {
+                return i;
+            }
+
+            // same stream, first 19 bits of the header are the same
+            if ((head.get(next) & 0xFF) == 0xFF && (head.get(next + 1) & 0xFE) == (head.get(i + 1) & 0xFE) && (head.get(next + 2) & 0x0C) == (head.get(i + 2) & 0x0C)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static MP3HeaderReader readFrame(ByteBuffer head, int offset, int tagSize, boolean id3v1, long audioSize) {
+        int version = version(head, offset);
+        int layer = layer(head, offset);
+        int kbps = bitrate(head, offset);
+        int sampleRate = sampleRate(head, offset);
+        int samplesPerFrame = samplesPerFrame(version, layer);
+
+        int frames = 0;
+        int bytes = 0;
+        boolean vbr = false;
+
+        if (layer == LAYER_3) {
+            boolean mono = ((head.get(offset + 3) >> 6) & 0x03) == MODE_MONO;
+            int sideInfo = version == VERSION_1 ? (mono ? 17 : 32) : (mono ? 9 : 17);
+            int xing = offset + 4 + sideInfo;
+            int vbri = offset + 4 + 32;
+
+            if (xing + 16 <= head.limit() && (startsWith(head, xing, "Xing") || startsWith(head, xing, "Info"))) {
+                vbr = startsWith(head, xing, "Xing");
+                int flags = head.getInt(xing + 4);
+                int position = xing + 8;
+                if ((flags & 0x01) != 0) {
+                    frames = head.getInt(position);
+                    position += 4;
+                }
+                if ((flags & 0x02) != 0) {
+                    bytes = head.getInt(position);
+                }
+            } else if (vbri + 18 <= head.limit() && startsWith(head, vbri, "VBRI")) {
+                vbr = true;
+                bytes = head.getInt(vbri + 10);
+                frames = head.getInt(vbri + 14);
+            }
+        }
+
+        int duration;
+        String bitrate;
+
+        double seconds = frames > 0 && sampleRate > 0 ? (double) frames * samplesPerFrame / sampleRate : 0;
+
+        if (seconds > 0) {
+            long size = bytes > 0 ? bytes : audioSize;
+            duration = (int) seconds;
+            bitrate = String.valueOf((long) (size * 8 / (seconds * 1000)));
+        } else {
+            // no usable frame count, assume the bitrate of the first frame for the whole file
+            vbr = false;
+            duration = kbps > 0 ? (int) (audioSize * 8 / (kbps * 1000L)) : 0;
+            bitrate = String.valueOf(kbps);
+        }
+
+        return new MP3HeaderReader(tagSize, id3v1, duration, vbr ? "~" + bitrate : bitrate);
+    }
+
+    /**
+     * @return 0 if the bytes at offset are not a valid header
+     */
+    private static int frameLength(ByteBuffer head, int offset) {
+        int version = version(head, offset);
+        int layer = layer(head, offset);
+        if (version == 1 || layer == 0) {
+            return 0;
+        }
+
+        int kbps = bitrate(head, offset);
+        int sampleRate = sampleRate(head, offset);
+        if (kbps <= 0 || sampleRate <= 0) {
+            return 0;
+        }
+
+        int padding = (head.get(offset + 2) >> 1) & 0x01;
+
+        if (layer == LAYER_1) {
+            return (12 * kbps * 1000 / sampleRate + padding) * 4;
+        } else {
+            return samplesPerFrame(version, layer) / 8 * kbps * 1000 / sampleRate + padding;
+        }
+    }
+
+    private static int version(ByteBuffer head, int offset) {
+        return (head.get(offset + 1) >> 3) & 0x03;
+    }
+
+    private static int layer(ByteBuffer head, int offset) {
+        return (head.get(offset + 1) >> 1) & 0x03;
+    }
+
+    /**
+     * @return 0 for free format and -1 for the invalid index
+     */
+    private static int bitrate(ByteBuffer head, int offset) {
+        int index = (head.get(offset + 2) >> 4) & 0x0F;
+        if (index == 0x0F) {
+            return -1;
+        }
+
+        int version = version(head, offset);
+        int layer = layer(head, offset);
+
+        int table;
+        if (version == VERSION_1) {
+            table = layer == LAYER_1 ? 0 : (layer == LAYER_2 ? 1 : 2);
+        } else {
+            table = layer == LAYER_1 ? 3 : 4;
+        }
+
+        return BITRATES[table][index];
+    }
+
+    private static int sampleRate(ByteBuffer head, int offset) {
+        int index = (head.get(offset + 2) >> 2) & 0x03;
+        if (index == 3) {
+            return -1;
+        }
+
+        int version = version(head, offset);
+        int sampleRate = SAMPLE_RATES[index];
+        if (version == VERSION_2) {
+            sampleRate /= 2;
+        } else if (version == VERSION_2_5) {
+            sampleRate /= 4;
+        }
+
+        return sampleRate;
+    }
+
+    private static int samplesPerFrame(int version, int layer) {
+        if (layer == LAYER_1) {
+            return 384;
+        } else if (layer == LAYER_2 || version == VERSION_1) {
+            return 1152;
+        } else {
+            return 576;
+        }
+    }
+
+    private static boolean startsWith(ByteBuffer head, int offset, String id) {
+        for (int i = 0; i < id.length(); i++) {
+            if (head.get(offset + i) != id.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
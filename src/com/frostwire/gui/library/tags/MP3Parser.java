@@ -19,12 +19,22 @@ package com.frostwire.gui.library.tags;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 
 import org.jaudiotagger.audio.AudioFile;
 import org.jaudiotagger.audio.mp3.MP3File;
 import org.jaudiotagger.audio.mp3.MP3FileReader;
+import org.jaudiotagger.tag.TagException;
+import org.jaudiotagger.tag.TagNotFoundException;
 import org.jaudiotagger.tag.id3.AbstractID3v2Tag;
+import org.jaudiotagger.tag.id3.ID3v11Tag;
+import org.jaudiotagger.tag.id3.ID3v1Tag;
+import org.jaudiotagger.tag.id3.ID3v22Tag;
+import org.jaudiotagger.tag.id3.ID3v23Tag;
 import org.jaudiotagger.tag.id3.ID3v24Frames;
+import org.jaudiotagger.tag.id3.ID3v24Tag;
 import org.jaudiotagger.tag.images.Artwork;
 
 import com.frostwire.logging.Logger;
@@ -42,6 +52,32 @@ class MP3Parser extends JaudiotaggerParser {
         super(file, new MP3FileReader());
     }
 
+    /**
+     * Takes the duration and bitrate from the first frames with {@link MP3HeaderReader}
+     * and reads only the tags, instead of letting jaudiotagger search the audio
+     * for them. Files where the header reader doesn't find a frame go the slow way.
+     */
+    @Override
+    public TagsData parse() {
+        MP3HeaderReader header = null;
+        try {
+            header = MP3HeaderReader.read(file);
+        } catch (Throwable e) {
+            LOG.warn("Unable to read mp3 header: " + file);
+        }
+
+        if (header == null) {
+            return super.parse();
+        }
+
+        try {
+            return parse(readTags(header), header.getDuration(), header.getBitrate());
+        } catch (Throwable e) {
+            LOG.warn("Unable to read mp3 tags: " + file);
+            return super.parse();
+        }
+    }
+
     @Override
     public BufferedImage getArtwork() {
         BufferedImage image = super.getArtwork();
@@ -65,6 +101,72 @@ class MP3Parser extends JaudiotaggerParser {
         return image;
     }
 
+    private MP3File readTags(MP3HeaderReader header) throws IOException {
+        MP3File mp3 = new MP3File();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (header.getTagSize() > 0) {
+                ByteBuffer bb = ByteBuffer.allocate(header.getTagSize());
+                raf.getChannel().read(bb, 0);
+                bb.flip();
+
+                AbstractID3v2Tag tag = readID3v2Tag(bb);
+                if (tag != null) {
+                    mp3.setTag(tag);
+                    return mp3;
+                }
+            }
+
+            if (header.hasID3v1Tag()) {
+                ID3v1Tag tag = readID3v1Tag(raf);
+                if (tag != null) {
+                    mp3.setTag(tag);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+
+        return mp3;
+    }
+
+    private AbstractID3v2Tag readID3v2Tag(ByteBuffer bb) {
+        for (int version = 4; version >= 2; version--) {
+            try {
+                bb.rewind();
+                switch (version) {
+                case 4:
+                    return new ID3v24Tag(bb, file.getName());
+                case 3:
+                    return new ID3v23Tag(bb, file.getName());
+                default:
+                    return new ID3v22Tag(bb, file.getName());
+                }
+            } catch (TagNotFoundException e) {
+                // try the previous version
+            } catch (TagException e) {
+                LOG.warn("Unable to read ID3v2 tag of mp3: " + file);
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private ID3v1Tag readID3v1Tag(RandomAccessFile raf) throws IOException {
+        try {
+            return new ID3v11Tag(raf, file.getName());
+        } catch (TagNotFoundException e) {
+            // not 1.1, try 1.0
+        }
+
+        try {
+            return new ID3v1Tag(raf, file.getName());
+        } catch (TagNotFoundException e) {
+            return null;
+        }
+    }
+
     protected String getTitle(AudioFile audioFile) {
         return getValueSafe(super.getTitle(audioFile), audioFile, ID3v24Frames.FRAME_ID_TITLE);
     }
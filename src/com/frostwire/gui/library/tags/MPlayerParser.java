@@ -21,7 +21,7 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.Map;
 
-import com.frostwire.gui.mplayer.MPlayer;
+import com.frostwire.gui.mplayer.MediaProbe;
 import com.frostwire.logging.Logger;
 
 /**
@@ -42,27 +42,20 @@ class MPlayerParser extends AbstractTagParser {
         TagsData data = null;
 
         try {
-            MPlayer mplayer = new MPlayer();
+            Map<String, String> properties = MediaProbe.instance().probe(file.getAbsolutePath());
 
-            try {
-                Map<String, String> properties = mplayer.getProperties(file.getAbsolutePath());
+            int duration = parseDuration(properties.get("ID_LENGTH"));
+            String bitrate = parseBitrate(properties.get("ID_AUDIO_BITRATE"));
 
-                int duration = parseDuration(properties.get("ID_LENGTH"));
-                String bitrate = parseBitrate(properties.get("ID_AUDIO_BITRATE"));
+            String title = properties.get("Title");
+            String artist = properties.get("Artist");
+            String album = properties.get("Album");
+            String comment = properties.get("Comment");
+            String genre = properties.get("Genre");
+            String track = properties.get("Track");
+            String year = properties.get("Year");
 
-                String title = properties.get("Title");
-                String artist = properties.get("Artist");
-                String album = properties.get("Album");
-                String comment = properties.get("Comment");
-                String genre = properties.get("Genre");
-                String track = properties.get("Track");
-                String year = properties.get("Year");
-
-                data = sanitize(duration, bitrate, title, artist, album, comment, genre, track, year);
-
-            } finally {
-                mplayer.dispose();
-            }
+            data = sanitize(duration, bitrate, title, artist, album, comment, genre, track, year);
         } catch (Exception e) {
             LOG.warn("Unable to parse file with mplayer: " + file, e);
         }
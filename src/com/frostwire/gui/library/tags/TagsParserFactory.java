@@ -53,7 +53,8 @@ class TagsParserFactory {
         } else if (isJaudiotagger(ext)) {
             return new JaudiotaggerParser(file);
         } else {
-            return new MPlayerParser(file);
+            // avi, mkv, webm, flv... by their headers, mplayer if unknown
+            return new ContainerParser(file);
         }
     }
 
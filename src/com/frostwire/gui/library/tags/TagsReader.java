@@ -45,6 +45,11 @@ public class TagsReader {
         if (parser != null) {
             data = parser.parse();
 
+            // the container headers first, mplayer if they didn't do
+            if ((data == null || isEmpty(data)) && !(parser instanceof ContainerParser)) {
+                data = new ContainerParser(file).parse();
+            }
+
             // aldenml: fallback to mplayer parsing, refactor this logic (remove it)
             if (data == null || isEmpty(data)) {
                 data = new MPlayerParser(file).parse();
@@ -68,6 +68,12 @@ MPlayerInstance
 		killProcesses( false );
 	}
 	
+	static File
+	getBinaryPath()
+	{
+		return( BINARY_PATH );
+	}
+	
 	// indicates how commands should handle pause
 	// see http://www.mplayerhq.hu/DOCS/tech/slave.txt for details
 	public enum CommandPauseMode {
@@ -0,0 +1,335 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.mplayer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.frostwire.logging.Logger;
+
+/**
+ * Reads the properties of media files with a few mplayer processes that
+ * stay running in idle mode between files, instead of starting a new
+ * process for each one.
+ * <p>
+ * Each process loads one file at a time and is asked for a property right
+ * after, the answer marks the end of the output of that file. A process
+ * that doesn't answer in time is killed and started again for the next
+ * file, and the processes exit after a while without files.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class MediaProbe {
+
+    private static final Logger LOG = Logger.getLogger(MediaProbe.class);
+
+    private static final int WORKERS = 2;
+
+    /**
+     * Time for mplayer to read one file.
+     */
+    private static final long REQUEST_TIMEOUT_MILLISECONDS = 5000;
+
+    /**
+     * Time a caller waits, including the files queued before its own.
+     */
+    private static final long WAIT_TIMEOUT_MILLISECONDS = 30000;
+
+    private static final long IDLE_TIMEOUT_MILLISECONDS = 30000;
+
+    // compared by identity, can't be confused with a line of output
+    private static final String END_OF_OUTPUT = new String("EOF");
+
+    private static final MediaProbe instance = new MediaProbe();
+
+    public static MediaProbe instance() {
+        return instance;
+    }
+
+    private final BlockingQueue<Request> requests;
+    private final List<Worker> workers;
+
+    private boolean started;
+
+    private MediaProbe() {
+        this.requests = new LinkedBlockingQueue<Request>();
+        this.workers = new ArrayList<Worker>();
+    }
+
+    /**
+     * Returns the ID_ properties of the file, and the clip info as name
+     * and value, the same keys as {@link MPlayer#getProperties(String)}.
+     *
+     * @return the properties, empty if mplayer couldn't read the file in
+     * time
+     */
+    public Map<String, String> probe(String fileOrUrl) {
+        if (MPlayerInstance.getBinaryPath() == null) {
+            return Collections.emptyMap();
+        }
+
+        startWorkers();
+
+        Request request = new Request(fileOrUrl);
+        requests.add(request);
+
+        try {
+            if (!request.done.await(WAIT_TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS)) {
+                request.abandoned = true;
+                LOG.warn("Timed out waiting to probe " + fileOrUrl);
+            }
+        } catch (InterruptedException e) {
+            request.abandoned = true;
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (request) {
+            return new HashMap<String, String>(request.properties);
+        }
+    }
+
+    private synchronized void startWorkers() {
+        if (started) {
+            return;
+        }
+        started = true;
+
+        for (int i = 0; i < WORKERS; i++) {
+            Worker worker = new Worker("MediaProbe-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread("MediaProbe-shutdown") {
+            @Override
+            public void run() {
+                for (Worker worker : workers) {
+                    worker.stopProcess();
+                }
+            }
+        });
+    }
+
+    private static String escape(String path) {
+        return path.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static final class Request {
+
+        private final String fileOrUrl;
+        private final CountDownLatch done;
+
+        // guarded by this
+        private final Map<String, String> properties;
+        private String lastKey;
+
+        private volatile boolean abandoned;
+
+        public Request(String fileOrUrl) {
+            this.fileOrUrl = fileOrUrl;
+            this.done = new CountDownLatch(1);
+            this.properties = new HashMap<String, String>();
+        }
+
+        public synchronized void consume(String line) {
+            String[] kv = line.split("=", 2);
+            if (kv.length < 2 || kv[1].length() == 0) {
+                return;
+            }
+
+            if (line.startsWith("ID_CLIP_INFO_NAME")) {
+                lastKey = kv[1];
+            } else if (line.startsWith("ID_CLIP_INFO_VALUE")) {
+                if (lastKey != null) {
+                    properties.put(lastKey, kv[1]);
+                    lastKey = null;
+                }
+            } else if (line.startsWith("ID_")) {
+                properties.put(kv[0], kv[1]);
+            }
+        }
+    }
+
+    private final class Worker extends Thread {
+
+        private Process process;
+        private PrintWriter stdIn;
+        private BlockingQueue<String> stdOut;
+
+        public Worker(String name) {
+            super(name);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Request request;
+                try {
+                    request = requests.poll(IDLE_TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+
+                if (request == null) {
+                    // nothing to do for a while, no need to keep mplayer around
+                    stopProcess();
+                    continue;
+                }
+
+                try {
+                    if (!request.abandoned) {
+                        probe(request);
+                    }
+                } catch (Throwable e) {
+                    LOG.warn("Error probing " + request.fileOrUrl, e);
+                    stopProcess();
+                } finally {
+                    request.done.countDown();
+                }
+            }
+
+            stopProcess();
+        }
+
+        private void probe(Request request) throws IOException, InterruptedException {
+            ensureProcess();
+
+            // output left by a file that timed out is not of this one
+            stdOut.clear();
+
+            stdIn.write("loadfile \"" + escape(request.fileOrUrl) + "\"\n");
+            stdIn.write("get_property path\n");
+            stdIn.flush();
+
+            long deadline = System.currentTimeMillis() + REQUEST_TIMEOUT_MILLISECONDS;
+
+            while (true) {
+                long timeout = deadline - System.currentTimeMillis();
+                String line = timeout > 0 ? stdOut.poll(timeout, TimeUnit.MILLISECONDS) : null;
+
+                if (line == null) {
+                    LOG.warn("mplayer didn't answer in time for " + request.fileOrUrl);
+                    stopProcess();
+                    return;
+                }
+
+                if (line == END_OF_OUTPUT) {
+                    // the process died with this file
+                    stopProcess();
+                    return;
+                }
+
+                if (line.startsWith("ANS_")) {
+                    // answer to the property, all the output of the file came before
+                    return;
+                }
+
+                request.consume(line);
+            }
+        }
+
+        private synchronized void ensureProcess() throws IOException {
+            if (process != null) {
+                return;
+            }
+
+            File binary = MPlayerInstance.getBinaryPath();
+
+            List<String> cmd = new ArrayList<String>();
+            cmd.add(binary.getAbsolutePath());
+            cmd.add("-slave");
+            cmd.add("-idle");
+            cmd.add("-identify");
+            cmd.add("-prefer-ipv4");
+            cmd.add("-osdlevel");
+            cmd.add("0");
+            cmd.add("-noautosub");
+            cmd.add("-vo");
+            cmd.add("null");
+            cmd.add("-ao");
+            cmd.add("null");
+            cmd.add("-frames");
+            cmd.add("0");
+
+            ProcessBuilder pb = new ProcessBuilder(cmd);
+            pb.redirectErrorStream(true);
+
+            final Process p = pb.start();
+            final BlockingQueue<String> lines = new LinkedBlockingQueue<String>();
+
+            Thread reader = new Thread(getName() + "-reader") {
+                @Override
+                public void run() {
+                    try {
+                        BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream()));
+                        String line;
+                        while ((line = br.readLine()) != null) {
+                            lines.add(line);
+                        }
+                    } catch (Throwable e) {
+                        // process killed
+                    } finally {
+                        lines.add(END_OF_OUTPUT);
+                    }
+                }
+            };
+            reader.setDaemon(true);
+            reader.start();
+
+            process = p;
+            stdIn = new PrintWriter(new OutputStreamWriter(p.getOutputStream()));
+            stdOut = lines;
+        }
+
+        private synchronized void stopProcess() {
+            if (process == null) {
+                return;
+            }
+
+            try {
+                stdIn.write("quit\n");
+                stdIn.flush();
+            } catch (Throwable e) {
+                // ignore, destroyed below
+            }
+
+            process.destroy();
+
+            process = null;
+            stdIn = null;
+            stdOut = null;
+        }
+    }
+}
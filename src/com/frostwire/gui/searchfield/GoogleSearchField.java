@@ -25,6 +25,8 @@ import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
 
 import javax.swing.JComponent;
 import javax.swing.JPanel;
@@ -34,6 +36,7 @@ import javax.swing.UIManager;
 
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.limewire.concurrent.ExecutorsHelper;
 import org.limewire.util.LCS;
 import org.limewire.util.OSUtils;
 import org.limewire.util.StringUtils;
@@ -56,26 +59,48 @@ public class GoogleSearchField extends SearchField {
     private static final String SUGGESTIONS_URL = buildSuggestionsUrl();
     private static final int HTTP_QUERY_TIMEOUT = 1000;
 
-    private SuggestionsThread suggestionsThread;
+    private static final int MAX_SUGGESTIONS = 10;
+
+    /**
+     * Google is asked only after the user stops typing for this long.
+     */
+    private static final long SUGGESTIONS_DELAY_MILLISECONDS = 300;
+
+    private static final ExecutorService SUGGESTIONS_QUEUE = ExecutorsHelper.newProcessingQueue("GoogleSuggestions");
+
+    private SuggestionsTask suggestionsTask;
 
     public GoogleSearchField() {
-        this.dict = createDefaultDictionary();
+        this.dict = SearchSuggestions.instance();
 
         setPrompt(I18n.tr("Hints by Google"));
         setSearchMode(SearchMode.REGULAR);
     }
 
+    /**
+     * Shows the local suggestions right away, and asks Google for more
+     * only if there are not enough of them.
+     */
     public void autoCompleteInput() {
         String input = getText();
         if (input != null && input.length() > 0) {
 
-            if (suggestionsThread != null) {
-                suggestionsThread.cancel();
+            if (suggestionsTask != null) {
+                suggestionsTask.cancel();
             }
 
             if (getAutoComplete()) {
-                suggestionsThread = new SuggestionsThread(input, this);
-                suggestionsThread.start();
+                List<String> local = SearchSuggestions.instance().suggest(input, MAX_SUGGESTIONS);
+                if (!local.isEmpty()) {
+                    showPopup(local.iterator());
+                } else {
+                    hidePopup();
+                }
+
+                if (local.size() < MAX_SUGGESTIONS) {
+                    suggestionsTask = new SuggestionsTask(input, local, this);
+                    SUGGESTIONS_QUEUE.execute(suggestionsTask);
+                }
             }
 
         } else {
@@ -88,7 +113,7 @@ public class GoogleSearchField extends SearchField {
         
         try {
             if (t!=null) {
-                t = t.replace("<html>", "").replace("</html>", "").replace("<b>", "").replace("</b>", "");
+                t = stripHtml(t);
             }
         } catch (Throwable e) {
             e.printStackTrace();
@@ -96,6 +121,10 @@ public class GoogleSearchField extends SearchField {
         super.setText(t);
     }
 
+    private static String stripHtml(String s) {
+        return s.replace("<html>", "").replace("</html>", "").replace("<b>", "").replace("</b>", "");
+    }
+
     protected JComponent getPopupComponent() {
         if (entryPanel != null)
             return entryPanel;
@@ -132,18 +161,22 @@ public class GoogleSearchField extends SearchField {
         return "http://suggestqueries.google.com/complete/search?output=firefox&hl=" + lang + "&q=%s";
     }
 
-    private static final class SuggestionsThread extends Thread {
+    /**
+     * Asks Google for suggestions after a pause in the typing, if no other
+     * key was typed since, and adds them after the local ones.
+     */
+    private static final class SuggestionsTask implements Runnable {
 
         private final String constraint;
+        private final List<String> local;
         private final GoogleSearchField input;
 
-        private boolean cancelled;
+        private volatile boolean cancelled;
 
-        public SuggestionsThread(String constraint, GoogleSearchField input) {
+        public SuggestionsTask(String constraint, List<String> local, GoogleSearchField input) {
             this.constraint = constraint;
+            this.local = local;
             this.input = input;
-            this.setName("SuggestionsThread: " + constraint);
-            this.setDaemon(true);
         }
 
         public boolean isCancelled() {
@@ -156,6 +189,16 @@ public class GoogleSearchField extends SearchField {
 
         public void run() {
             try {
+                if (isCancelled()) {
+                    return;
+                }
+
+                Thread.sleep(SUGGESTIONS_DELAY_MILLISECONDS);
+
+                if (isCancelled()) {
+                    return;
+                }
+
                 String url = String.format(SUGGESTIONS_URL, URLEncoder.encode(constraint, "UTF-8"));
 
                 HttpClient httpClient = HttpClientFactory.newInstance();
@@ -163,17 +206,19 @@ public class GoogleSearchField extends SearchField {
                 String json = httpClient.get(url, HTTP_QUERY_TIMEOUT);
 
                 if (!isCancelled()) {
-                    final List<String> suggestions = readSuggestions((JSONArray) new JSONArray(json).get(1));
+                    final List<String> suggestions = merge(readSuggestions((JSONArray) new JSONArray(json).get(1)));
 
                     GUIMediator.safeInvokeLater(new Runnable() {
                         public void run() {
                             Iterator<String> it = suggestions.iterator();
-                            if (it.hasNext())
-                                if (!StringUtils.isNullOrEmpty(input.getText(), true)) {
-                                    input.showPopup(it);
-                                }
-                            else
+                            if (isCancelled() || StringUtils.isNullOrEmpty(input.getText(), true)) {
+                                return;
+                            }
+                            if (it.hasNext()) {
+                                input.showPopup(it);
+                            } else {
                                 input.hidePopup();
+                            }
                         }
                     });
                 }
@@ -182,8 +227,28 @@ public class GoogleSearchField extends SearchField {
             }
         }
 
+        private List<String> merge(List<String> remote) {
+            List<String> suggestions = new ArrayList<String>(local);
+
+            List<String> seen = new ArrayList<String>(local.size());
+            for (String s : local) {
+                seen.add(s.toLowerCase(Locale.US));
+            }
+
+            for (String s : remote) {
+                if (suggestions.size() >= MAX_SUGGESTIONS) {
+                    break;
+                }
+                if (!seen.contains(stripHtml(s).toLowerCase(Locale.US))) {
+                    suggestions.add(s);
+                }
+            }
+
+            return suggestions;
+        }
+
         private List<String> readSuggestions(JSONArray array) {
-            String t = input.getText();
+            String t = constraint;
             List<String> suggestions = new ArrayList<String>(array.length());
             if (!StringUtils.isNullOrEmpty(t, true)) {
                 for (int i = 0; i < array.length(); i++) {
@@ -53,7 +53,7 @@ import javax.swing.undo.CannotUndoException;
 import javax.swing.undo.UndoManager;
 
 import org.limewire.collection.AutoCompleteDictionary;
-import org.limewire.collection.StringTrieSet;
+import org.limewire.collection.RankedTrieDictionary;
 import org.limewire.util.OSUtils;
 
 import com.frostwire.gui.theme.SkinMenuItem;
@@ -313,10 +313,11 @@ public class SearchField extends JXSearchField {
     }
 
     /**
-    * Creates the default dictionary object
+    * Creates the default dictionary object, the entries used more often
+    * are suggested first.
     */
     public AutoCompleteDictionary createDefaultDictionary() {
-        return new StringTrieSet(true);
+        return new RankedTrieDictionary();
     }
 
     /**
@@ -633,7 +634,12 @@ public class SearchField extends JXSearchField {
             super.processMouseEvent(me);
 
             if (me.getID() == MouseEvent.MOUSE_CLICKED) {
-                SearchField.this.dict.clear();
+                if (SearchField.this.dict instanceof SearchSuggestions) {
+                    // the library tags and file names are not history
+                    ((SearchSuggestions) SearchField.this.dict).clearSearches();
+                } else {
+                    SearchField.this.dict.clear();
+                }
                 hidePopup();
             }
         }
@@ -0,0 +1,301 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.gui.searchfield;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.limewire.collection.AutoCompleteDictionary;
+import org.limewire.collection.RankedTrieDictionary;
+import org.limewire.concurrent.ExecutorsHelper;
+import org.limewire.util.CommonUtils;
+
+import com.frostwire.logging.Logger;
+
+/**
+ * Suggestions for the search box, ranked by how often they were searched
+ * and filled with the tags of the library and the names of the downloaded
+ * files. Looking them up doesn't need the network.
+ * <p>
+ * A search counts every time it's made, the tags and file names only once
+ * however many times they are scanned. The best ranked entries are saved
+ * in the background after a change and loaded again in the next session.
+ * The searches are added to the weight of an entry and the tags and file
+ * names offered apart, so clearing the history takes back only what the
+ * searches added.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class SearchSuggestions implements AutoCompleteDictionary {
+
+    private static final Logger LOG = Logger.getLogger(SearchSuggestions.class);
+
+    private static final int SEARCH_WEIGHT = 10;
+    private static final int FILENAME_WEIGHT = 3;
+    private static final int METADATA_WEIGHT = 2;
+
+    /**
+     * Longer strings are not suggested.
+     */
+    private static final int MAX_LENGTH = 100;
+
+    private static final int MAX_SAVED = 5000;
+
+    private static final long SAVE_DELAY_SECONDS = 30;
+
+    /**
+     * Version 2 saves the weight of the searches and the weight of the tags
+     * and file names of every entry apart.
+     */
+    private static final int FILE_VERSION = 2;
+
+    private static final SearchSuggestions instance = new SearchSuggestions();
+
+    public static SearchSuggestions instance() {
+        return instance;
+    }
+
+    private final File file;
+    private final RankedTrieDictionary dictionary;
+    private final ScheduledExecutorService saver;
+    private final Object saveLock;
+
+    // guarded by this
+    private boolean dirty;
+    private boolean savePending;
+
+    private SearchSuggestions() {
+        this.file = new File(CommonUtils.getUserSettingsDir(), "search_suggestions.dat");
+        this.dictionary = new RankedTrieDictionary();
+        this.saver = Executors.newSingleThreadScheduledExecutor(ExecutorsHelper.daemonThreadFactory("SearchSuggestionsSaver"));
+        this.saveLock = new Object();
+
+        load();
+    }
+
+    /**
+     * The best ranked suggestions for the text typed so far.
+     */
+    public List<String> suggest(String prefix, int max) {
+        return dictionary.getCompletions(normalize(prefix), max);
+    }
+
+    /**
+     * Counts a search made by the user.
+     */
+    public void addSearch(String query) {
+        String s = normalize(query);
+        if (isValid(s)) {
+            dictionary.add(s, SEARCH_WEIGHT);
+            changed();
+        }
+    }
+
+    /**
+     * Takes back what the searches added, the tags and file names stay.
+     */
+    public void clearSearches() {
+        dictionary.clearAdded();
+        changed();
+    }
+
+    /**
+     * Adds the tags of a file of the library, like artist, album and title.
+     */
+    public void addMetadata(String... values) {
+        boolean any = false;
+        for (String value : values) {
+            String s = normalize(value);
+            if (isValid(s)) {
+                dictionary.offer(s, METADATA_WEIGHT);
+                any = true;
+            }
+        }
+        if (any) {
+            changed();
+        }
+    }
+
+    /**
+     * Adds the name of a downloaded file, without the extension and with
+     * the usual separators as spaces.
+     */
+    public void addFilename(String filename) {
+        if (filename == null) {
+            return;
+        }
+        String s = normalize(FilenameUtils.getBaseName(filename).replaceAll("[_\\.]+", " "));
+        if (isValid(s)) {
+            dictionary.offer(s, FILENAME_WEIGHT);
+            changed();
+        }
+    }
+
+    /**
+     * Counts the search, from the search field.
+     */
+    public void addEntry(String s) {
+        addSearch(s);
+    }
+
+    public boolean removeEntry(String s) {
+        boolean removed = dictionary.removeEntry(normalize(s));
+        if (removed) {
+            changed();
+        }
+        return removed;
+    }
+
+    public String lookup(String s) {
+        return dictionary.lookup(normalize(s));
+    }
+
+    public Iterator<String> iterator() {
+        return dictionary.iterator();
+    }
+
+    public Iterator<String> iterator(String s) {
+        return dictionary.iterator(normalize(s));
+    }
+
+    public void clear() {
+        dictionary.clear();
+        changed();
+    }
+
+    /**
+     * Writes the suggestions now if they changed, for the shutdown.
+     */
+    public void save() {
+        synchronized (saveLock) {
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+                dirty = false;
+            }
+
+            write();
+        }
+    }
+
+    private void write() {
+        List<String> entries = dictionary.getCompletions("", MAX_SAVED);
+
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp))));
+
+            out.writeInt(FILE_VERSION);
+            out.writeInt(entries.size());
+            for (String s : entries) {
+                out.writeUTF(s);
+                out.writeInt(dictionary.getAddedWeight(s));
+                out.writeInt(dictionary.getOfferedWeight(s));
+            }
+            out.close();
+            out = null;
+
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (Throwable e) {
+            LOG.warn("Unable to save search suggestions", e);
+            tmp.delete();
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+
+            if (in.readInt() != FILE_VERSION) {
+                return;
+            }
+
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String s = in.readUTF();
+                int added = in.readInt();
+                int offered = in.readInt();
+                if (added > 0) {
+                    dictionary.add(s, added);
+                }
+                if (offered > 0) {
+                    dictionary.offer(s, offered);
+                }
+            }
+        } catch (Throwable e) {
+            LOG.warn("Unable to load search suggestions", e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private void changed() {
+        synchronized (this) {
+            dirty = true;
+            if (savePending) {
+                return;
+            }
+            savePending = true;
+        }
+
+        saver.schedule(new Runnable() {
+            public void run() {
+                synchronized (SearchSuggestions.this) {
+                    savePending = false;
+                }
+                save();
+            }
+        }, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static String normalize(String s) {
+        return s != null ? s.trim().replaceAll("\\s+", " ") : "";
+    }
+
+    private static boolean isValid(String s) {
+        return s.length() > 1 && s.length() <= MAX_LENGTH;
+    }
+}
@@ -43,41 +43,38 @@ public final class LibraryTab extends AbstractTab {
     private static JComponent COMPONENT;
     private static JPanel PANEL;
 
-    private static LibraryMediator LIBRARY_MEDIATOR;
-    
     /**
-     * Constructs the elements of the tab.
-     *
-     * @param LIBRARY_MEDIATOR the <tt>LibraryMediator</tt> instance 
-     * @param PLAYLIST_MEDIATOR the <tt>PlayListMediator</tt> instance 
+     * Constructs the elements of the tab, the library itself is built
+     * the first time the tab is shown.
      */
-    public LibraryTab(LibraryMediator lm) {
+    public LibraryTab() {
         super(I18n.tr("Library"), I18n.tr("Browse, Search and Play files in your computer. Wi-Fi sharing, Internet Radio and more."), "library_tab");
-        LIBRARY_MEDIATOR = lm;
     }
 
     public JComponent getComponent() {
         return getPanel();
     }
 
-    private static JPanel getPanel() {
-        if (PANEL == null) {
-            PANEL = createPanel();
-        }
-        return PANEL;
-    }
-
-    private static JPanel createPanel() {
-
-        JPanel panel = new JPanel(new BorderLayout());
+    /**
+     * Adds the library to the tab, if not already there.
+     */
+    public void load() {
+        JPanel panel = getPanel();
 
-        COMPONENT = LIBRARY_MEDIATOR.getComponent();
+        if (COMPONENT == null) {
+            COMPONENT = LibraryMediator.instance().getComponent();
 
-        panel.add(COMPONENT, BorderLayout.CENTER);
+            panel.add(COMPONENT, BorderLayout.CENTER);
 
-        panel.invalidate();
-        panel.validate();
+            panel.invalidate();
+            panel.validate();
+        }
+    }
 
-        return panel;
+    private static JPanel getPanel() {
+        if (PANEL == null) {
+            PANEL = new JPanel(new BorderLayout());
+        }
+        return PANEL;
     }
-}
\ No newline at end of file
+}
@@ -29,8 +29,10 @@ import com.frostwire.jlibtorrent.alerts.TorrentFinishedAlert;
 import com.frostwire.logging.Logger;
 import com.frostwire.util.DigestUtils;
 import com.frostwire.util.HttpClient;
+import com.frostwire.util.HttpClient.HttpClientListener;
 import com.frostwire.util.HttpClient.HttpRangeException;
 import com.frostwire.util.HttpClientFactory;
+import com.frostwire.util.StreamingMD5;
 import com.limegroup.gnutella.gui.GUIMediator;
 import com.limegroup.gnutella.gui.I18n;
 import com.limegroup.gnutella.settings.UpdateSettings;
@@ -41,6 +43,8 @@ import org.limewire.util.OSUtils;
 import javax.swing.*;
 import java.io.*;
 import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -127,18 +131,44 @@ public class InstallerUpdater implements Runnable {
         }
         try {
             //new HttpFetcher(new URI(_updateMessage.getInstallerUrl())).save(installerFileLocation);
+            final StreamingMD5 streamingMD5 = new StreamingMD5();
             HttpClient httpClient = HttpClientFactory.newInstance();
+            httpClient.setListener(new HttpClientListener() {
+                @Override
+                public void onError(HttpClient client, Throwable e) {
+                }
+
+                @Override
+                public void onData(HttpClient client, byte[] buffer, int offset, int length) {
+                    streamingMD5.update(buffer, offset, length);
+                }
+
+                @Override
+                public void onComplete(HttpClient client) {
+                }
+
+                @Override
+                public void onCancel(HttpClient client) {
+                }
+
+                @Override
+                public void onHeaders(HttpClient httpClient, Map<String, List<String>> headerFields) {
+                }
+            });
             try {
+                streamingMD5.resume(installerFileLocation, null);
                 httpClient.save(_updateMessage.getInstallerUrl(), installerFileLocation, true);
             } catch (HttpRangeException e) {
                 // recovery in case the server does not support resume
+                streamingMD5.reset();
                 httpClient.save(_updateMessage.getInstallerUrl(), installerFileLocation, false);
             }
             isDownloadingUpdate = false;
             saveMetaData();
             cleanupOldUpdates();
 
-            if (checkIfDownloaded()) {
+            String digested = streamingMD5.getLength() == installerFileLocation.length() ? streamingMD5.getMD5() : null;
+            if (checkIfDownloaded(digested)) {
                 showUpdateMessage();
             }
         } catch (Throwable e) {
@@ -278,6 +308,14 @@ public class InstallerUpdater implements Runnable {
     }
 
     private boolean checkIfDownloaded() {
+        return checkIfDownloaded(null);
+    }
+
+    /**
+     * @param digested the MD5 computed while downloading, null to read the
+     * installer again
+     */
+    private boolean checkIfDownloaded(String digested) {
 
         InstallerMetaData md = getLastInstallerMetaData();
 
@@ -311,7 +349,7 @@ public class InstallerUpdater implements Runnable {
         _executableFile = f;
 
         try {
-            lastMD5 = DigestUtils.getMD5(f);
+            lastMD5 = digested != null ? digested : DigestUtils.getMD5(f);
             return DigestUtils.compareMD5(lastMD5, _updateMessage.getRemoteMD5());
         } catch (Throwable e) {
             LOG.error("Error checking update MD5", e);
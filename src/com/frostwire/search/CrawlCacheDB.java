@@ -19,6 +19,8 @@
 package com.frostwire.search;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.frostwire.logging.Logger;
 import org.apache.commons.io.FileUtils;
@@ -51,7 +53,7 @@ public final class CrawlCacheDB {
 
     private static final String DATABASE_NAME = "crawldb";
 
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 2;
 
     private static final String TABLE_NAME = "CacheData";
 
@@ -106,6 +108,10 @@ public final class CrawlCacheDB {
             values.put(Columns.DATE_ADDED, now);
         }
 
+        if (values.containsKey(Columns.DATE_ACCESSED) == false) {
+            values.put(Columns.DATE_ACCESSED, now);
+        }
+
         SQLiteDatabase db = databaseHelper.getWritableDatabase();
 
         return db.insert(TABLE_NAME, "", values);
@@ -128,15 +134,94 @@ public final class CrawlCacheDB {
         return count;
     }
 
+    /**
+     * Returns the number of rows and the sum of the data sizes.
+     */
+    public long[] countAndSize() {
+        long[] result = new long[] { 0, 0 };
+
+        SQLiteDatabase db = databaseHelper.getReadableDatabase();
+
+        Cursor c = db.rawQueryWithFactory(null, "SELECT COUNT(*), SUM(" + Columns.DATA_SIZE + ") FROM " + TABLE_NAME, null, null);
+
+        if (c != null) {
+            try {
+                if (c.moveToNext()) {
+                    // JDBC column indexes
+                    result[0] = c.getLong(1);
+                    result[1] = c.getLong(2);
+                }
+            } finally {
+                c.close();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Deletes the rows added before the given time, in seconds.
+     */
+    public int deleteOlderThan(long dateAdded) {
+        return delete(Columns.DATE_ADDED + " < ?", new String[] { String.valueOf(dateAdded) });
+    }
+
+    /**
+     * Returns the keys of the least recently accessed rows.
+     */
+    public List<String> getLeastRecentlyAccessedKeys(int count) {
+        List<String> keys = new ArrayList<String>(count);
+
+        SQLiteDatabase db = databaseHelper.getReadableDatabase();
+
+        Cursor c = db.rawQueryWithFactory(null, "SELECT " + Columns.KEY + " FROM " + TABLE_NAME + " ORDER BY " + Columns.DATE_ACCESSED + " ASC LIMIT " + count, null, null);
+
+        if (c != null) {
+            try {
+                while (c.moveToNext()) {
+                    // JDBC column indexes
+                    keys.add(c.getString(1));
+                }
+            } finally {
+                c.close();
+            }
+        }
+
+        return keys;
+    }
+
+    /**
+     * Deletes the rows of the keys.
+     */
+    public int deleteKeys(List<String> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+
+        StringBuilder where = new StringBuilder(Columns.KEY + " IN (");
+        for (int i = 0; i < keys.size(); i++) {
+            where.append(i > 0 ? ",?" : "?");
+        }
+        where.append(")");
+
+        return delete(where.toString(), keys.toArray(new String[keys.size()]));
+    }
+
     public static final class Columns {
 
         private Columns() {
         }
 
         public static final String ID = "id";
+        /**
+         * SHA-1 of the key, in hex.
+         */
         public static final String KEY = "key";
         public static final String DATA = "data";
+        public static final String DATA_SIZE = "dataSize";
+        public static final String COMPRESSED = "compressed";
         public static final String DATE_ADDED = "dateAdded";
+        public static final String DATE_ACCESSED = "dateAccessed";
     }
 
     /**
@@ -161,10 +246,13 @@ public final class CrawlCacheDB {
 
             db.execSQL("SET IGNORECASE TRUE");
 
-            db.execSQL("CREATE TABLE " + TABLE_NAME + " (" + Columns.ID + " INTEGER IDENTITY," + Columns.KEY + " VARCHAR," + Columns.DATA + " BINARY," + Columns.DATE_ADDED + " BIGINT" + ");");
+            db.execSQL("CREATE TABLE " + TABLE_NAME + " (" + Columns.ID + " INTEGER IDENTITY," + Columns.KEY + " CHAR(40) NOT NULL," + Columns.DATA + " BINARY," + Columns.DATA_SIZE + " INTEGER," + Columns.COMPRESSED + " BOOLEAN,"
+                    + Columns.DATE_ADDED + " BIGINT," + Columns.DATE_ACCESSED + " BIGINT" + ");");
 
             db.execSQL("CREATE INDEX idx_" + TABLE_NAME + "_" + Columns.ID + " ON " + TABLE_NAME + " (" + Columns.ID + ")");
-            db.execSQL("CREATE INDEX idx_" + TABLE_NAME + "_" + Columns.KEY + " ON " + TABLE_NAME + " (" + Columns.KEY + ")");
+            db.execSQL("CREATE UNIQUE INDEX idx_" + TABLE_NAME + "_" + Columns.KEY + " ON " + TABLE_NAME + " (" + Columns.KEY + ")");
+            db.execSQL("CREATE INDEX idx_" + TABLE_NAME + "_" + Columns.DATE_ADDED + " ON " + TABLE_NAME + " (" + Columns.DATE_ADDED + ")");
+            db.execSQL("CREATE INDEX idx_" + TABLE_NAME + "_" + Columns.DATE_ACCESSED + " ON " + TABLE_NAME + " (" + Columns.DATE_ACCESSED + ")");
         }
 
         @Override
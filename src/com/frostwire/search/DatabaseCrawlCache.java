@@ -1,7 +1,7 @@
 /*
  * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
  * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
- 
+
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
  * You may obtain a copy of the License at
@@ -17,6 +17,23 @@
 
 package com.frostwire.search;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.limewire.util.ByteUtils;
+
 import com.frostwire.content.ContentValues;
 import com.frostwire.database.Cursor;
 import com.frostwire.logging.Logger;
@@ -24,7 +41,20 @@ import com.frostwire.search.CrawlCacheDB.Columns;
 import com.limegroup.gnutella.settings.SearchSettings;
 
 /**
- * 
+ * Two tier crawl cache: the most recently used entries in memory, all of
+ * them in the database, one row per key.
+ * <p>
+ * The keys are stored as their SHA-1, so the index is fixed width. The
+ * database tier is bounded by number of entries, total size and age, the
+ * least recently accessed entries are evicted first. The values are
+ * compressed when it saves space. The memory tier keeps the date the
+ * entries were added, so they expire at the same age, and drops the
+ * entries evicted from the database.
+ * <p>
+ * The database tier is read and written holding the monitor of the cache,
+ * so the counters and the promotions to memory are consistent with the
+ * rows. Memory hits don't take it.
+ *
  * @author gubatron
  * @author aldenml
  *
@@ -33,50 +63,96 @@ public class DatabaseCrawlCache implements CrawlCache {
 
     private static final Logger LOG = Logger.getLogger(DatabaseCrawlCache.class);
 
-    private CrawlCacheDB db;
+    private static final int MEMORY_MAX_SIZE = 4 * 1024 * 1024; // 4MB
+
+    /**
+     * Bigger values go only to the database.
+     */
+    private static final int MEMORY_MAX_VALUE_SIZE = 256 * 1024;
+
+    private static final long DISK_MAX_ENTRIES = 20000;
+
+    private static final long DISK_MAX_SIZE = 128 * 1024 * 1024; // 128MB
+
+    /**
+     * Max age of the entries, in seconds like the database dates.
+     */
+    private static final long MAX_AGE = 30 * 24 * 60 * 60; // 30 days
+
+    /**
+     * The access date is updated at most once per this time, in seconds,
+     * to avoid a write per hit.
+     */
+    private static final long ACCESS_DATE_RESOLUTION = 60 * 60;
+
+    /**
+     * When evicting, the database is taken down to this fraction of the
+     * limits, so evictions don't run on every put.
+     */
+    private static final double EVICTION_LOW_WATERMARK = 0.9;
+
+    private static final int EVICTION_BATCH_SIZE = 500;
+
+    private static final int COMPRESSION_MIN_SIZE = 1024;
+
+    private final CrawlCacheDB db;
+
+    // memory tier, by hashed key, in access order
+    private final LinkedHashMap<String, Entry> memory;
+    private long memorySize;
+
+    // database tier counters, loaded on first use
+    private boolean countersLoaded;
+    private long diskCount;
+    private long diskSize;
+
+    private final AtomicLong memoryHits;
+    private final AtomicLong diskHits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
 
     public DatabaseCrawlCache() {
         db = CrawlCacheDB.instance();
+
+        memory = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+        memoryHits = new AtomicLong();
+        diskHits = new AtomicLong();
+        misses = new AtomicLong();
+        evictions = new AtomicLong();
     }
 
     @Override
     public byte[] get(String key) {
-        byte[] data = null;
-
-        Cursor c = null;
+        String hash = hash(key);
 
-        try {
-            String[] columns = new String[] { Columns.DATA };
-            String where = Columns.KEY + " = ?";
-            String[] whereArgs = new String[] { key };
-
-            c = db.query(columns, where, whereArgs, null);
+        byte[] data = memoryGet(hash);
+        if (data != null) {
+            memoryHits.incrementAndGet();
+            return data;
+        }
 
-            if (c.moveToNext()) {
-                data = c.getBytes(c.getColumnIndex(Columns.DATA));
-            }
-
-        } catch (Throwable e) {
-            LOG.warn("General failure getting cache data with key: " + key, e);
-        } finally {
-            if (c != null) {
-                c.close();
+        synchronized (this) {
+            Entry entry = diskGet(hash);
+            if (entry != null) {
+                diskHits.incrementAndGet();
+                memoryPut(hash, entry);
+                return entry.data;
             }
         }
 
-        return data;
+        misses.incrementAndGet();
+
+        return null;
     }
 
     @Override
-    public void put(String key, byte[] data) {
+    public synchronized void put(String key, byte[] data) {
         if (SearchSettings.SMART_SEARCH_ENABLED.getValue()) {
             try {
-                ContentValues values = new ContentValues();
-
-                values.put(Columns.KEY, key);
-                values.put(Columns.DATA, data);
-
-                db.insert(values);
+                String hash = hash(key);
+                memoryPut(hash, new Entry(data, now()));
+                diskPut(hash, data);
             } catch (Throwable e) {
                 LOG.warn("Error putting value to crawl cache: " + e.getMessage());
             }
@@ -84,12 +160,11 @@ public class DatabaseCrawlCache implements CrawlCache {
     }
 
     @Override
-    public void remove(String key) {
+    public synchronized void remove(String key) {
         try {
-            String where = Columns.KEY + " = ?";
-            String[] whereArgs = new String[] { key };
-
-            db.delete(where, whereArgs);
+            String hash = hash(key);
+            memoryRemove(hash);
+            diskRemove(hash);
         } catch (Throwable e) {
             LOG.warn("Error deleting value from crawl cache: " + e.getMessage());
         }
@@ -97,39 +172,338 @@ public class DatabaseCrawlCache implements CrawlCache {
 
     @Override
     public synchronized void clear() {
+        synchronized (memory) {
+            memory.clear();
+            memorySize = 0;
+        }
+
         try {
             db.delete("", new String[] {});
+            diskCount = 0;
+            diskSize = 0;
+            countersLoaded = true;
         } catch (Throwable e) {
             LOG.warn("Error deleting crawl cache: " + e.getMessage());
         }
     }
 
+    /**
+     * Number of entries in the database tier, from a counter.
+     */
     @Override
-    public long size() {
-        long size = 0;
+    public synchronized long size() {
+        try {
+            loadCounters();
+        } catch (Exception e) {
+            LOG.warn("Failed to get the size of the crawl cache", e);
+        }
+
+        return diskCount;
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "CrawlCache(entries=" + diskCount + ", bytes=" + diskSize + ", memoryHits=" + memoryHits + ", diskHits=" + diskHits + ", misses=" + misses + ", evictions=" + evictions + ")";
+    }
+
+    private byte[] memoryGet(String hash) {
+        synchronized (memory) {
+            Entry entry = memory.get(hash);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.dateAdded < now() - MAX_AGE) {
+                memoryRemove(hash);
+                return null;
+            }
+            return entry.data;
+        }
+    }
+
+    private void memoryPut(String hash, Entry entry) {
+        if (entry.data == null || entry.data.length > MEMORY_MAX_VALUE_SIZE) {
+            memoryRemove(hash);
+            return;
+        }
+
+        synchronized (memory) {
+            Entry old = memory.put(hash, entry);
+            if (old != null) {
+                memorySize -= old.data.length;
+            }
+            memorySize += entry.data.length;
+
+            Iterator<Map.Entry<String, Entry>> it = memory.entrySet().iterator();
+            while (memorySize > MEMORY_MAX_SIZE && it.hasNext()) {
+                memorySize -= it.next().getValue().data.length;
+                it.remove();
+            }
+        }
+    }
+
+    private void memoryRemove(String hash) {
+        synchronized (memory) {
+            Entry old = memory.remove(hash);
+            if (old != null) {
+                memorySize -= old.data.length;
+            }
+        }
+    }
+
+    private void memoryRemoveOlderThan(long dateAdded) {
+        synchronized (memory) {
+            Iterator<Entry> it = memory.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.dateAdded < dateAdded) {
+                    memorySize -= entry.data.length;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Called holding the monitor, like the writes.
+     */
+    private Entry diskGet(String hash) {
+        Entry entry = null;
 
         Cursor c = null;
 
         try {
-
-            String[] columns = new String[] { Columns.ID };
-            String where = "";
-            String[] whereArgs = new String[] {};
+            String[] columns = new String[] { Columns.DATA, Columns.COMPRESSED, Columns.DATE_ADDED, Columns.DATE_ACCESSED };
+            String where = Columns.KEY + " = ?";
+            String[] whereArgs = new String[] { hash };
 
             c = db.query(columns, where, whereArgs, null);
 
+            if (c.moveToNext()) {
+                long now = now();
+
+                if (c.getLong(c.getColumnIndex(Columns.DATE_ADDED)) < now - MAX_AGE) {
+                    c.close();
+                    c = null;
+                    diskRemove(hash);
+                    return null;
+                }
+
+                byte[] data = c.getBytes(c.getColumnIndex(Columns.DATA));
+                if (c.getBoolean(c.getColumnIndex(Columns.COMPRESSED))) {
+                    data = decompress(data);
+                }
+                entry = new Entry(data, c.getLong(c.getColumnIndex(Columns.DATE_ADDED)));
+
+                if (c.getLong(c.getColumnIndex(Columns.DATE_ACCESSED)) < now - ACCESS_DATE_RESOLUTION) {
+                    ContentValues values = new ContentValues();
+                    values.put(Columns.DATE_ACCESSED, now);
+                    db.update(values, where, whereArgs);
+                }
+            }
+
+        } catch (Throwable e) {
+            LOG.warn("General failure getting cache data with key hash: " + hash, e);
+        } finally {
             if (c != null) {
-                size = c.getCount();
+                c.close();
             }
+        }
 
-        } catch (Exception e) {
-            LOG.warn("Failed to get num of shared files", e);
+        return entry;
+    }
+
+    private synchronized void diskPut(String hash, byte[] data) throws IOException {
+        loadCounters();
+
+        byte[] stored = data;
+        boolean compressed = false;
+        if (data.length >= COMPRESSION_MIN_SIZE) {
+            byte[] deflated = compress(data);
+            if (deflated.length < data.length) {
+                stored = deflated;
+                compressed = true;
+            }
+        }
+
+        long now = now();
+
+        ContentValues values = new ContentValues();
+        values.put(Columns.DATA, stored);
+        values.put(Columns.DATA_SIZE, stored.length);
+        values.put(Columns.COMPRESSED, compressed);
+        values.put(Columns.DATE_ADDED, now);
+        values.put(Columns.DATE_ACCESSED, now);
+
+        // upsert by key, the old size keeps the counters exact
+        int oldSize = diskStoredSize(hash);
+        if (oldSize != -1) {
+            db.update(values, Columns.KEY + " = ?", new String[] { hash });
+            diskSize += stored.length - oldSize;
+        } else {
+            values.put(Columns.KEY, hash);
+            db.insert(values);
+            diskCount++;
+            diskSize += stored.length;
+        }
+
+        if (diskCount > DISK_MAX_ENTRIES || diskSize > DISK_MAX_SIZE) {
+            evict();
+        }
+    }
+
+    private synchronized void diskRemove(String hash) {
+        loadCounters();
+
+        int oldSize = diskStoredSize(hash);
+        if (oldSize != -1) {
+            db.delete(Columns.KEY + " = ?", new String[] { hash });
+            diskCount--;
+            diskSize -= oldSize;
+        }
+    }
+
+    /**
+     * Returns the size of the stored value, or -1 if the key is not in the
+     * database.
+     */
+    private int diskStoredSize(String hash) {
+        Cursor c = null;
+
+        try {
+            c = db.query(new String[] { Columns.DATA_SIZE }, Columns.KEY + " = ?", new String[] { hash }, null);
+            if (c != null && c.moveToNext()) {
+                return c.getInt(c.getColumnIndex(Columns.DATA_SIZE));
+            }
         } finally {
             if (c != null) {
                 c.close();
             }
         }
 
-        return size;
+        return -1;
+    }
+
+    /**
+     * Removes the expired entries and then the least recently accessed
+     * until the database is under the low watermark, from both tiers.
+     */
+    private void evict() {
+        long maxCount = (long) (DISK_MAX_ENTRIES * EVICTION_LOW_WATERMARK);
+        long maxSize = (long) (DISK_MAX_SIZE * EVICTION_LOW_WATERMARK);
+
+        long expired = now() - MAX_AGE;
+        int evicted = Math.max(0, db.deleteOlderThan(expired));
+        memoryRemoveOlderThan(expired);
+        syncCounters();
+
+        while (diskCount > 0 && (diskCount > maxCount || diskSize > maxSize)) {
+            List<String> keys = db.getLeastRecentlyAccessedKeys(EVICTION_BATCH_SIZE);
+            int n = db.deleteKeys(keys);
+            if (n <= 0) {
+                break;
+            }
+            for (String hash : keys) {
+                memoryRemove(hash);
+            }
+            evicted += n;
+            syncCounters();
+        }
+
+        evictions.addAndGet(evicted);
+
+        LOG.info("Evicted " + evicted + " entries, " + this);
+    }
+
+    private void loadCounters() {
+        if (!countersLoaded) {
+            syncCounters();
+            countersLoaded = true;
+
+            // entries that expired while the application was closed, the memory is still empty
+            if (diskCount > 0) {
+                evictions.addAndGet(Math.max(0, db.deleteOlderThan(now() - MAX_AGE)));
+                syncCounters();
+            }
+        }
+    }
+
+    private void syncCounters() {
+        long[] countAndSize = db.countAndSize();
+        diskCount = countAndSize[0];
+        diskSize = countAndSize[1];
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private static String hash(String key) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            return ByteUtils.encodeHex(md.digest(key.getBytes("UTF-8")));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            DeflaterOutputStream out = new DeflaterOutputStream(bytes, deflater);
+            out.write(data);
+            out.close();
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length * 2);
+        InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(data));
+        try {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static final class Entry {
+
+        private final byte[] data;
+
+        /**
+         * In seconds, like the database dates.
+         */
+        private final long dateAdded;
+
+        public Entry(byte[] data, long dateAdded) {
+            this.data = data;
+            this.dateAdded = dateAdded;
+        }
     }
 }
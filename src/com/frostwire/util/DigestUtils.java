@@ -4,13 +4,21 @@ import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 
 public class DigestUtils {
+
+    /**
+     * Buffer for reading files, big enough for the disk to read ahead.
+     */
+    private static final int FILE_BUFFER_SIZE = 1024 * 1024;
+
     public final static boolean checkMD5(File f, String expectedMD5) {
         return checkMD5(f, expectedMD5, null);
     }
@@ -58,11 +66,61 @@ public class DigestUtils {
     }
     
     public final static String getMD5(File f, DigestProgressListener listener) {
-    	try {
-			return getMD5(new FileInputStream(f), f.length(), listener);
-		} catch (FileNotFoundException e) {
-			return null;
-		}
+        try {
+            MessageDigest m = MessageDigest.getInstance("MD5");
+            if (!update(m, f, f.length(), listener)) {
+                return null;
+            }
+            return toHex(m.digest());
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    /**
+     * Feeds the first bytes of the file to the digest, reading the file
+     * through a channel with a large buffer.
+     * 
+     * @return false if the listener stopped it
+     */
+    public final static boolean update(MessageDigest m, File f, long length, DigestProgressListener listener) throws IOException {
+        FileInputStream fis = new FileInputStream(f);
+        try {
+            FileChannel channel = fis.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.max(1, Math.min(FILE_BUFFER_SIZE, length)));
+
+            long total_read = 0;
+            while (total_read < length) {
+                buffer.clear();
+                if (length - total_read < buffer.capacity()) {
+                    buffer.limit((int) (length - total_read));
+                }
+
+                int num_read = channel.read(buffer);
+                if (num_read == -1) {
+                    break;
+                }
+                total_read += num_read;
+
+                buffer.flip();
+                m.update(buffer);
+
+                if (listener != null) {
+                    try {
+                        listener.onProgress((int) (total_read * 100 / length));
+                    } catch (Exception e) {
+                    }
+
+                    if (listener.stopDigesting()) {
+                        return false;
+                    }
+                }
+            }
+
+            return true;
+        } finally {
+            fis.close();
+        }
     }
 
     public final static String getMD5(InputStream is, long streamLength, DigestProgressListener listener) {
@@ -100,16 +158,7 @@ public class DigestUtils {
             in.close();
 
             if (!stopped) {
-                String result = new BigInteger(1, m.digest()).toString(16);
-    
-                //pad with zeros if until it's 32 chars long.
-                if (result.length() < 32) {
-                    int paddingSize = 32 - result.length();
-                    for (int i = 0; i < paddingSize; i++) {
-                        result = "0" + result;
-                    }
-                }
-                return result;
+                return toHex(m.digest());
             } else {
                 return null;
             }
@@ -130,6 +179,22 @@ public class DigestUtils {
 		}
     }
 
+    /**
+     * The digest as a 32 chars hex string, for an MD5.
+     */
+    public final static String toHex(byte[] digest) {
+        String result = new BigInteger(1, digest).toString(16);
+
+        //pad with zeros if until it's 32 chars long.
+        if (result.length() < 32) {
+            int paddingSize = 32 - result.length();
+            for (int i = 0; i < paddingSize; i++) {
+                result = "0" + result;
+            }
+        }
+        return result;
+    }
+
     public interface DigestProgressListener {
         public void onProgress(int progressPercentage);
 
@@ -0,0 +1,106 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.frostwire.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.frostwire.util.DigestUtils.DigestProgressListener;
+
+/**
+ * MD5 of a file computed with the bytes as they are downloaded, so the
+ * file doesn't have to be read again once complete.
+ * <p>
+ * The digest keeps its state between a pause and a resume. When it doesn't
+ * match the bytes on disk, for a download resumed by a new instance, it
+ * reads the part already downloaded once and goes on from there.
+ *
+ * @author gubatron
+ * @author aldenml
+ *
+ */
+public final class StreamingMD5 {
+
+    private MessageDigest digest;
+    private long length;
+
+    public StreamingMD5() {
+        reset();
+    }
+
+    /**
+     * Starts again from an empty file.
+     */
+    public synchronized void reset() {
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        length = 0;
+    }
+
+    /**
+     * Brings the digest up to date with the bytes already in the file,
+     * before appending to it.
+     *
+     * @return false if the listener stopped it
+     */
+    public synchronized boolean resume(File file, DigestProgressListener listener) throws IOException {
+        long fileLength = file.exists() ? file.length() : 0;
+        if (fileLength == length) {
+            return true;
+        }
+
+        reset();
+        if (fileLength > 0) {
+            if (!DigestUtils.update(digest, file, fileLength, listener)) {
+                reset();
+                return false;
+            }
+            length = fileLength;
+        }
+        return true;
+    }
+
+    public synchronized void update(byte[] buffer, int offset, int length) {
+        digest.update(buffer, offset, length);
+        this.length += length;
+    }
+
+    /**
+     * Number of bytes digested.
+     */
+    public synchronized long getLength() {
+        return length;
+    }
+
+    /**
+     * The MD5 of the bytes so far, more can be added after.
+     */
+    public synchronized String getMD5() {
+        try {
+            return DigestUtils.toHex(((MessageDigest) digest.clone()).digest());
+        } catch (CloneNotSupportedException e) {
+            return null;
+        }
+    }
+}
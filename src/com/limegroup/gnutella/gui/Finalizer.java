@@ -2,6 +2,7 @@ package com.limegroup.gnutella.gui;
 
 import com.frostwire.gui.library.LibraryMediator;
 import com.frostwire.gui.player.MediaPlayer;
+import com.frostwire.gui.searchfield.SearchSuggestions;
 import com.frostwire.uxstats.UXStats;
 import com.limegroup.gnutella.gui.bugs.BugManager;
 import com.limegroup.gnutella.gui.notify.NotifyUserProxy;
@@ -85,6 +86,7 @@ final class Finalizer {
         Thread shutdown = new Thread("Shutdown Thread") {
             public void run() {
                 try {
+                    SearchSuggestions.instance().save();
                     BugManager.instance().shutdown();
                     GuiCoreMediator.getLifecycleManager().shutdown(toExecute);
                     System.exit(0);
@@ -1629,7 +1629,7 @@ public final class GUIMediator {
 
     public LibraryMediator getLibraryMediator() {
         if (LIBRARY_MEDIATOR == null) {
-            LIBRARY_MEDIATOR = getMainFrame().getLibraryMediator();
+            LIBRARY_MEDIATOR = LibraryMediator.instance();
         }
         return LIBRARY_MEDIATOR;
     }
@@ -17,6 +17,8 @@ package com.limegroup.gnutella.gui;
 
 import com.frostwire.bittorrent.BTContext;
 import com.frostwire.bittorrent.BTEngine;
+import com.frostwire.gui.tabs.LibraryTab;
+import com.frostwire.gui.tabs.Tab;
 import com.frostwire.logging.Logger;
 import com.frostwire.util.UserAgentGenerator;
 import com.limegroup.gnutella.ExternalControl;
@@ -47,11 +49,15 @@ import java.net.URL;
  */
 public final class Initializer {
 
+    private static final Logger LOG = Logger.getLogger(Initializer.class);
+
     /**
      * True if is running from a system startup.
      */
     private volatile boolean isStartup = false;
 
+    private volatile LimeWireCore limeWireCore;
+
     Initializer() {
     }
 
@@ -61,72 +67,142 @@ public final class Initializer {
      * If this throws any exceptions, then LimeWire was not able to construct
      * properly and must be shut down.
      */
-    void initialize(String args[], Frame awtSplash) throws Throwable {
+    void initialize(final String args[], final Frame awtSplash) throws Throwable {
         // ** THE VERY BEGINNING -- DO NOT ADD THINGS BEFORE THIS **
-        //System.out.println("Initializer.initialize() preinit()");
         preinit();
 
-        // Various startup tasks...
-        //System.out.println("Initializer.initialize() setup callbacks and listeners");
-        setupCallbacksAndListeners();
-        validateStartup(args);
+        // The phases run as soon as the ones they depend on are done,
+        // the ones that don't depend on each other at the same time.
+        StartupTaskGraph graph = new StartupTaskGraph();
 
-        // Creates LimeWire itself.
-        //System.out.println("Initializer.initialize() create Limewire");
-        LimeWireGUI limewireGUI = createLimeWire();
-        LimeWireCore limeWireCore = limewireGUI.getLimeWireCore();
+        // Various startup tasks...
+        StartupTaskGraph.Task callbacks = graph.add("callbacks", new Runnable() {
+            public void run() {
+                setupCallbacksAndListeners();
+                validateStartup(args);
+            }
+        });
 
-        // Various tasks that can be done after core is glued & started.
-        //System.out.println("Initializer.initialize() glue core");
-        glueCore(limeWireCore);
+        // Creates LimeWire itself and glues the core.
+        StartupTaskGraph.Task core = graph.add("create core", new Runnable() {
+            public void run() {
+                limeWireCore = createLimeWire().getLimeWireCore();
+                glueCore(limeWireCore);
+            }
+        }, callbacks);
 
-        // Validate any arguments or properties outside of the LW environment.
-        //System.out.println("Initializer.initialize() run external checks");
-        runExternalChecks(limeWireCore, args);
-        limeWireCore.getExternalControl().startServer();
+        // Validate any arguments or properties outside of the LW environment,
+        // it exits if another FrostWire is running, before anything is shown.
+        StartupTaskGraph.Task external = graph.add("external checks", new Runnable() {
+            public void run() {
+                runExternalChecks(limeWireCore, args);
+                limeWireCore.getExternalControl().startServer();
+            }
+        }, core);
 
         // Starts some system monitoring for deadlocks.
-        //System.out.println("Initializer.initialize() monitor deadlocks");
-        DeadlockSupport.startDeadlockMonitoring();
-        //stopwatch.resetAndLog("Start deadlock monitor");
+        StartupTaskGraph.Task deadlocks = graph.add("deadlock monitor", new Runnable() {
+            public void run() {
+                DeadlockSupport.startDeadlockMonitoring();
+            }
+        }, callbacks);
 
         // Installs properties & resources.
-        //System.out.println("Initializer.initialize() install properties");
-        installProperties();
-        installResources();
+        StartupTaskGraph.Task properties = graph.add("properties", new Runnable() {
+            public void run() {
+                installProperties();
+            }
+        }, callbacks);
+
+        StartupTaskGraph.Task resources = graph.add("resources", new Runnable() {
+            public void run() {
+                installResources();
+            }
+        }, properties);
+
+        // Move from the AWT splash to the Swing splash.
+        StartupTaskGraph.Task splash = graph.add("splash", new Runnable() {
+            public void run() {
+                switchSplashes(awtSplash);
+            }
+        }, resources, external);
+
+        StartupTaskGraph.Task earlyCore = graph.add("early core", new Runnable() {
+            public void run() {
+                startEarlyCore(limeWireCore);
+            }
+        }, external);
 
-        // Construct the SetupManager, which may or may not be shown.
-        final SetupManager setupManager = new SetupManager();
-        //stopwatch.resetAndLog("construct SetupManager");
+        StartupTaskGraph.Task html = graph.add("html engine", new Runnable() {
+            public void run() {
+                initializeHTMLEngine();
+            }
+        }, splash);
 
-        // Move from the AWT splash to the Swing splash & start early core.
-        //System.out.println("Initializer.initialize() switch splashes");
-        switchSplashes(awtSplash);
-        startEarlyCore(setupManager, limeWireCore);
+        StartupTaskGraph.Task bugs = graph.add("bug manager", new Runnable() {
+            public void run() {
+                BugManager.instance();
+            }
+        }, core, properties);
 
-        // Initialize early UI components, display the setup manager (if necessary),
-        // and ensure the save directory is valid.
-        //System.out.println("Initializer.initialize() init early UI");
-        initializeEarlyUI();
-        startSetupManager(setupManager);
-        validateSaveDirectory();
+        // Display the setup manager (if necessary), and ensure the save
+        // directory is valid, the torrent folders depend on it.
+        StartupTaskGraph.Task setup = graph.add("setup manager", new Runnable() {
+            public void run() {
+                startSetupManager(new SetupManager());
+                validateSaveDirectory();
+            }
+        }, splash);
 
-        startBittorrentCore();
+        StartupTaskGraph.Task torrentSettings = graph.add("torrent settings", new Runnable() {
+            public void run() {
+                initTorrentSettings();
+            }
+        }, setup);
+
+        StartupTaskGraph.Task bittorrent = graph.add("bittorrent core", new Runnable() {
+            public void run() {
+                startBittorrentCore();
+            }
+        }, torrentSettings, external);
 
         // Load the UI, system tray & notification handlers,
         // and hide the splash screen & display the UI.
-        //System.out.println("Initializer.initialize() load UI");
-        loadUI();
-        loadTrayAndNotifications();
-        hideSplashAndShowUI();
+        StartupTaskGraph.Task ui = graph.add("ui", new Runnable() {
+            public void run() {
+                loadUI();
+                loadTrayAndNotifications();
+            }
+        }, torrentSettings, html, bugs);
+
+        StartupTaskGraph.Task show = graph.add("show ui", new Runnable() {
+            public void run() {
+                hideSplashAndShowUI();
+            }
+        }, ui, earlyCore);
 
-        // Initialize late tasks, like Icon initialization & install listeners.
-        loadLateTasksForUI();
+        // Initialize late tasks, like Icon initialization & the tabs not
+        // visible yet.
+        StartupTaskGraph.Task late = graph.add("late ui", new Runnable() {
+            public void run() {
+                loadLateTasksForUI();
+            }
+        }, show);
+
+        // Start the core & run any queued control requests, the refresh
+        // timer starts here, so the torrent engine must be up.
+        graph.add("start core", new Runnable() {
+            public void run() {
+                startCore(limeWireCore);
+                runQueuedRequests(limeWireCore);
+            }
+        }, late, bittorrent, deadlocks);
 
-        // Start the core & run any queued control requests, and load DAAP.
-        //System.out.println("Initializer.initialize() start core");
-        startCore(limeWireCore);
-        runQueuedRequests(limeWireCore);
+        try {
+            graph.run();
+        } finally {
+            LOG.info(graph.report());
+        }
 
         // Run any after-init tasks.
         postinit();
@@ -271,7 +347,7 @@ public final class Initializer {
     /**
      * Starts any early core-related functionality.
      */
-    private void startEarlyCore(SetupManager setupManager, LimeWireCore limeWireCore) {
+    private void startEarlyCore(LimeWireCore limeWireCore) {
         // Add this running program to the Windows Firewall Exceptions list
         boolean inFirewallException = FirewallUtils.addToFirewall();
         //stopwatch.resetAndLog("add firewall exception");
@@ -304,9 +380,9 @@ public final class Initializer {
     }
 
     /**
-     * Initializes any early UI tasks, such as HTML loading & the Bug Manager.
+     * Initializes any early UI tasks, such as HTML loading.
      */
-    private void initializeEarlyUI() {
+    private void initializeHTMLEngine() {
         // Load up the HTML engine.
         GUIMediator.setSplashScreenString(I18n.tr("Loading HTML Engine..."));
         //stopwatch.resetAndLog("update splash for HTML engine");
@@ -326,10 +402,6 @@ public final class Initializer {
             }
         });
         //stopwatch.resetAndLog("return from evt queue");
-
-        // Initialize the bug manager
-        BugManager.instance();
-        //stopwatch.resetAndLog("BugManager instance");
     }
 
     /**
@@ -434,6 +506,16 @@ public final class Initializer {
             }
         });
 
+        // The library isn't the first tab shown, built once the window is up.
+        GUIMediator.safeInvokeAndWait(new Runnable() {
+            public void run() {
+                Tab libraryTab = GUIMediator.instance().getMainFrame().getTab(GUIMediator.Tabs.LIBRARY);
+                if (libraryTab instanceof LibraryTab) {
+                    ((LibraryTab) libraryTab).load();
+                }
+            }
+        });
+
         // Touch the I18N stuff to ensure it loads properly.
         GUIMediator.setSplashScreenString(I18n.tr("Loading Internationalization Support..."));
         I18NConvert.instance();
@@ -454,13 +536,18 @@ public final class Initializer {
         limeWireCore.getDownloadManager().loadSavedDownloadsAndScheduleWriting();
     }
 
+    /**
+     * Sets the torrent folders, read by both the UI and the torrent engine.
+     */
+    private void initTorrentSettings() {
+        SharingSettings.initTorrentDataDirSetting();
+        SharingSettings.initTorrentsDirSetting();
+    }
+
     private void startBittorrentCore() {
         // this hack is only due to the remaining vuze TOTorrent code
         URL.setURLStreamHandlerFactory(new AzURLStreamHandlerFactory());
 
-        SharingSettings.initTorrentDataDirSetting();
-        SharingSettings.initTorrentsDirSetting();
-
         File homeDir = new File(CommonUtils.getUserSettingsDir() + File.separator + "libtorrent" + File.separator);
         if (!homeDir.exists()) {
             homeDir.mkdirs();
@@ -42,11 +42,9 @@ import javax.swing.WindowConstants;
 
 import net.miginfocom.swing.MigLayout;
 
-import org.limewire.setting.SettingsGroupManager;
 import org.limewire.util.OSUtils;
 
 import com.frostwire.gui.bittorrent.BTDownloadMediator;
-import com.frostwire.gui.library.LibraryMediator;
 import com.frostwire.gui.tabs.LibraryTab;
 import com.frostwire.gui.tabs.SearchDownloadTab;
 import com.frostwire.gui.tabs.Tab;
@@ -71,12 +69,6 @@ public final class MainFrame {
 
     private BTDownloadMediator BT_DOWNLOAD_MEDIATOR;
 
-    /**
-     * Constant handle to the <tt>LibraryView</tt> class that is
-     * responsible for displaying files in the user's repository.
-     */
-    private LibraryMediator LIBRARY_MEDIATOR;
-
     /**
      * Constant handle to the <tt>OptionsMediator</tt> class that is
      * responsible for displaying customizable options to the user.
@@ -189,7 +181,6 @@ public final class MainFrame {
 
             public void windowClosing(WindowEvent e) {
                 saveWindowState();
-                SettingsGroupManager.instance().save();
                 GUIMediator.close(true);
             }
 
@@ -279,7 +270,7 @@ public final class MainFrame {
         TABBED_PANE.addMouseListener(com.frostwire.gui.tabs.TabRightClickAdapter.getInstance());
 
         TABS.put(GUIMediator.Tabs.SEARCH, new SearchDownloadTab(getBTDownloadMediator()));
-        TABS.put(GUIMediator.Tabs.LIBRARY, new LibraryTab(getLibraryMediator()));
+        TABS.put(GUIMediator.Tabs.LIBRARY, new LibraryTab());
         //TABS.put(GUIMediator.Tabs.CHAT, new ChatTab());
 
         TABBED_PANE.setPreferredSize(new Dimension(10000, 10000));
@@ -315,6 +306,9 @@ public final class MainFrame {
         CardLayout cl = (CardLayout) (TABBED_PANE.getLayout());
 
         Tab t = TABS.get(tab);
+        if (t instanceof LibraryTab) {
+            ((LibraryTab) t).load();
+        }
         cl.show(TABBED_PANE, t.getTitle());
         APPLICATION_HEADER.selectTab(t);
     }
@@ -377,18 +371,6 @@ public final class MainFrame {
         return BT_DOWNLOAD_MEDIATOR;
     }
 
-    /**
-     * Returns a reference to the <tt>LibraryMediator</tt> instance.
-     *
-     * @return a reference to the <tt>LibraryMediator</tt> instance
-     */
-    final com.frostwire.gui.library.LibraryMediator getLibraryMediator() {
-        if (LIBRARY_MEDIATOR == null) {
-            LIBRARY_MEDIATOR = LibraryMediator.instance();
-        }
-        return LIBRARY_MEDIATOR;
-    }
-
     /**
      * Returns a reference to the <tt>StatusLine</tt> instance.
      *
@@ -0,0 +1,197 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.limegroup.gnutella.gui;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.limewire.concurrent.ExecutorsHelper;
+
+/**
+ * Runs the startup phases as soon as the phases they depend on are done,
+ * the independent ones at the same time, and keeps how long each one took.
+ */
+final class StartupTaskGraph {
+
+    private static final int THREADS = 3;
+
+    private final List<Task> tasks = new ArrayList<Task>();
+
+    private long startTime;
+
+    // guarded by this
+    private int finished;
+    private Throwable failure;
+
+    /**
+     * Adds a phase that runs after all the given ones.
+     */
+    Task add(String name, Runnable runnable, Task... dependencies) {
+        Task task = new Task(name, runnable);
+        for (Task dependency : dependencies) {
+            task.pending++;
+            dependency.dependents.add(task);
+        }
+        tasks.add(task);
+        return task;
+    }
+
+    /**
+     * Runs all the phases and returns when they are done.
+     *
+     * @throws Throwable the error of the first phase that failed, no more
+     * phases are started after it
+     */
+    void run() throws Throwable {
+        ExecutorService executor = ExecutorsHelper.newFixedSizeThreadPool(THREADS, "StartupTaskGraph");
+        startTime = System.currentTimeMillis();
+
+        try {
+            synchronized (this) {
+                for (Task task : tasks) {
+                    if (task.pending == 0) {
+                        submit(executor, task);
+                    }
+                }
+
+                while (finished < tasks.size() && failure == null) {
+                    wait();
+                }
+
+                // let the running ones end before reporting
+                while (failure != null && running() > 0) {
+                    wait();
+                }
+
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * One line per phase, in the order they started, with when it started
+     * and how long it took.
+     */
+    synchronized String report() {
+        List<Task> started = new ArrayList<Task>();
+        long end = startTime;
+        for (Task task : tasks) {
+            if (task.start > 0) {
+                started.add(task);
+                end = Math.max(end, task.end);
+            }
+        }
+
+        Collections.sort(started, new Comparator<Task>() {
+            public int compare(Task a, Task b) {
+                long d = a.start - b.start;
+                return d < 0 ? -1 : (d > 0 ? 1 : 0);
+            }
+        });
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("Startup took ").append(end - startTime).append("ms\n");
+        for (Task task : started) {
+            sb.append(String.format("  %-24s +%5dms %5dms  %s%n", task.name, task.start - startTime, task.end - task.start, task.thread));
+        }
+        return sb.toString();
+    }
+
+    private void submit(final ExecutorService executor, final Task task) {
+        task.submitted = true;
+        executor.execute(new Runnable() {
+            public void run() {
+                execute(executor, task);
+            }
+        });
+    }
+
+    private void execute(ExecutorService executor, Task task) {
+        synchronized (this) {
+            task.start = System.currentTimeMillis();
+            task.thread = Thread.currentThread().getName();
+
+            if (failure != null) {
+                // submitted before another phase failed
+                task.end = task.start;
+                finished++;
+                notifyAll();
+                return;
+            }
+        }
+
+        Throwable error = null;
+        try {
+            task.runnable.run();
+        } catch (Throwable e) {
+            error = e;
+        }
+
+        synchronized (this) {
+            task.end = System.currentTimeMillis();
+            finished++;
+
+            if (error != null) {
+                if (failure == null) {
+                    failure = error;
+                }
+            } else if (failure == null) {
+                for (Task dependent : task.dependents) {
+                    if (--dependent.pending == 0) {
+                        submit(executor, dependent);
+                    }
+                }
+            }
+
+            notifyAll();
+        }
+    }
+
+    private int running() {
+        int n = 0;
+        for (Task task : tasks) {
+            if (task.submitted && task.end == 0) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    static final class Task {
+
+        private final String name;
+        private final Runnable runnable;
+        private final List<Task> dependents = new ArrayList<Task>();
+
+        private int pending;
+        private boolean submitted;
+        private long start;
+        private long end;
+        private String thread;
+
+        private Task(String name, Runnable runnable) {
+            this.name = name;
+            this.runnable = runnable;
+        }
+    }
+}
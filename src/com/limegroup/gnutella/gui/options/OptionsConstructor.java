@@ -34,7 +34,6 @@ import javax.swing.JDialog;
 import javax.swing.WindowConstants;
 
 import org.limewire.setting.IntSetting;
-import org.limewire.setting.SettingsGroupManager;
 import org.limewire.util.CommonUtils;
 import org.limewire.util.OSUtils;
 
@@ -209,7 +208,6 @@ public final class OptionsConstructor {
                         answer = GUIMediator.showYesNoCancelMessage(I18n.tr("You have made changes to some of FrostWire's settings. Would you like to save these changes?"));
                         if (answer == DialogOption.YES) {
                             OptionsMediator.instance().applyOptions();
-                            SettingsGroupManager.instance().save();
                         }
                     }
                     if (answer != DialogOption.CANCEL) {
@@ -157,7 +157,7 @@ public final class OptionsMediator {
      */
     public final void applyOptions() throws IOException {
         _paneManager.applyOptions();
-        SettingsGroupManager.instance().save();
+        SettingsGroupManager.instance().saveLater();
     }
 
     /**
@@ -18,9 +18,14 @@
 
 package com.limegroup.gnutella.gui.search;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import com.frostwire.gui.filters.TableLineFilter;
 import com.limegroup.gnutella.gui.GUIUtils;
 import com.limegroup.gnutella.gui.LabeledTextField;
+import com.limegroup.gnutella.gui.search.TableRowFilteredModel.FilterChange;
 
 /**
  * 
@@ -45,6 +50,7 @@ public final class GeneralResultFilter implements TableLineFilter<SearchResultDa
     private int _maxSize;
 
     private String _keywords;
+    private String[] _keywordTokens;
 
     public GeneralResultFilter(SearchResultMediator rp, LabeledRangeSlider rangeSliderSeeds, LabeledRangeSlider rangeSliderSize, LabeledTextField keywordTextField) {
         _rp = rp;
@@ -59,6 +65,7 @@ public final class GeneralResultFilter implements TableLineFilter<SearchResultDa
         _maxSeeds = Integer.MAX_VALUE;
         _minSize = 0;
         _maxSize = Integer.MAX_VALUE;
+        _keywordTokens = new String[0];
     }
 
     public boolean allow(SearchResultDataLine node) {
@@ -131,43 +138,18 @@ public final class GeneralResultFilter implements TableLineFilter<SearchResultDa
             inSizeRange = size == _maxResultsSize;
         }
 
-        String sourceName = getSourceName(node);
-        boolean hasKeywords = hasKeywords(node.getDisplayName() + " " + node.getExtension() + " " + sourceName);
-        return inSeedRange && inSizeRange && hasKeywords;
-    }
-
-    private String getSourceName(SearchResultDataLine node) {
-        SourceHolder sourceHolder = (SourceHolder) node.getValueAt(SearchTableColumns.SOURCE_IDX);
-        String sourceName = "";
-        if (sourceHolder != null) {
-            sourceName = sourceHolder.getSourceName();
-        }
-        return sourceName;
+        return inSeedRange && inSizeRange && hasKeywords(node.getFilterText());
     }
 
-    private boolean hasKeywords(String filename) {
-
-        String keywordText = _keywords;
-
-        if (keywordText == null || keywordText.trim().length() == 0) {
-            return true;
-        }
-
-        //if it's just one keyword.
-        String[] keywords = keywordText.split(" ");
-
-        if (keywords.length == 1) {
-            return filename.toLowerCase().contains(keywordText.toLowerCase());
-        } else {
-            String fname = filename.toLowerCase();
-            //all keywords must be in the file name.
-            for (String k : keywords) {
-                if (!fname.contains(k.toLowerCase())) {
-                    return false;
-                }
+    /**
+     * All keywords must be in the text, which is already in lower case.
+     */
+    private boolean hasKeywords(String text) {
+        for (String k : _keywordTokens) {
+            if (!text.contains(k)) {
+                return false;
             }
         }
-
         return true;
     }
 
@@ -204,23 +186,64 @@ public final class GeneralResultFilter implements TableLineFilter<SearchResultDa
     }
 
     public void setRangeSeeds(int min, int max) {
+        FilterChange change = rangeChange(_minSeeds, _maxSeeds, min, max);
         _minSeeds = min;
         _maxSeeds = max;
-        _rp.filterChanged(this, 1);
+        _rp.filterChanged(this, 1, change);
     }
 
     public void setRangeSize(int min, int max) {
+        FilterChange change = rangeChange(_minSize, _maxSize, min, max);
         _minSize = min;
         _maxSize = max;
-        _rp.filterChanged(this, 1);
+        _rp.filterChanged(this, 1, change);
     }
 
     public void updateKeywordFiltering(String text) {
+        String[] tokens = tokenizeKeywords(text);
+        FilterChange change = keywordsChange(_keywordTokens, tokens);
         _keywords = new String(text);
-        _rp.filterChanged(this, 1);
+        _keywordTokens = tokens;
+        _rp.filterChanged(this, 1, change);
     }
 
     public String getKeywordFilterText() {
         return _keywords;
     }
+
+    private static FilterChange rangeChange(int oldMin, int oldMax, int min, int max) {
+        if (min >= oldMin && max <= oldMax) {
+            return FilterChange.NARROWED;
+        } else if (min <= oldMin && max >= oldMax) {
+            return FilterChange.WIDENED;
+        } else {
+            return FilterChange.CHANGED;
+        }
+    }
+
+    /**
+     * More keywords allow fewer lines, since all of them must be found.
+     */
+    private static FilterChange keywordsChange(String[] oldTokens, String[] tokens) {
+        List<String> oldList = Arrays.asList(oldTokens);
+        List<String> list = Arrays.asList(tokens);
+
+        if (list.containsAll(oldList)) {
+            return FilterChange.NARROWED;
+        } else if (oldList.containsAll(list)) {
+            return FilterChange.WIDENED;
+        } else {
+            return FilterChange.CHANGED;
+        }
+    }
+
+    private static String[] tokenizeKeywords(String text) {
+        List<String> tokens = new ArrayList<String>();
+        for (String k : text.toLowerCase().split(" ")) {
+            if (k.length() > 0) {
+                tokens.add(k);
+            }
+        }
+        return tokens.toArray(new String[tokens.size()]);
+    }
 }
\ No newline at end of file
@@ -18,6 +18,9 @@ package com.limegroup.gnutella.gui.search;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.limewire.collection.IndexedTreeList;
+import org.limewire.collection.IndexedTreeList.Node;
+
 import com.limegroup.gnutella.gui.tables.AbstractTableMediator;
 import com.limegroup.gnutella.gui.tables.BasicDataLineModel;
 import com.limegroup.gnutella.gui.tables.LimeTableColumn;
@@ -29,6 +32,9 @@ import com.limegroup.gnutella.settings.SearchSettings;
  * Ensures that if new lines are added and they are similiar to old lines,
  * that the new lines are added as extra information to the existing lines,
  * instead of as brand new lines.
+ *
+ * The lines are kept in an order statistic tree, sorted inserts and row
+ * lookups by SHA1 are O(log n) and no index remapping is needed.
  */
 class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, UISearchResult> {
 
@@ -43,9 +49,15 @@ class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, UISearch
     protected final SearchTableColumns COLUMNS = new SearchTableColumns();
 
     /**
-     * HashMap for quick access to indexes based on SHA1 info.
+     * The lines, this is the same list as _list.
+     */
+    private final IndexedTreeList<SearchResultDataLine> _tree;
+
+    /**
+     * HashMap for quick access to the tree nodes based on SHA1 info, the
+     * row of a node is resolved with the tree.
      */
-    private final Map<String, Integer> _indexes = new HashMap<String, Integer>();
+    private final Map<String, Node<SearchResultDataLine>> _indexes = new HashMap<String, Node<SearchResultDataLine>>();
 
     private int _numResults;
 
@@ -54,6 +66,8 @@ class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, UISearch
      */
     ResultPanelModel() {
         super(SearchResultDataLine.class);
+        _tree = new IndexedTreeList<SearchResultDataLine>();
+        _list = _tree;
     }
 
     /**
@@ -104,12 +118,12 @@ class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, UISearch
      * @param row  the index of the row to remove.
      */
     public void remove(int row) {
-        String sha1 = getHash(row);
-        if (sha1 != null)
+        Node<SearchResultDataLine> node = _tree.getNode(row);
+        String sha1 = node.getValue().getHash();
+        if (sha1 != null && _indexes.get(sha1) == node)
             _indexes.remove(sha1);
         super.remove(row);
         _numResults -= 1;
-        remapIndexes(row);
     }
 
     /**
@@ -139,14 +153,50 @@ class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, UISearch
      */
     public int add(SearchResultDataLine tl, int row) {
         _numResults += 1;
+        int addedAt = super.add(tl, row);
         String sha1 = tl.getHash();
         if (sha1 != null)
-            _indexes.put(sha1, new Integer(row));
-        int addedAt = super.add(tl, row);
-        remapIndexes(addedAt + 1);
+            _indexes.put(sha1, _tree.getNode(addedAt));
         return addedAt;
     }
 
+    /**
+     * Removes the line without firing table events, for bulk changes
+     * followed by a single table event.
+     */
+    protected SearchResultDataLine removeQuietly(int row) {
+        Node<SearchResultDataLine> node = _tree.getNode(row);
+        String sha1 = node.getValue().getHash();
+        if (sha1 != null && _indexes.get(sha1) == node)
+            _indexes.remove(sha1);
+        _tree.remove(row);
+        _numResults -= 1;
+        return node.getValue();
+    }
+
+    /**
+     * Adds the line in its sorted position, or at the end if the table
+     * is not sorted, without firing table events.
+     */
+    protected void addQuietly(SearchResultDataLine tl) {
+        int row = isSorted() ? getSortedPosition(tl) : getRowCount();
+        Node<SearchResultDataLine> node = _tree.addNode(row, tl);
+        String sha1 = tl.getHash();
+        if (sha1 != null)
+            _indexes.put(sha1, node);
+        _numResults += 1;
+    }
+
+    /**
+     * Binary search directly in the tree.
+     */
+    public int getSortedPosition(SearchResultDataLine dl) {
+        int row = _tree.binarySearch(dl, this);
+        if (row < 0)
+            row = -(row + 1);
+        return row;
+    }
+
     /**
      * Gets the row this DataLine is at.
      */
@@ -159,13 +209,11 @@ class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, UISearch
     }
 
     /** 
-     * Overrides the default sort to maintain the indexes HashMap,
-     * according to the current sort column and order.
+     * Overrides the default sort to move the tree nodes, the indexes
+     * HashMap remains valid.
      */
     protected void doResort() {
-        super.doResort();
-        _indexes.clear(); // it's easier & quicker to just clear & re-input
-        remapIndexes(0);
+        _tree.sort(this);
     }
 
     /**
@@ -184,36 +232,6 @@ class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, UISearch
         super.clear();
     }
 
-    /**
-     * Remaps the indexes, starting at 'start' and going to the end of
-     * the list.  This is needed for when rows are added to the middle of
-     * the list to maintain the correct rows per objects.
-     */
-    private void remapIndexes(int start) {
-        remapIndexes(start, getRowCount());
-    }
-
-    /**
-     * Remaps the indexes, starting at 'start' and going to 'end'.
-     * This is useful for when we move a row from end to start or vice versa.
-     */
-    private void remapIndexes(int start, int end) {
-        for (int i = start; i < end; i++) {
-            String sha1 = getHash(i);
-            if (sha1 != null)
-                _indexes.put(sha1, new Integer(i));
-        }
-    }
-
-    /**
-     * Gets the SHA1 URN for a row.
-     */
-    private String getHash(int idx) {
-        if (idx >= getRowCount())
-            return null;
-        return get(idx).getHash();
-    }
-
     /** Compares the spam difference between the two rows. */
     private int compareSpam(SearchResultDataLine a, SearchResultDataLine b) {
         if (SearchSettings.moveJunkToBottom()) {
@@ -249,11 +267,11 @@ class ResultPanelModel extends BasicDataLineModel<SearchResultDataLine, UISearch
      * Fast match -- lookup in the table.
      */
     private int fastMatch(String sha1) {
-        Integer idx = _indexes.get(sha1);
-        if (idx == null)
+        Node<SearchResultDataLine> node = _indexes.get(sha1);
+        if (node == null)
             return -1;
         else
-            return idx.intValue();
+            return _tree.indexOf(node);
     }
 
     public int getTotalResults() {
@@ -16,16 +16,10 @@
 package com.limegroup.gnutella.gui.search;
 
 import java.io.File;
-import java.text.Normalizer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Locale;
-import java.util.Set;
 
 import javax.swing.JComponent;
 import javax.swing.SwingUtilities;
@@ -37,7 +31,6 @@ import com.frostwire.search.*;
 import org.limewire.util.I18NConvert;
 import org.limewire.util.StringUtils;
 
-import com.frostwire.gui.filters.SearchFilter;
 import com.frostwire.gui.filters.SearchFilterFactory;
 import com.frostwire.gui.filters.SearchFilterFactoryImpl;
 import com.frostwire.search.archiveorg.ArchiveorgCrawledSearchResult;
@@ -103,6 +96,8 @@ public final class SearchMediator {
 
     private final SearchManager manager;
 
+    private final SearchResultsAccumulator accumulator;
+
     /**
      * This instance handles the display of all search results.
      * TODO: Changed to package-protected for testing to add special results
@@ -145,6 +140,8 @@ public final class SearchMediator {
 
         CrawlPagedWebSearchPerformer.setMagnetDownloader(new LibTorrentMagnetDownloader());
 
+        this.accumulator = new SearchResultsAccumulator();
+
         this.manager = new SearchManagerImpl(SEARCH_MANAGER_NUM_THREADS);
         this.manager.registerListener(new ManagerListener());
     }
@@ -256,19 +253,19 @@ public final class SearchMediator {
         }
     }
 
-    private List<SearchResult> filter(SearchPerformer performer, List<SearchResult> results, List<String> searchTokens) {
+    private List<SearchResult> filter(SearchPerformer performer, List<SearchResult> results, SearchTokenMatcher matcher) {
         List<SearchResult> list;
 
-        if (searchTokens == null || searchTokens.isEmpty()) {
+        if (matcher == null) {
             list = Collections.emptyList();
         } else {
-            list = filter(results, searchTokens);
+            list = filter(results, matcher);
         }
 
         return list;
     }
 
-    private List<SearchResult> filter(List<? extends SearchResult> results, List<String> searchTokens) {
+    private List<SearchResult> filter(List<? extends SearchResult> results, SearchTokenMatcher matcher) {
         List<SearchResult> list = new LinkedList<SearchResult>();
 
         try {
@@ -277,7 +274,7 @@ public final class SearchMediator {
                     // special case for youtube
                     if (sr instanceof YouTubeCrawledSearchResult) {
                         list.add(sr);
-                    } else if (filter(new LinkedList<String>(searchTokens), sr)) {
+                    } else if (filter(matcher, sr)) {
                         list.add(sr);
                     }
                 } else {
@@ -292,71 +289,25 @@ public final class SearchMediator {
         return list;
     }
 
-    private boolean filter(List<String> tokens, SearchResult sr) {
-        StringBuilder sb = new StringBuilder();
-
-        sb.append(sr.getDisplayName());
+    private boolean filter(SearchTokenMatcher matcher, SearchResult sr) {
+        String parentName = null;
         if (sr instanceof CrawledSearchResult) {
-            sb.append(((CrawledSearchResult) sr).getParent().getDisplayName());
+            parentName = ((CrawledSearchResult) sr).getParent().getDisplayName();
         }
 
+        String filename = null;
         if (sr instanceof FileSearchResult) {
-            sb.append(((FileSearchResult) sr).getFilename());
-        }
-
-        String str = sanitize(sb.toString());
-        str = normalize(str);
-
-        Iterator<String> it = tokens.iterator();
-        while (it.hasNext()) {
-            String token = it.next();
-            if (str.contains(token)) {
-                it.remove();
-            }
+            filename = ((FileSearchResult) sr).getFilename();
         }
 
-        return tokens.isEmpty();
-    }
-
-    private static String stripHtml(String str) {
-        str = str.replaceAll("\\<.*?>", "");
-        str = str.replaceAll("\\&.*?\\;", "");
-        return str;
-    }
-
-    private String sanitize(String str) {
-        str = stripHtml(str);
-        str = str.replaceAll("\\.torrent|www\\.|\\.com|\\.net|[\\\\\\/%_;\\-\\.\\(\\)\\[\\]\\n\\rÐ&~{}\\*@\\^'=!,¡|#ÀÁ]", " ");
-        str = StringUtils.removeDoubleSpaces(str);
-
-        return str.trim();
+        return matcher.matches(sr.getDisplayName(), parentName, filename);
     }
 
+    /**
+     * The results are folded the same way by the matcher.
+     */
     private List<String> tokenize(String keywords) {
-        keywords = sanitize(keywords);
-
-        Set<String> tokens = new HashSet<String>(Arrays.asList(keywords.toLowerCase(Locale.US).split(" ")));
-
-        return new ArrayList<String>(normalizeTokens(tokens));
-    }
-
-    private Set<String> normalizeTokens(Set<String> tokens) {
-        Set<String> normalizedTokens = new HashSet<String>();
-
-        for (String token : tokens) {
-            String norm = normalize(token);
-            normalizedTokens.add(norm);
-        }
-
-        return normalizedTokens;
-    }
-
-    private String normalize(String token) {
-        String norm = Normalizer.normalize(token, Normalizer.Form.NFKD);
-        norm = norm.replaceAll("\\p{InCombiningDiacriticalMarks}+", "");
-        norm = norm.toLowerCase(Locale.US);
-
-        return norm;
+        return SearchTokenMatcher.tokenize(keywords);
     }
 
     private static void updateSearchIcon(final long token, final boolean active) {
@@ -545,7 +496,7 @@ public final class SearchMediator {
 
                 if (rp != null && !rp.isStopped()) {
                     @SuppressWarnings("unchecked")
-                    List<SearchResult> filtered = filter(performer, (List<SearchResult>) results, rp.getSearchTokens());
+                    List<SearchResult> filtered = filter(performer, (List<SearchResult>) results, rp.getSearchMatcher());
 
                     if (filtered != null && !filtered.isEmpty()) {
 
@@ -554,32 +505,21 @@ public final class SearchMediator {
                             return;
                         }
 
-                        final List<UISearchResult> uiResults = convertResults(filtered, se, rp.getQuery());
-
-                        GUIMediator.safeInvokeAndWait(new Runnable() {
-                            public void run() {
-                                try {
-                                    SearchFilter filter = getSearchFilterFactory().createFilter();
-                                    for (UISearchResult sr : uiResults) {
-                                        if (filter.allow(sr)) {
-                                            getSearchResultDisplayer().addQueryResult(token, sr, rp);
-                                        }
-                                    }
-                                } catch (Exception e) {
-                                    e.printStackTrace();
-                                }
-                            }
-
-                        });
+                        accumulator.add(token, convertResults(filtered, se, rp.getQuery()));
                     }
                 }
             }
         }
 
         @Override
-        public void onFinished(long token) {
+        public void onFinished(final long token) {
             //System.out.println("Finished: " + token);
-            SearchMediator.this.onFinished(token);
+            GUIMediator.safeInvokeLater(new Runnable() {
+                public void run() {
+                    accumulator.finish(token);
+                    SearchMediator.this.onFinished(token);
+                }
+            });
         }
     }
 
@@ -64,6 +64,7 @@ public final class SearchResultDataLine extends AbstractDataLine<UISearchResult>
     private Icon icon;
     private SizeHolder size;
     private SourceHolder source;
+    private String filterText;
 
     public SearchResultDataLine(SearchTableColumns stc) {
         COLUMNS = stc;
@@ -84,6 +85,7 @@ public final class SearchResultDataLine extends AbstractDataLine<UISearchResult>
         icon = getIcon();
         size = new SizeHolder(getSize());
         source = new SourceHolder(RESULT);
+        filterText = (getDisplayName() + " " + getExtension() + " " + source.getSourceName()).toLowerCase();
     }
 
     /**
@@ -288,6 +290,14 @@ public final class SearchResultDataLine extends AbstractDataLine<UISearchResult>
         return RESULT.getHash();
     }
 
+    /**
+     * Lower case text matched by the keywords filter, computed once
+     * per line.
+     */
+    String getFilterText() {
+        return filterText;
+    }
+
     public SearchEngine getSearchEngine() {
         return RESULT.getSearchEngine();
     }
@@ -365,6 +365,28 @@ public final class SearchResultDisplayer implements RefreshListener {
         tabbedPane.setTitleAt(resultPanelIndex, titleOf(rp));
     }
 
+    /**
+     * Bulk version of {@link #addQueryResult(long, UISearchResult, SearchResultMediator)},
+     * the table is resorted and the tab title updated only once.
+     */
+    void addQueryResults(long token, List<UISearchResult> lines, SearchResultMediator rp) {
+        if (rp.isStopped()) {
+            return;
+        }
+
+        if (!rp.matches(token))
+            throw new IllegalArgumentException("guids don't match");
+
+        rp.addAll(lines);
+
+        int resultPanelIndex = entries.indexOf(rp);
+
+        if (resultPanelIndex == -1)
+            return;
+
+        tabbedPane.setTitleAt(resultPanelIndex, titleOf(rp));
+    }
+
     void updateSearchIcon(SearchResultMediator rp, boolean active) {
         int resultPanelIndex = -1;
         // Search for the ResultPanel to verify it exists.
@@ -104,6 +104,11 @@ public final class SearchResultMediator extends AbstractTableMediator<TableRowFi
 
     private final List<String> searchTokens;
 
+    /**
+     * Compiled once from the search tokens, null if there are no tokens.
+     */
+    private final SearchTokenMatcher searchMatcher;
+
     /**
      * The CompositeFilter for this ResultPanel.
      */
@@ -150,6 +155,7 @@ public final class SearchResultMediator extends AbstractTableMediator<TableRowFi
         FILTER = null;
         this.token = 0;
         this.searchTokens = null;
+        this.searchMatcher = null;
         setButtonEnabled(SearchButtons.TORRENT_DETAILS_BUTTON_INDEX, false);
         // disable dnd for overlay panel
         TABLE.setDragEnabled(false);
@@ -169,6 +175,7 @@ public final class SearchResultMediator extends AbstractTableMediator<TableRowFi
         SEARCH_INFO = info;
         this.token = token;
         this.searchTokens = searchTokens;
+        this.searchMatcher = searchTokens != null && !searchTokens.isEmpty() ? new SearchTokenMatcher(searchTokens) : null;
         setupRealTable();
         resetFilters();
     }
@@ -517,6 +524,14 @@ public final class SearchResultMediator extends AbstractTableMediator<TableRowFi
      * the first still-visible one.
      */
     boolean filterChanged(TableLineFilter<SearchResultDataLine> filter, int depth) {
+        return filterChanged(filter, depth, TableRowFilteredModel.FilterChange.CHANGED);
+    }
+
+    /**
+     * Notification that a filter on this panel has changed, the kind of
+     * change tells the data model which lines to check again.
+     */
+    boolean filterChanged(TableLineFilter<SearchResultDataLine> filter, int depth, TableRowFilteredModel.FilterChange change) {
         FILTER.setFilter(depth, filter);
         //if(!FILTER.setFilter(depth, filter))
         //    return false;
@@ -534,7 +549,7 @@ public final class SearchResultMediator extends AbstractTableMediator<TableRowFi
         }
 
         // change the table.
-        DATA_MODEL.filtersChanged();
+        DATA_MODEL.filtersChanged(change);
 
         // reselect & move the viewpoint to the first still visible row.
         for (int i = 0; i < rows.length; i++) {
@@ -867,6 +882,10 @@ public final class SearchResultMediator extends AbstractTableMediator<TableRowFi
         return searchTokens;
     }
 
+    SearchTokenMatcher getSearchMatcher() {
+        return searchMatcher;
+    }
+
     public void updateFiltersPanel() {
         schemaBox.applyFilters();
         searchOptionsPanel.updateFiltersPanel();
@@ -884,4 +903,13 @@ public final class SearchResultMediator extends AbstractTableMediator<TableRowFi
 
         schemaBox.updateCounters(o);
     }
+
+    @Override
+    public void addAll(List<? extends UISearchResult> objs) {
+        super.addAll(objs);
+
+        for (UISearchResult o : objs) {
+            schemaBox.updateCounters(o);
+        }
+    }
 }
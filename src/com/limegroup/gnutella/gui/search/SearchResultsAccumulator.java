@@ -0,0 +1,154 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.limegroup.gnutella.gui.search;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.Timer;
+
+import com.frostwire.gui.filters.SearchFilter;
+
+/**
+ * Collects the results of every search performer without blocking and
+ * delivers them to the result panels in the event dispatch thread, at most
+ * once every {@link #FLUSH_INTERVAL} milliseconds, with one bulk insert
+ * and one resort per panel.
+ */
+final class SearchResultsAccumulator implements ActionListener {
+
+    /**
+     * Minimum time between two flushes, in milliseconds.
+     */
+    private static final int FLUSH_INTERVAL = 150;
+
+    /**
+     * Max number of results added to a panel in a single flush, the rest
+     * wait for the next one to keep the UI responsive.
+     */
+    private static final int MAX_FLUSH_SIZE = 1000;
+
+    private final ConcurrentMap<Long, Queue<UISearchResult>> pending;
+    private final AtomicBoolean scheduled;
+    private final Timer timer;
+
+    SearchResultsAccumulator() {
+        this.pending = new ConcurrentHashMap<Long, Queue<UISearchResult>>();
+        this.scheduled = new AtomicBoolean(false);
+        this.timer = new Timer(FLUSH_INTERVAL, this);
+        this.timer.setRepeats(false);
+    }
+
+    /**
+     * Safe to call from any thread, it never waits for the UI.
+     */
+    void add(long token, List<UISearchResult> results) {
+        Queue<UISearchResult> queue = pending.get(token);
+        if (queue == null) {
+            queue = new ConcurrentLinkedQueue<UISearchResult>();
+            Queue<UISearchResult> existing = pending.putIfAbsent(token, queue);
+            if (existing != null) {
+                queue = existing;
+            }
+        }
+
+        queue.addAll(results);
+
+        schedule();
+    }
+
+    /**
+     * Delivers everything pending for the search and forgets it. Must be
+     * called in the event dispatch thread.
+     */
+    void finish(long token) {
+        while (flush(token, Integer.MAX_VALUE)) {
+        }
+        pending.remove(token);
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        scheduled.set(false);
+
+        boolean more = false;
+        for (Long token : pending.keySet()) {
+            more |= flush(token, MAX_FLUSH_SIZE);
+        }
+
+        if (more) {
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            timer.restart();
+        }
+    }
+
+    /**
+     * Returns true if there are still results waiting for the search.
+     */
+    private boolean flush(long token, int max) {
+        Queue<UISearchResult> queue = pending.get(token);
+        if (queue == null) {
+            return false;
+        }
+
+        List<UISearchResult> results = new ArrayList<UISearchResult>();
+        UISearchResult sr;
+        while (results.size() < max && (sr = queue.poll()) != null) {
+            results.add(sr);
+        }
+
+        if (results.isEmpty()) {
+            return false;
+        }
+
+        SearchResultMediator rp = SearchMediator.getResultPanelForGUID(token);
+        if (rp == null || rp.isStopped()) {
+            pending.remove(token);
+            return false;
+        }
+
+        try {
+            SearchFilter filter = SearchMediator.getSearchFilterFactory().createFilter();
+
+            List<UISearchResult> allowed = new ArrayList<UISearchResult>(results.size());
+            for (UISearchResult r : results) {
+                if (filter.allow(r)) {
+                    allowed.add(r);
+                }
+            }
+
+            if (!allowed.isEmpty()) {
+                SearchMediator.getSearchResultDisplayer().addQueryResults(token, allowed, rp);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return !queue.isEmpty();
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.limegroup.gnutella.gui.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Checks that a search result contains all the tokens of the query.
+ * <p>
+ * It is compiled once per search into an Aho-Corasick automaton over the
+ * tokens. The text of a result is read in a single pass: html tags and
+ * entities are skipped, the separators become spaces and every other
+ * character is folded to lower case without diacritics, the same way
+ * {@link #tokenize(String)} folds the query. Only the folding of the non
+ * ascii characters is computed, once per character, after that the text
+ * is matched without allocations.
+ * Safe to use from several threads.
+ */
+public final class SearchTokenMatcher {
+
+    /**
+     * Literals replaced by a space before the separator characters.
+     */
+    private static final String[] LITERALS = { ".torrent", "www.", ".com", ".net" };
+
+    private static final String SEPARATORS = "\\/%_;-.()[]\n\r\u00D0&~{}*@^'=!,\u00A1|#\u00C0\u00C1";
+
+    private static final boolean[] ASCII_SEPARATORS = new boolean[0x80];
+
+    static {
+        for (int i = 0; i < SEPARATORS.length(); i++) {
+            char c = SEPARATORS.charAt(i);
+            if (c < 0x80) {
+                ASCII_SEPARATORS[c] = true;
+            }
+        }
+    }
+
+    /**
+     * The folding of the non ascii characters, in blocks of 256 filled as
+     * they are seen. Racing threads compute the same strings.
+     */
+    private static final String[][] FOLDED = new String[256][];
+
+    private final int numTokens;
+    private final int numEmptyTokens;
+
+    // automaton, node 0 is the root
+    private final List<char[]> keys;
+    private final List<int[]> next;
+    private int[] fail;
+    private int[][] outputs;
+
+    /**
+     * @param tokens as returned by {@link #tokenize(String)}
+     */
+    public SearchTokenMatcher(List<String> tokens) {
+        this.keys = new ArrayList<char[]>();
+        this.next = new ArrayList<int[]>();
+
+        int empty = 0;
+        List<List<Integer>> out = new ArrayList<List<Integer>>();
+        newNode(out);
+
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (token.length() == 0) {
+                empty++;
+                continue;
+            }
+
+            int node = 0;
+            for (int j = 0; j < token.length(); j++) {
+                int n = child(node, token.charAt(j));
+                if (n == -1) {
+                    n = newNode(out);
+                    addChild(node, token.charAt(j), n);
+                }
+                node = n;
+            }
+            out.get(node).add(i);
+        }
+
+        this.numTokens = tokens.size();
+        this.numEmptyTokens = empty;
+
+        buildFailLinks(out);
+    }
+
+    /**
+     * Splits the query in the tokens to match, folded like the text of the
+     * results. An empty query gives a single empty token, that matches
+     * everything.
+     */
+    public static List<String> tokenize(String query) {
+        final StringBuilder sb = new StringBuilder(query.length());
+
+        fold(query, new Sink() {
+            public boolean put(char c) {
+                // no leading or double spaces
+                if (c != ' ' || (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ')) {
+                    sb.append(c);
+                }
+                return false;
+            }
+        });
+
+        if (sb.length() > 0 && sb.charAt(sb.length() - 1) == ' ') {
+            sb.setLength(sb.length() - 1);
+        }
+
+        return new ArrayList<String>(new HashSet<String>(Arrays.asList(sb.toString().split(" "))));
+    }
+
+    /**
+     * Returns true if all the tokens are found in the concatenation of the
+     * texts, null texts are ignored.
+     */
+    public boolean matches(String text1, String text2, String text3) {
+        int remaining = numTokens - numEmptyTokens;
+        if (remaining == 0) {
+            return true;
+        }
+
+        Matching m = new Matching(numTokens, remaining);
+
+        return (text1 != null && fold(text1, m)) || (text2 != null && fold(text2, m)) || (text3 != null && fold(text3, m));
+    }
+
+    /**
+     * Feeds the folded characters of the text to the sink, until it asks
+     * to stop.
+     *
+     * @return true if the sink stopped
+     */
+    private static boolean fold(String text, Sink sink) {
+        int length = text.length();
+        int i = 0;
+
+        while (i < length) {
+            char c = text.charAt(i);
+
+            if (c == '<' || c == '&') {
+                int end = closing(text, i + 1, c == '<' ? '>' : ';');
+                if (end != -1) {
+                    i = end + 1;
+                    continue;
+                }
+            }
+
+            String literal = literalAt(text, i);
+            if (literal != null) {
+                if (sink.put(' ')) {
+                    return true;
+                }
+                i += literal.length();
+                continue;
+            }
+
+            if (c < 0x80) {
+                if (ASCII_SEPARATORS[c]) {
+                    c = ' ';
+                } else if (c >= 'A' && c <= 'Z') {
+                    c = (char) (c + ('a' - 'A'));
+                }
+                if (sink.put(c)) {
+                    return true;
+                }
+            } else if (SEPARATORS.indexOf(c) != -1) {
+                if (sink.put(' ')) {
+                    return true;
+                }
+            } else {
+                String folded = folded(c);
+                for (int j = 0; j < folded.length(); j++) {
+                    if (sink.put(folded.charAt(j))) {
+                        return true;
+                    }
+                }
+            }
+
+            i++;
+        }
+
+        return false;
+    }
+
+    /**
+     * The position of the character closing a tag or an entity, or -1 if
+     * the line ends first.
+     */
+    private static int closing(String text, int from, char close) {
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == close) {
+                return i;
+            }
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static String literalAt(String text, int i) {
+        char c = text.charAt(i);
+        if (c != '.' && c != 'w') {
+            return null;
+        }
+        for (String literal : LITERALS) {
+            if (text.startsWith(literal, i)) {
+                return literal;
+            }
+        }
+        return null;
+    }
+
+    private static String folded(char c) {
+        String[] block = FOLDED[c >>> 8];
+        if (block == null) {
+            block = new String[256];
+            FOLDED[c >>> 8] = block;
+        }
+
+        String folded = block[c & 0xFF];
+        if (folded == null) {
+            folded = fold(c);
+            block[c & 0xFF] = folded;
+        }
+        return folded;
+    }
+
+    /**
+     * Compatibility decomposition without the combining diacritical marks,
+     * in lower case.
+     */
+    private static String fold(char c) {
+        String norm = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFKD);
+
+        StringBuilder sb = new StringBuilder(norm.length());
+        for (int i = 0; i < norm.length(); i++) {
+            char d = norm.charAt(i);
+            if (d < '\u0300' || d > '\u036F') {
+                sb.append(d);
+            }
+        }
+
+        return sb.toString().toLowerCase(Locale.US);
+    }
+
+    private interface Sink {
+
+        /**
+         * @return true to stop
+         */
+        boolean put(char c);
+    }
+
+    /**
+     * The state of a match: the current node and the tokens still missing.
+     */
+    private final class Matching implements Sink {
+
+        private final boolean[] found;
+        private int node;
+        private int remaining;
+
+        public Matching(int numTokens, int remaining) {
+            this.found = new boolean[numTokens];
+            this.remaining = remaining;
+        }
+
+        public boolean put(char c) {
+            int n;
+            while ((n = child(node, c)) == -1 && node != 0) {
+                node = fail[node];
+            }
+            node = n != -1 ? n : 0;
+
+            for (int token : outputs[node]) {
+                if (!found[token]) {
+                    found[token] = true;
+                    if (--remaining == 0) {
+                        return true;
+                    }
+                }
+            }
+
+            return false;
+        }
+    }
+
+    private int newNode(List<List<Integer>> out) {
+        keys.add(new char[0]);
+        next.add(new int[0]);
+        out.add(new ArrayList<Integer>(1));
+        return keys.size() - 1;
+    }
+
+    private int child(int node, char c) {
+        char[] k = keys.get(node);
+        for (int i = 0; i < k.length; i++) {
+            if (k[i] == c) {
+                return next.get(node)[i];
+            }
+        }
+        return -1;
+    }
+
+    private void addChild(int node, char c, int child) {
+        char[] k = keys.get(node);
+        int[] n = next.get(node);
+
+        k = Arrays.copyOf(k, k.length + 1);
+        n = Arrays.copyOf(n, n.length + 1);
+        k[k.length - 1] = c;
+        n[n.length - 1] = child;
+
+        keys.set(node, k);
+        next.set(node, n);
+    }
+
+    private void buildFailLinks(List<List<Integer>> out) {
+        int size = keys.size();
+        fail = new int[size];
+
+        // breadth first, the outputs of the fail node are merged
+        LinkedList<Integer> queue = new LinkedList<Integer>();
+        for (int child : next.get(0)) {
+            fail[child] = 0;
+            queue.add(child);
+        }
+
+        while (!queue.isEmpty()) {
+            int node = queue.removeFirst();
+            char[] k = keys.get(node);
+            int[] n = next.get(node);
+
+            for (int i = 0; i < k.length; i++) {
+                int child = n[i];
+                int f = fail[node];
+                int target;
+                while ((target = child(f, k[i])) == -1 && f != 0) {
+                    f = fail[f];
+                }
+                fail[child] = target != -1 && target != child ? target : 0;
+                out.get(child).addAll(out.get(fail[child]));
+                queue.add(child);
+            }
+        }
+
+        outputs = new int[size][];
+        for (int i = 0; i < size; i++) {
+            List<Integer> o = out.get(i);
+            outputs[i] = new int[o.size()];
+            for (int j = 0; j < o.size(); j++) {
+                outputs[i][j] = o.get(j);
+            }
+        }
+    }
+}
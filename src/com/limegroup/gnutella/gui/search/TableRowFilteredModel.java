@@ -16,9 +16,7 @@
 package com.limegroup.gnutella.gui.search;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import com.frostwire.gui.filters.TableLineFilter;
 import com.limegroup.gnutella.settings.SearchSettings;
@@ -113,10 +111,73 @@ public class TableRowFilteredModel extends ResultPanelModel {
     }
 
     /**
-     * Notification that the filters have changed.
+     * How a filter change affects the lines it allows.
+     */
+    enum FilterChange {
+        /** Allows a subset of the lines, only the shown ones are checked. */
+        NARROWED,
+        /** Allows a superset of the lines, only the hidden ones are checked. */
+        WIDENED,
+        /** Anything else, every line is checked. */
+        CHANGED
+    }
+
+    /**
+     * Notification that the filters have changed in an unknown way.
      */
     void filtersChanged() {
-        rebuild();
+        filtersChanged(FilterChange.CHANGED);
+    }
+
+    /**
+     * Notification that the filters have changed.
+     *
+     * Only the lines that change membership are moved between the table
+     * and the hidden list, followed by a single table event. The lines that
+     * can't change membership, given the kind of change, are not checked.
+     */
+    void filtersChanged(FilterChange change) {
+        boolean hideJunk = SearchSettings.hideJunk();
+
+        List<SearchResultDataLine> shown = new ArrayList<SearchResultDataLine>();
+
+        if (change != FilterChange.NARROWED) {
+            List<SearchResultDataLine> hidden = new ArrayList<SearchResultDataLine>(HIDDEN.size());
+
+            for (SearchResultDataLine line : HIDDEN) {
+                if (hideJunk && !junkFilter.allow(line)) {
+                    continue; // dropped, it's still counted in _numResults
+                }
+                if (allow(line)) {
+                    shown.add(line);
+                    _numResults -= 1;
+                } else {
+                    hidden.add(line);
+                }
+            }
+
+            HIDDEN.clear();
+            HIDDEN.addAll(hidden);
+        }
+
+        if (change != FilterChange.WIDENED) {
+            // backwards, so the rows still to check keep their index
+            for (int i = getRowCount() - 1; i >= 0; i--) {
+                SearchResultDataLine line = get(i);
+                if (hideJunk && !junkFilter.allow(line)) {
+                    removeQuietly(i);
+                    _numResults += 1;
+                } else if (!allow(line)) {
+                    HIDDEN.add(removeQuietly(i));
+                    _numResults += 1;
+                }
+            }
+        }
+
+        for (SearchResultDataLine line : shown) {
+            addQuietly(line);
+        }
+
         fireTableDataChanged();
     }
 
@@ -138,56 +199,6 @@ public class TableRowFilteredModel extends ResultPanelModel {
         return FILTER.allow(line);
     }
 
-    /**
-     * Rebuilds the internal map to denote a new filter.
-     */
-    private void rebuild() {
-        List<SearchResultDataLine> existing = new ArrayList<SearchResultDataLine>(_list);
-        List<SearchResultDataLine> hidden = new ArrayList<SearchResultDataLine>(HIDDEN);
-        simpleClear();
-
-        // For stuff in _list, we can just re-add the DataLines as-is.
-        if (isSorted()) {
-            for (int i = 0; i < existing.size(); i++) {
-                addSorted(existing.get(i));
-            }
-        } else {
-            for (int i = 0; i < existing.size(); i++) {
-                add(existing.get(i));
-            }
-        }
-
-        // Merge the hidden TableLines
-        Map<String, SearchResultDataLine> mergeMap = new HashMap<String, SearchResultDataLine>();
-        for (int i = 0; i < hidden.size(); i++) {
-            SearchResultDataLine tl = hidden.get(i);
-            //SearchResult sr = tl.getInitializeObject();
-            //String urn = sr.getHash();
-
-            if (isSorted()) {
-                addSorted(tl);
-            } else {
-                add(tl);
-            }
-
-            //            TableLine tableLine = mergeMap.get(urn);
-            //            if (tableLine == null) {
-            //                mergeMap.put(urn, tl); // re-use TableLines
-            //            } else {
-            //                tableLine.addNewResult(sr, METADATA);
-            //            }
-        }
-
-        // And add them
-        if (isSorted()) {
-            for (SearchResultDataLine line : mergeMap.values())
-                addSorted(line);
-        } else {
-            for (SearchResultDataLine line : mergeMap.values())
-                add(line);
-        }
-    }
-
     public int getFilteredResults() {
         return super.getTotalResults();
     }
@@ -0,0 +1,115 @@
+package com.limegroup.gnutella.gui.search.tests;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import com.limegroup.gnutella.gui.search.SearchTokenMatcher;
+
+/**
+ * Times {@link SearchTokenMatcher} against the regular expression pipeline
+ * it replaced (strip html, replace separators, normalize, then look for
+ * every token), over the same generated result names.
+ * <p>
+ * Run it with the frostwire classes in the classpath, the optional
+ * arguments are the number of names and of rounds.
+ */
+public class SearchTokenMatcherBenchmark {
+
+    private static final String[] WORDS = { "Daft", "Punk", "Random", "Access", "Memories", "Beyonc\u00E9", "Sigur", "R\u00F3s", "\u00C1g\u00E6tis", "Byrjun", "Mot\u00F6rhead", "\u0412\u044B\u0441\u043E\u0446\u043A\u0438\u0439", "\u5742\u672C\u9F8D\u4E00", "Live", "2013",
+            "1080p", "x264", "FLAC", "www.example.com", "[HD]", "(Remastered)", "<b>new</b>", "&amp;" };
+
+    private static final String QUERY = "daft punk random access";
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        List<String> names = generate(size, new Random(42));
+
+        List<String> tokens = SearchTokenMatcher.tokenize(QUERY);
+        SearchTokenMatcher matcher = new SearchTokenMatcher(tokens);
+
+        // same answers before timing anything
+        int differences = 0;
+        for (String name : names) {
+            if (matcher.matches(name, null, null) != regexMatches(tokens, name)) {
+                differences++;
+            }
+        }
+        System.out.println("Differences with the regular expressions: " + differences + " of " + size);
+
+        for (int round = 0; round < rounds; round++) {
+            long matcherNanos = timeMatcher(matcher, names);
+            long regexNanos = timeRegex(tokens, names);
+            System.out.println(String.format("round %d: matcher %d ns/name, regex %d ns/name", round, matcherNanos / size, regexNanos / size));
+        }
+    }
+
+    private static long timeMatcher(SearchTokenMatcher matcher, List<String> names) {
+        int matches = 0;
+        long start = System.nanoTime();
+        for (String name : names) {
+            if (matcher.matches(name, null, null)) {
+                matches++;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        consume(matches);
+        return nanos;
+    }
+
+    private static long timeRegex(List<String> tokens, List<String> names) {
+        int matches = 0;
+        long start = System.nanoTime();
+        for (String name : names) {
+            if (regexMatches(tokens, name)) {
+                matches++;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        consume(matches);
+        return nanos;
+    }
+
+    private static boolean regexMatches(List<String> tokens, String text) {
+        text = text.replaceAll("\\<.*?>", "");
+        text = text.replaceAll("\\&.*?\\;", "");
+        text = text.replaceAll("\\.torrent|www\\.|\\.com|\\.net|[\\\\\\/%_;\\-\\.\\(\\)\\[\\]\\n\\r\u00D0&~{}\\*@\\^'=!,\u00A1|#\u00C0\u00C1]", " ");
+        text = text.replaceAll("\\s+", " ").trim();
+        text = Normalizer.normalize(text, Normalizer.Form.NFKD);
+        text = text.replaceAll("\\p{InCombiningDiacriticalMarks}+", "");
+        text = text.toLowerCase(Locale.US);
+
+        for (String token : tokens) {
+            if (!text.contains(token)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> generate(int size, Random random) {
+        List<String> names = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            StringBuilder sb = new StringBuilder();
+            int n = 3 + random.nextInt(8);
+            for (int j = 0; j < n; j++) {
+                if (j > 0) {
+                    sb.append(random.nextBoolean() ? ' ' : '.');
+                }
+                sb.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            names.add(sb.toString());
+        }
+        return names;
+    }
+
+    private static volatile int sink;
+
+    private static void consume(int n) {
+        sink += n;
+    }
+}
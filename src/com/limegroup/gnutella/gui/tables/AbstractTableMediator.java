@@ -26,6 +26,7 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -521,6 +522,27 @@ public abstract class AbstractTableMediator<T extends DataLineModel<E, I>, E ext
         fixSelection(addedAt, inView);
     }
 
+    /**
+     * Adds all the objects at the end of the list and, if the list is
+     * sorted, resorts it once instead of doing a sorted insert per object.
+     */
+    public void addAll(List<? extends I> objs) {
+        if (TABLE.isEditing()) {
+            CellEditor editor = TABLE.getCellEditor();
+            editor.cancelCellEditing();
+        }
+
+        for (I o : objs) {
+            DATA_MODEL.add(o, DATA_MODEL.getRowCount());
+        }
+
+        if (SETTINGS.REAL_TIME_SORT.getValue() && DATA_MODEL.isSorted()) {
+            isResorting = true;
+            sortAndMaintainSelection(-1);
+            isResorting = false;
+        }
+    }
+
     /**
      * Forces the object to be added unsorted.
      */
@@ -23,6 +23,7 @@ import com.limegroup.gnutella.util.FrostWireUtils;
 import org.limewire.setting.BooleanSetting;
 import org.limewire.setting.FileSetSetting;
 import org.limewire.setting.FileSetting;
+import org.limewire.setting.IntSetting;
 import org.limewire.util.CommonUtils;
 
 import java.io.File;
@@ -59,6 +60,16 @@ public class LibrarySettings extends LimeProps {
 
     public static final BooleanSetting LIBRARY_WIFI_SHARING_ENABLED = FACTORY.createBooleanSetting("LIBRARY_WIFI_SHARING_ENABLED", true);
 
+    /**
+     * The maximum number of files served at the same time to Wi-Fi peers.
+     */
+    public static final IntSetting LIBRARY_WIFI_SHARING_MAX_CONCURRENT_UPLOADS = FACTORY.createIntSetting("LIBRARY_WIFI_SHARING_MAX_CONCURRENT_UPLOADS", 5);
+
+    /**
+     * The maximum speed of each upload to a Wi-Fi peer in KB/s, 0 for no limit.
+     */
+    public static final IntSetting LIBRARY_WIFI_SHARING_MAX_UPLOAD_SPEED = FACTORY.createIntSetting("LIBRARY_WIFI_SHARING_MAX_UPLOAD_SPEED", 0);
+
 
     public static void setupInitialLibraryFolders() {
         SharingSettings.initTorrentDataDirSetting();
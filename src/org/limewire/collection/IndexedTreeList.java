@@ -0,0 +1,363 @@
+package org.limewire.collection;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A <code>List</code> backed by an AVL order statistic tree. Positional
+ * access, insertion and removal at any index run in O(log n).
+ * <p>
+ * Every element lives in a {@link Node} that keeps its identity while the
+ * element is in the list, even across {@link #sort(Comparator)}, so callers
+ * can keep a handle to an element and ask for its current index with
+ * {@link #indexOf(Node)} in O(log n), instead of remapping indexes every
+ * time a row is inserted in the middle.
+ * <p>
+ * This class is not thread safe.
+ */
+public class IndexedTreeList<E> extends AbstractList<E> implements List<E>, RandomAccess {
+
+    private Node<E> root;
+
+    /**
+     * Handle to an element of the list.
+     */
+    public static final class Node<E> {
+
+        private E value;
+
+        private Node<E> left;
+        private Node<E> right;
+        private Node<E> parent;
+
+        private int height;
+        private int size;
+
+        private Node(E value) {
+            this.value = value;
+            this.height = 1;
+            this.size = 1;
+        }
+
+        public E getValue() {
+            return value;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public E get(int index) {
+        return getNode(index).value;
+    }
+
+    @Override
+    public E set(int index, E element) {
+        Node<E> node = getNode(index);
+        E old = node.value;
+        node.value = element;
+        return old;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        addNode(index, element);
+    }
+
+    /**
+     * Inserts the element at the index and returns its handle.
+     */
+    public Node<E> addNode(int index, E element) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+
+        Node<E> node = new Node<E>(element);
+        root = insert(root, index, node);
+        root.parent = null;
+        modCount++;
+
+        return node;
+    }
+
+    @Override
+    public E remove(int index) {
+        Node<E> node = getNode(index);
+
+        root = delete(root, index);
+        if (root != null) {
+            root.parent = null;
+        }
+        modCount++;
+
+        node.left = node.right = node.parent = null;
+        node.height = node.size = 0;
+
+        return node.value;
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        modCount++;
+    }
+
+    public Node<E> getNode(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+
+        Node<E> t = root;
+        while (true) {
+            int ls = size(t.left);
+            if (index < ls) {
+                t = t.left;
+            } else if (index > ls) {
+                index -= ls + 1;
+                t = t.right;
+            } else {
+                return t;
+            }
+        }
+    }
+
+    /**
+     * Returns the current index of the node, or -1 if it was removed
+     * from this list.
+     */
+    public int indexOf(Node<E> node) {
+        if (node == null || node.size == 0) {
+            return -1;
+        }
+
+        int index = size(node.left);
+        Node<E> t = node;
+        while (t.parent != null) {
+            if (t == t.parent.right) {
+                index += size(t.parent.left) + 1;
+            }
+            t = t.parent;
+        }
+
+        return t == root ? index : -1;
+    }
+
+    /**
+     * Binary search of the key in the list, that must be sorted by the
+     * comparator. Same contract as <code>Collections.binarySearch</code>.
+     */
+    public int binarySearch(E key, Comparator<? super E> c) {
+        Node<E> t = root;
+        int offset = 0;
+
+        while (t != null) {
+            int cmp = c.compare(t.value, key);
+            if (cmp < 0) {
+                offset += size(t.left) + 1;
+                t = t.right;
+            } else if (cmp > 0) {
+                t = t.left;
+            } else {
+                return offset + size(t.left);
+            }
+        }
+
+        return -(offset + 1);
+    }
+
+    /**
+     * Stable sort of the list. The nodes are reordered, not the values,
+     * so the handles keep pointing to the same elements.
+     */
+    @SuppressWarnings("unchecked")
+    public void sort(final Comparator<? super E> c) {
+        Node<E>[] nodes = new Node[size()];
+        int i = 0;
+        for (Node<E> t = first(root); t != null; t = next(t)) {
+            nodes[i++] = t;
+        }
+
+        Arrays.sort(nodes, new Comparator<Node<E>>() {
+            public int compare(Node<E> a, Node<E> b) {
+                return c.compare(a.value, b.value);
+            }
+        });
+
+        root = build(nodes, 0, nodes.length - 1);
+        if (root != null) {
+            root.parent = null;
+        }
+        modCount++;
+    }
+
+    private Node<E> build(Node<E>[] nodes, int from, int to) {
+        if (from > to) {
+            return null;
+        }
+
+        int mid = (from + to) >>> 1;
+        Node<E> t = nodes[mid];
+
+        t.left = build(nodes, from, mid - 1);
+        if (t.left != null) {
+            t.left.parent = t;
+        }
+        t.right = build(nodes, mid + 1, to);
+        if (t.right != null) {
+            t.right.parent = t;
+        }
+
+        update(t);
+        return t;
+    }
+
+    private Node<E> insert(Node<E> t, int index, Node<E> node) {
+        if (t == null) {
+            return node;
+        }
+
+        int ls = size(t.left);
+        if (index <= ls) {
+            t.left = insert(t.left, index, node);
+            t.left.parent = t;
+        } else {
+            t.right = insert(t.right, index - ls - 1, node);
+            t.right.parent = t;
+        }
+
+        return balance(t);
+    }
+
+    private Node<E> delete(Node<E> t, int index) {
+        int ls = size(t.left);
+        if (index < ls) {
+            t.left = delete(t.left, index);
+            if (t.left != null) {
+                t.left.parent = t;
+            }
+        } else if (index > ls) {
+            t.right = delete(t.right, index - ls - 1);
+            if (t.right != null) {
+                t.right.parent = t;
+            }
+        } else {
+            if (t.left == null) {
+                return t.right;
+            }
+            if (t.right == null) {
+                return t.left;
+            }
+
+            // the successor takes the place of the node, nodes are
+            // moved instead of values to keep the handles valid
+            Node<E> m = first(t.right);
+            m.right = deleteFirst(t.right);
+            if (m.right != null) {
+                m.right.parent = m;
+            }
+            m.left = t.left;
+            m.left.parent = m;
+            t = m;
+        }
+
+        return balance(t);
+    }
+
+    private Node<E> deleteFirst(Node<E> t) {
+        if (t.left == null) {
+            return t.right;
+        }
+
+        t.left = deleteFirst(t.left);
+        if (t.left != null) {
+            t.left.parent = t;
+        }
+
+        return balance(t);
+    }
+
+    private Node<E> balance(Node<E> t) {
+        update(t);
+
+        int bf = height(t.left) - height(t.right);
+        if (bf > 1) {
+            if (height(t.left.left) < height(t.left.right)) {
+                t.left = rotateLeft(t.left);
+                t.left.parent = t;
+            }
+            return rotateRight(t);
+        } else if (bf < -1) {
+            if (height(t.right.right) < height(t.right.left)) {
+                t.right = rotateRight(t.right);
+                t.right.parent = t;
+            }
+            return rotateLeft(t);
+        }
+
+        return t;
+    }
+
+    private Node<E> rotateRight(Node<E> t) {
+        Node<E> l = t.left;
+        t.left = l.right;
+        if (t.left != null) {
+            t.left.parent = t;
+        }
+        l.right = t;
+        t.parent = l;
+        update(t);
+        update(l);
+        return l;
+    }
+
+    private Node<E> rotateLeft(Node<E> t) {
+        Node<E> r = t.right;
+        t.right = r.left;
+        if (t.right != null) {
+            t.right.parent = t;
+        }
+        r.left = t;
+        t.parent = r;
+        update(t);
+        update(r);
+        return r;
+    }
+
+    private static <E> Node<E> first(Node<E> t) {
+        if (t != null) {
+            while (t.left != null) {
+                t = t.left;
+            }
+        }
+        return t;
+    }
+
+    private static <E> Node<E> next(Node<E> t) {
+        if (t.right != null) {
+            return first(t.right);
+        }
+        while (t.parent != null && t == t.parent.right) {
+            t = t.parent;
+        }
+        return t.parent;
+    }
+
+    private static <E> void update(Node<E> t) {
+        t.height = Math.max(height(t.left), height(t.right)) + 1;
+        t.size = size(t.left) + size(t.right) + 1;
+    }
+
+    private static <E> int height(Node<E> t) {
+        return t != null ? t.height : 0;
+    }
+
+    private static <E> int size(Node<E> t) {
+        return t != null ? t.size : 0;
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Created by Angel Leon (@gubatron), Alden Torres (aldenml)
+ * Copyright (c) 2011-2014, FrostWire(R). All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.limewire.collection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * An {@link AutoCompleteDictionary} that returns the completions of a prefix
+ * ranked by weight, highest first, instead of in alphabetical order. Each
+ * entry keeps two weights: the one added, that adding it again increments,
+ * so the entries used more often come first, and the one offered, that
+ * only rises to the highest offer. It ranks by their sum, so the added
+ * weights can be taken back without losing the offered ones.
+ * <p>
+ * Lookups are case insensitive, the strings are returned with the case of
+ * the last time they were added. The entries are kept in a
+ * {@link PatriciaTrie}, and the best completions of the last prefixes looked
+ * up are cached until an entry under them changes, so typing the same
+ * prefixes again doesn't walk the trie.
+ */
+public class RankedTrieDictionary implements AutoCompleteDictionary, Iterable<String> {
+
+    /** Number of completions returned by the iterators. */
+    private static final int DEFAULT_TOP = 10;
+
+    /** Number of prefixes with cached completions. */
+    private static final int MAX_CACHED_PREFIXES = 256;
+
+    /** Highest weight first, then alphabetical. */
+    private static final Comparator<Entry> RANK = new Comparator<Entry>() {
+        public int compare(Entry a, Entry b) {
+            int wa = a.weight();
+            int wb = b.weight();
+            if (wa != wb)
+                return wa > wb ? -1 : 1;
+            return a.key.compareTo(b.key);
+        }
+    };
+
+    /**
+     * The entries, by lower case key.
+     */
+    private final PatriciaTrie<String, Entry> trie = new PatriciaTrie<String, Entry>(new CharSequenceKeyAnalyzer());
+
+    /**
+     * The best completions of the last prefixes looked up, by lower case prefix.
+     */
+    private final Map<String, List<Entry>> cache = new LinkedHashMap<String, List<Entry>>(16, 0.75f, true) {
+        private static final long serialVersionUID = 4729506829418461725L;
+
+        protected boolean removeEldestEntry(Map.Entry<String, List<RankedTrieDictionary.Entry>> eldest) {
+            return size() > MAX_CACHED_PREFIXES;
+        }
+    };
+
+    /** Number of completions returned by the iterators. */
+    private final int top;
+
+    public RankedTrieDictionary() {
+        this(DEFAULT_TOP);
+    }
+
+    /**
+     * @param top the number of completions returned by {@link #iterator(String)}
+     */
+    public RankedTrieDictionary(int top) {
+        this.top = top;
+    }
+
+    /**
+     * Adds the string with a weight of 1, or increments its weight by 1
+     * if already there.
+     */
+    public void addEntry(String s) {
+        add(s, 1);
+    }
+
+    /**
+     * Increments the weight of the string by the given weight, adding it if
+     * it's not there.
+     */
+    public synchronized void add(String s, int weight) {
+        Entry entry = getOrCreate(s);
+        entry.added += weight;
+        changed(entry.key);
+    }
+
+    /**
+     * Raises the offered weight of the string to the given weight if it's
+     * lower, adding it if it's not there. Offering the same string again
+     * doesn't change its rank, whatever was added to it.
+     */
+    public synchronized void offer(String s, int weight) {
+        String key = key(s);
+        Entry entry = trie.get(key);
+        if (entry != null && entry.offered >= weight)
+            return;
+
+        entry = getOrCreate(s);
+        entry.offered = weight;
+        changed(entry.key);
+    }
+
+    /**
+     * Returns the weight the string is ranked by, 0 if it's not in the
+     * dictionary.
+     */
+    public synchronized int getWeight(String s) {
+        Entry entry = trie.get(key(s));
+        return entry != null ? entry.weight() : 0;
+    }
+
+    /**
+     * Returns the sum of the weights added to the string.
+     */
+    public synchronized int getAddedWeight(String s) {
+        Entry entry = trie.get(key(s));
+        return entry != null ? entry.added : 0;
+    }
+
+    /**
+     * Returns the highest weight offered for the string.
+     */
+    public synchronized int getOfferedWeight(String s) {
+        Entry entry = trie.get(key(s));
+        return entry != null ? entry.offered : 0;
+    }
+
+    /**
+     * Takes back the weights added to every entry, the entries that were
+     * never offered are removed.
+     */
+    public synchronized void clearAdded() {
+        Iterator<Entry> it = trie.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.offered > 0)
+                entry.added = 0;
+            else
+                it.remove();
+        }
+        cache.clear();
+    }
+
+    public synchronized boolean removeEntry(String s) {
+        String key = key(s);
+        if (trie.remove(key) == null)
+            return false;
+
+        changed(key);
+        return true;
+    }
+
+    /**
+     * Returns the best ranked completion of the string, or null if there is none.
+     */
+    public String lookup(String s) {
+        List<String> completions = getCompletions(s, 1);
+        return completions.isEmpty() ? null : completions.get(0);
+    }
+
+    /**
+     * Returns the best ranked completions of the string, highest weight first.
+     *
+     * @param s the prefix, the empty string for the best entries of all
+     * @param k the maximum number of completions
+     */
+    public synchronized List<String> getCompletions(String s, int k) {
+        String prefix = key(s);
+
+        List<Entry> entries = cache.get(prefix);
+        if (entries == null || (entries.size() < k && entries.size() == top)) {
+            entries = rank(prefix, Math.max(k, top));
+            if (entries.size() <= top)
+                cache.put(prefix, entries);
+        }
+
+        int n = Math.min(k, entries.size());
+        List<String> completions = new ArrayList<String>(n);
+        for (int i = 0; i < n; i++)
+            completions.add(entries.get(i).value);
+        return completions;
+    }
+
+    /**
+     * Returns the best ranked entries of the dictionary, not all of them.
+     */
+    public Iterator<String> iterator() {
+        return getCompletions("", top).iterator();
+    }
+
+    /**
+     * Returns the best ranked completions of the given string.
+     */
+    public Iterator<String> iterator(String s) {
+        return getCompletions(s, top).iterator();
+    }
+
+    public synchronized void clear() {
+        trie.clear();
+        cache.clear();
+    }
+
+    public synchronized int size() {
+        return trie.size();
+    }
+
+    private Entry getOrCreate(String s) {
+        String key = key(s);
+        Entry entry = trie.get(key);
+        if (entry == null) {
+            entry = new Entry(key, s);
+            trie.put(key, entry);
+        } else {
+            // keep the case of the last one added
+            entry.value = s;
+        }
+        return entry;
+    }
+
+    /**
+     * Forgets the cached completions of every prefix of the key.
+     */
+    private void changed(String key) {
+        if (cache.isEmpty())
+            return;
+
+        for (int i = 0; i <= key.length(); i++)
+            cache.remove(key.substring(0, i));
+    }
+
+    /**
+     * Selects the k best entries under the prefix with a heap of size k.
+     */
+    private List<Entry> rank(String prefix, int k) {
+        Collection<Entry> candidates = prefix.length() == 0 ? trie.values() : trie.getPrefixedBy(prefix).values();
+
+        // worst of the selected on top
+        PriorityQueue<Entry> heap = new PriorityQueue<Entry>(k + 1, Collections.reverseOrder(RANK));
+        for (Entry entry : candidates) {
+            if (heap.size() < k) {
+                heap.add(entry);
+            } else if (RANK.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+
+        List<Entry> entries = new ArrayList<Entry>(heap);
+        Collections.sort(entries, RANK);
+        return entries;
+    }
+
+    private static String key(String s) {
+        return s.toLowerCase(Locale.US);
+    }
+
+    private static final class Entry {
+
+        private final String key;
+        private String value;
+        private int added;
+        private int offered;
+
+        public Entry(String key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public int weight() {
+            return added + offered;
+        }
+    }
+}
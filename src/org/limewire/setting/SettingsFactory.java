@@ -16,15 +16,23 @@
 package org.limewire.setting;
 
 import java.awt.Color;
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Properties;
 
 import org.apache.commons.io.IOUtils;
@@ -86,6 +94,12 @@ With the call sf.save(), setting.txt now includes:
  </pre>
  * If setting.txt didn't have the key MAX_MESSAGE_SIZE prior to the 
  * <code>createIntSetting</code> call, then the MAX_MESSAGE_SIZE is 0.
+ * <p>
+ * The file is only written when a value changed since the last save or
+ * load, and it is written to a temporary file first and renamed over the
+ * old one, so a crash while saving doesn't leave it half written. A binary
+ * copy of the saved values is kept next to it to load faster at startup,
+ * it's used only while the properties file is the one it was written with.
  */
 public final class SettingsFactory implements Iterable<AbstractSetting> {
     
@@ -95,6 +109,9 @@ public final class SettingsFactory implements Iterable<AbstractSetting> {
     /** Time interval, after which the accumulated information expires */
     private static final long EXPIRY_INTERVAL = 14 * 24 * 60 * 60 * 1000; //14 days
     
+    /** Marks the start of a binary snapshot, changes with its format */
+    private static final int SNAPSHOT_MAGIC = 0x46575331; // FWS1
+    
     /** An internal Setting to store the last expire time */
     private LongSetting LAST_EXPIRE_TIME = null;
     
@@ -108,7 +125,14 @@ public final class SettingsFactory implements Iterable<AbstractSetting> {
     protected final Properties DEFAULT_PROPS = new Properties();
 
     /** The <tt>Properties</tt> instance containing all settings.  */
-    protected final Properties PROPS = new Properties(DEFAULT_PROPS);
+    protected final Properties PROPS = new ChangeCountingProperties(DEFAULT_PROPS);
+    
+    /**
+     * Value of the changes count of PROPS when they were last saved or loaded,
+     * -1 if they have never been.
+     * LOCKING: must hold this monitor
+     */
+    private long savedChanges = -1;
     
     /**
      * List of all settings associated with this factory 
@@ -188,6 +212,24 @@ public final class SettingsFactory implements Iterable<AbstractSetting> {
             setExpireValue();
             return;
         }
+        
+        if (!loadSnapshot()) {
+            loadProperties();
+        }
+        
+        savedChanges = getChanges();
+        
+        // Reload all setting values
+        for(Setting set : settings)
+            set.reload();
+        
+        setExpireValue();
+    }
+    
+    /**
+     * Loads the properties file, in the format of {@link Properties#load}.
+     */
+    private void loadProperties() {
         FileInputStream fis = null;
         
         try {
@@ -214,12 +256,44 @@ public final class SettingsFactory implements Iterable<AbstractSetting> {
         } finally {
             IOUtils.closeQuietly(fis);
         }
+    }
+    
+    /**
+     * Loads the values from the binary snapshot, if it was written along
+     * with the current properties file.
+     * 
+     * @return false if there is no usable snapshot
+     */
+    private boolean loadSnapshot() {
+        File snapshot = getSnapshotFile();
+        if (!snapshot.isFile()) {
+            return false;
+        }
         
-        // Reload all setting values
-        for(Setting set : settings)
-            set.reload();
-        
-        setExpireValue();
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)));
+            
+            if (in.readInt() != SNAPSHOT_MAGIC ||
+                in.readLong() != SETTINGS_FILE.lastModified() ||
+                in.readLong() != SETTINGS_FILE.length()) {
+                // the properties file was written after, maybe by hand
+                return false;
+            }
+            
+            int size = in.readInt();
+            Map<String, String> values = new HashMap<String, String>(size * 2);
+            for (int i = 0; i < size; i++) {
+                values.put(in.readUTF(), in.readUTF());
+            }
+            
+            PROPS.putAll(values);
+            return true;
+        } catch(IOException e) {
+            return false;
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
     }
     
     /**
@@ -263,6 +337,14 @@ public final class SettingsFactory implements Iterable<AbstractSetting> {
         return any;
     }
     
+    /**
+     * Returns true if any value changed since the settings were last saved
+     * or loaded.
+     */
+    public synchronized boolean isDirty() {
+        return getChanges() != savedChanges || !SETTINGS_FILE.isFile();
+    }
+    
     /**
      * Save setting information to property file
      * We want to NOT save any properties which are the default value,
@@ -275,8 +357,15 @@ public final class SettingsFactory implements Iterable<AbstractSetting> {
      * or aren't default) because 'adding' properties may fail if
      * certain settings classes haven't been statically loaded yet.
      * (Note that we cannot use 'store' since it's only available in 1.2)
+     * <p>
+     * Nothing is written if no value changed since the last save.
      */
     public synchronized void save() {
+        if (!isDirty()) {
+            return;
+        }
+        
+        long changes = getChanges();
         Properties toSave = (Properties) PROPS.clone();
 
         //Add any settings which require saving or aren't default
@@ -285,7 +374,8 @@ public final class SettingsFactory implements Iterable<AbstractSetting> {
                 toSave.remove( set.getKey() );
         }
         
-        OutputStream out = null;
+        File tmp = new File(SETTINGS_FILE.getPath() + ".tmp");
+        FileOutputStream fos = null;
         try {
             // some bugs were reported where the settings file was a directory.
             if (SETTINGS_FILE.isDirectory())
@@ -304,27 +394,85 @@ public final class SettingsFactory implements Iterable<AbstractSetting> {
                 SETTINGS_FILE.delete();
             }
             
-            try {
-                out = new BufferedOutputStream(new FileOutputStream(SETTINGS_FILE));
-            } catch(IOException ioe) {
-                // Try again.
-                if (SETTINGS_FILE.exists()) {
-                    SETTINGS_FILE.delete();
-                    out = new BufferedOutputStream(new FileOutputStream(SETTINGS_FILE));
-                }
-            }
-
-            if(out != null) {
-                // save the properties to disk.
-                toSave.store(out, HEADING);
-            } else {
-                markFailure();
+            // left by a save that didn't finish
+            if (tmp.exists()) {
+                tmp.delete();
             }
             
+            fos = new FileOutputStream(tmp);
+            OutputStream out = new BufferedOutputStream(fos);
+            
+            // save the properties to disk.
+            toSave.store(out, HEADING);
+            out.flush();
+            fos.getFD().sync();
+            fos.close();
+            fos = null;
+            
+            replace(tmp, SETTINGS_FILE);
+            savedChanges = changes;
+            
         } catch (IOException e) {
             markFailure();
+            tmp.delete();
+            return;
         } finally {
+            IOUtils.closeQuietly(fos);
+        }
+        
+        saveSnapshot(toSave);
+    }
+    
+    /**
+     * Writes the saved values in binary, stamped with the properties file
+     * they were saved to. It's only a faster copy of the file, nothing is
+     * lost if it can't be written.
+     */
+    private void saveSnapshot(Properties saved) {
+        File snapshot = getSnapshotFile();
+        File tmp = new File(snapshot.getPath() + ".tmp");
+        
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(SETTINGS_FILE.lastModified());
+            out.writeLong(SETTINGS_FILE.length());
+            
+            out.writeInt(saved.size());
+            for (Map.Entry<Object, Object> entry : saved.entrySet()) {
+                // values over 64K can't be written, fails and the file is used
+                out.writeUTF((String) entry.getKey());
+                out.writeUTF((String) entry.getValue());
+            }
+            out.close();
+            out = null;
+            
+            replace(tmp, snapshot);
+        } catch (IOException e) {
             IOUtils.closeQuietly(out);
+            tmp.delete();
+            snapshot.delete();
+        }
+    }
+    
+    private File getSnapshotFile() {
+        return new File(SETTINGS_FILE.getPath() + ".bin");
+    }
+    
+    private long getChanges() {
+        return ((ChangeCountingProperties) PROPS).getChanges();
+    }
+    
+    /**
+     * Renames the file over the target, in one step if the file system can.
+     */
+    private static void replace(File file, File target) throws IOException {
+        try {
+            Files.move(file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
     }
     
@@ -662,4 +810,47 @@ public final class SettingsFactory implements Iterable<AbstractSetting> {
         settings.add(setting);
         setting.reload();
     }
+    
+    /**
+     * Counts the changes made to the values, all of them go through
+     * put, remove or clear.
+     */
+    private static final class ChangeCountingProperties extends Properties {
+        
+        private static final long serialVersionUID = -3620948317519476211L;
+        
+        private long changes;
+        
+        public ChangeCountingProperties(Properties defaults) {
+            super(defaults);
+        }
+        
+        public synchronized long getChanges() {
+            return changes;
+        }
+        
+        @Override
+        public synchronized Object put(Object key, Object value) {
+            Object old = super.put(key, value);
+            if (old == null || !old.equals(value)) {
+                changes++;
+            }
+            return old;
+        }
+        
+        @Override
+        public synchronized Object remove(Object key) {
+            Object old = super.remove(key);
+            if (old != null) {
+                changes++;
+            }
+            return old;
+        }
+        
+        @Override
+        public synchronized void clear() {
+            super.clear();
+            changes++;
+        }
+    }
 }
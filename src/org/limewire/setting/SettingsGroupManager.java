@@ -4,6 +4,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.limewire.concurrent.ExecutorsHelper;
 import org.limewire.setting.evt.SettingsGroupManagerEvent;
@@ -45,6 +48,22 @@ public final class SettingsGroupManager {
      */
     private volatile Executor executor = ExecutorsHelper.newFixedSizeThreadPool(1, "SettingsHandlerEventDispatcher");
     
+    /**
+     * How long {@link #saveLater()} waits for more changes before saving.
+     */
+    private static final long SAVE_DELAY_MILLISECONDS = 2000;
+    
+    /**
+     * Runs the saves requested with {@link #saveLater()}
+     */
+    private final ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(ExecutorsHelper.daemonThreadFactory("SettingsSaver"));
+    
+    /**
+     * Whether a save is scheduled and hasn't started yet.
+     * LOCKING: must hold this monitor
+     */
+    private boolean savePending;
+    
     // never instantiate this class.
     private SettingsGroupManager() {}
     
@@ -153,6 +172,33 @@ public final class SettingsGroupManager {
         return any;
     }
     
+    /**
+     * Saves the settings in the background after a short delay, the changes
+     * made until then go in the same save. Only the groups with changes are
+     * written.
+     * <p>
+     * Use {@link #save()} when the settings must be on disk on return, as
+     * on shutdown.
+     */
+    public void saveLater() {
+        synchronized (this) {
+            if (savePending) {
+                return;
+            }
+            savePending = true;
+        }
+        
+        saver.schedule(new Runnable() {
+            public void run() {
+                synchronized (SettingsGroupManager.this) {
+                    // changes from now on need another save
+                    savePending = false;
+                }
+                save();
+            }
+        }, SAVE_DELAY_MILLISECONDS, TimeUnit.MILLISECONDS);
+    }
+    
     /**
      * Revert all settings to their default value.
      */